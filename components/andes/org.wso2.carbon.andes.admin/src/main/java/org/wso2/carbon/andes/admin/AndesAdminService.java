@@ -20,8 +20,12 @@ package org.wso2.carbon.andes.admin;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.andes.admin.internal.Exception.BrokerManagerAdminException;
+import org.wso2.carbon.andes.admin.internal.DeadLetterFilter;
+import org.wso2.carbon.andes.admin.internal.JobStatus;
 import org.wso2.carbon.andes.admin.internal.Message;
 import org.wso2.carbon.andes.admin.internal.Queue;
+import org.wso2.carbon.andes.admin.internal.QueueBrowsePage;
+import org.wso2.carbon.andes.admin.internal.QueueRateHistory;
 import org.wso2.carbon.andes.admin.internal.QueueRolePermission;
 import org.wso2.carbon.andes.admin.internal.Subscription;
 import org.wso2.carbon.andes.admin.util.AndesBrokerManagerAdminServiceDSHolder;
@@ -64,6 +68,7 @@ public class AndesAdminService extends AbstractAdmin {
                 org.wso2.carbon.andes.admin.internal.Queue queueDTO = new org.wso2.carbon.andes.admin.internal.Queue();
                 queueDTO.setQueueName(queue.getQueueName());
                 queueDTO.setMessageCount(queue.getMessageCount());
+                queueDTO.setMessageCountAge(queue.getMessageCountAge());
                 queueDTO.setCreatedTime(queue.getCreatedTime());
                 queueDTO.setUpdatedTime(queue.getUpdatedTime());
                 allQueues.add(queueDTO);
@@ -89,6 +94,63 @@ public class AndesAdminService extends AbstractAdmin {
         }
     }
 
+    /**
+     * Get message counts of a set of queues in one call
+     *
+     * @param queueNames Names of the queues
+     * @return Message counts, in the order of the queue names
+     * @throws BrokerManagerAdminException
+     */
+    public long[] getMessageCountsForQueues(String[] queueNames) throws BrokerManagerAdminException {
+        try {
+            QueueManagerService queueManagerService =
+                    AndesBrokerManagerAdminServiceDSHolder.getInstance().getQueueManagerService();
+            return queueManagerService.getMessageCountsForQueues(queueNames);
+        } catch (QueueManagerException e) {
+            throw new BrokerManagerAdminException("Error while getting message counts for queues", e);
+        }
+    }
+
+    /**
+     * Get the age of the snapshot message counts are served from
+     *
+     * @return Age in milliseconds, or -1 if message counts are read from the broker on each request
+     */
+    public long getMessageCountAge() {
+        QueueManagerService queueManagerService =
+                AndesBrokerManagerAdminServiceDSHolder.getInstance().getQueueManagerService();
+        return queueManagerService.getMessageCountAge();
+    }
+
+    /**
+     * Get the enqueue rate, dequeue rate and depth history of a queue
+     *
+     * @param queueName  Name of the queue
+     * @param resolution Resolution of the history in seconds, 1 for the last 10 minutes or 60 for the last 24 hours
+     * @return Rate history of the queue
+     * @throws BrokerManagerAdminException
+     */
+    public QueueRateHistory getQueueRateHistory(String queueName, int resolution)
+            throws BrokerManagerAdminException {
+        try {
+            QueueManagerService queueManagerService =
+                    AndesBrokerManagerAdminServiceDSHolder.getInstance().getQueueManagerService();
+            org.wso2.carbon.andes.core.types.QueueRateHistory history =
+                    queueManagerService.getQueueRateHistory(queueName, resolution);
+
+            QueueRateHistory historyDTO = new QueueRateHistory();
+            historyDTO.setQueueName(history.getQueueName());
+            historyDTO.setResolution(history.getResolution());
+            historyDTO.setStartTime(history.getStartTime());
+            historyDTO.setEnqueueRates(history.getEnqueueRates());
+            historyDTO.setDequeueRates(history.getDequeueRates());
+            historyDTO.setDepths(history.getDepths());
+            return historyDTO;
+        } catch (QueueManagerException e) {
+            throw new BrokerManagerAdminException("Error while getting message rate history of queue", e);
+        }
+    }
+
     public void deleteQueue(String queueName) throws BrokerManagerAdminException {
         try {
             QueueManagerService queueManagerService =
@@ -155,6 +217,61 @@ public class AndesAdminService extends AbstractAdmin {
         }
     }
 
+    /**
+     * Start restoring the messages of the Dead Letter Queue matching a filter in the background
+     *
+     * @param deadLetterQueueName Dead Letter Queue name for the respective tenant
+     * @param filter              Messages to restore
+     * @param destination         Destination to restore the messages to, or null to restore them to their
+     *                            original destinations
+     * @return ID of the job to read the progress with
+     * @throws BrokerManagerAdminException
+     */
+    public String startRestoreFromDeadLetterQueue(String deadLetterQueueName, DeadLetterFilter filter,
+                                                  String destination) throws BrokerManagerAdminException {
+        try {
+            QueueManagerService queueManagerService =
+                    AndesBrokerManagerAdminServiceDSHolder.getInstance().getQueueManagerService();
+            return queueManagerService.startRestoreFromDeadLetterQueue(deadLetterQueueName, toFilter(filter),
+                    destination, getCurrentUser(), getAccessKey());
+        } catch (QueueManagerException e) {
+            throw new BrokerManagerAdminException("Unable to start restoring messages from queue.", e);
+        }
+    }
+
+    /**
+     * Start deleting the messages of the Dead Letter Queue matching a filter in the background
+     *
+     * @param deadLetterQueueName Dead Letter Queue name for the respective tenant
+     * @param filter              Messages to delete
+     * @return ID of the job to read the progress with
+     * @throws BrokerManagerAdminException
+     */
+    public String startDeleteFromDeadLetterQueue(String deadLetterQueueName, DeadLetterFilter filter)
+            throws BrokerManagerAdminException {
+        try {
+            QueueManagerService queueManagerService =
+                    AndesBrokerManagerAdminServiceDSHolder.getInstance().getQueueManagerService();
+            return queueManagerService.startDeleteFromDeadLetterQueue(deadLetterQueueName, toFilter(filter),
+                    getCurrentUser(), getAccessKey());
+        } catch (QueueManagerException e) {
+            throw new BrokerManagerAdminException("Unable to start deleting messages from queue.", e);
+        }
+    }
+
+    private static org.wso2.carbon.andes.core.types.DeadLetterFilter toFilter(DeadLetterFilter filterDTO) {
+        org.wso2.carbon.andes.core.types.DeadLetterFilter filter =
+                new org.wso2.carbon.andes.core.types.DeadLetterFilter();
+        if (null != filterDTO) {
+            filter.setOriginalDestination(filterDTO.getOriginalDestination());
+            filter.setFromTime(filterDTO.getFromTime());
+            filter.setToTime(filterDTO.getToTime());
+            filter.setJmsType(filterDTO.getJmsType());
+            filter.setPropertySelector(filterDTO.getPropertySelector());
+        }
+        return filter;
+    }
+
     public void purgeMessagesOfQueue(String queueName) throws Exception {
         try {
             QueueManagerService queueManagerService =
@@ -165,6 +282,23 @@ public class AndesAdminService extends AbstractAdmin {
         }
     }
 
+    /**
+     * Start deleting all messages of a queue in the background
+     *
+     * @param queueName - Name of the queue
+     * @return ID of the job to read the progress with
+     * @throws BrokerManagerAdminException
+     */
+    public String startPurgeQueue(String queueName) throws BrokerManagerAdminException {
+        try {
+            QueueManagerService queueManagerService =
+                    AndesBrokerManagerAdminServiceDSHolder.getInstance().getQueueManagerService();
+            return queueManagerService.startPurgeQueue(queueName, getCurrentUser());
+        } catch (QueueManagerException e) {
+            throw new BrokerManagerAdminException("Unable to start purging queue.", e);
+        }
+    }
+
 
     public Subscription[] getAllSubscriptions() throws BrokerManagerAdminException {
         List<Subscription> allSubscriptions = new ArrayList<Subscription>();
@@ -425,20 +559,7 @@ public class AndesAdminService extends AbstractAdmin {
             org.wso2.carbon.andes.core.types.Message[] messages = queueManagerService.browseQueue(queueName,
                     getCurrentUser(), getAccessKey(), startingIndex, maxMsgCount);
             for (org.wso2.carbon.andes.core.types.Message message : messages) {
-                Message messageDTO = new Message();
-                messageDTO.setMsgProperties(message.getMsgProperties());
-                messageDTO.setContentType(message.getContentType());
-                messageDTO.setMessageContent(message.getMessageContent());
-                messageDTO.setJMSMessageId(message.getJMSMessageId());
-                messageDTO.setJMSCorrelationId(message.getJMSCorrelationId());
-                messageDTO.setJMSType(message.getJMSType());
-                messageDTO.setJMSReDelivered(message.getJMSReDelivered());
-                messageDTO.setJMSDeliveredMode(message.getJMSDeliveredMode());
-                messageDTO.setMsgProperties(message.getMsgProperties());
-                messageDTO.setJMSTimeStamp(message.getJMSTimeStamp());
-                messageDTO.setJMSExpiration(message.getJMSExpiration());
-                messageDTO.setDlcMsgDestination(message.getDlcMsgDestination());
-                messageDTOList.add(messageDTO);
+                messageDTOList.add(toMessageDTO(message));
             }
             return messageDTOList.toArray(new Message[messageDTOList.size()]);
         } catch (QueueManagerException e) {
@@ -446,6 +567,71 @@ public class AndesAdminService extends AbstractAdmin {
         }
     }
 
+    /**
+     * Browse the given queue a page at a time, continuing from where the previous page stopped
+     *
+     * @param queueName   - Name of the queue
+     * @param resumeToken - Resume token returned with the previous page, or null to start from the first message
+     * @param maxMsgCount - Maximum messages in the page
+     * @return Page of messages and the token to browse the next page with
+     * @throws BrokerManagerAdminException
+     */
+    public QueueBrowsePage browseQueueWithCursor(String queueName, String resumeToken, int maxMsgCount)
+            throws BrokerManagerAdminException {
+        QueueManagerService queueManagerService = AndesBrokerManagerAdminServiceDSHolder.getInstance()
+                .getQueueManagerService();
+        try {
+            org.wso2.carbon.andes.core.types.QueueBrowsePage page = queueManagerService.browseQueueWithCursor(
+                    queueName, getCurrentUser(), getAccessKey(), resumeToken, maxMsgCount);
+            Message[] messageDTOs = new Message[page.getMessages().length];
+            for (int i = 0; i < messageDTOs.length; i++) {
+                messageDTOs[i] = toMessageDTO(page.getMessages()[i]);
+            }
+
+            QueueBrowsePage pageDTO = new QueueBrowsePage();
+            pageDTO.setMessages(messageDTOs);
+            pageDTO.setResumeToken(page.getResumeToken());
+            return pageDTO;
+        } catch (QueueManagerException e) {
+            throw new BrokerManagerAdminException("Unable to browse queue.", e);
+        }
+    }
+
+    /**
+     * Read the whole content of a message in a queue, as browsed messages carry only a preview of their content
+     *
+     * @param queueName - Name of the queue
+     * @param messageID - JMS message ID of the message
+     * @return HTML escaped content of the message
+     * @throws BrokerManagerAdminException
+     */
+    public String getMessageContent(String queueName, String messageID) throws BrokerManagerAdminException {
+        QueueManagerService queueManagerService = AndesBrokerManagerAdminServiceDSHolder.getInstance()
+                .getQueueManagerService();
+        try {
+            return queueManagerService.getMessageContent(queueName, getCurrentUser(), getAccessKey(), messageID);
+        } catch (QueueManagerException e) {
+            throw new BrokerManagerAdminException("Unable to read message content.", e);
+        }
+    }
+
+    private static Message toMessageDTO(org.wso2.carbon.andes.core.types.Message message) {
+        Message messageDTO = new Message();
+        messageDTO.setMsgProperties(message.getMsgProperties());
+        messageDTO.setContentType(message.getContentType());
+        messageDTO.setMessageContent(message.getMessageContent());
+        messageDTO.setJMSMessageId(message.getJMSMessageId());
+        messageDTO.setJMSCorrelationId(message.getJMSCorrelationId());
+        messageDTO.setJMSType(message.getJMSType());
+        messageDTO.setJMSReDelivered(message.getJMSReDelivered());
+        messageDTO.setJMSDeliveredMode(message.getJMSDeliveredMode());
+        messageDTO.setMsgProperties(message.getMsgProperties());
+        messageDTO.setJMSTimeStamp(message.getJMSTimeStamp());
+        messageDTO.setJMSExpiration(message.getJMSExpiration());
+        messageDTO.setDlcMsgDestination(message.getDlcMsgDestination());
+        return messageDTO;
+    }
+
     /**
      * Total messages in the given queue
      *
@@ -492,6 +678,84 @@ public class AndesAdminService extends AbstractAdmin {
         }
     }
 
+    /**
+     * Start publishing copies of a message to given queue in the background, in batches
+     *
+     * @param queueName        - Name of the queue
+     * @param jmsType          - JMS Type
+     * @param jmsCorrelationID - JMS Correlation Id
+     * @param numberOfMessages - Number of times
+     * @param message          - Message content
+     * @param deliveryMode     - Delivery mode
+     * @param priority         - Message priority
+     * @param expireTime       - Message expire time
+     * @param batchSize        - Messages per batch, or 0 for the configured batch size
+     * @param transacted       - true to commit each batch in a transaction
+     * @return ID of the job to read the progress with
+     * @throws BrokerManagerAdminException
+     */
+    public String startBulkPublish(String queueName, String jmsType, String jmsCorrelationID, int numberOfMessages,
+                                   String message, int deliveryMode, int priority, long expireTime, int batchSize,
+                                   boolean transacted) throws BrokerManagerAdminException {
+        QueueManagerService queueManagerService = AndesBrokerManagerAdminServiceDSHolder.getInstance()
+                .getQueueManagerService();
+        try {
+            return queueManagerService.startBulkPublish(queueName, getCurrentUser(), getAccessKey(), jmsType,
+                    jmsCorrelationID, numberOfMessages, message, deliveryMode, priority, expireTime, batchSize,
+                    transacted);
+        } catch (QueueManagerException e) {
+            throw new BrokerManagerAdminException("Unable to start publishing messages.", e);
+        }
+    }
+
+    /**
+     * Get the progress of a job started by the current user
+     *
+     * @param jobId - ID of the job
+     * @return Status of the job
+     * @throws BrokerManagerAdminException
+     */
+    public JobStatus getJobStatus(String jobId) throws BrokerManagerAdminException {
+        QueueManagerService queueManagerService = AndesBrokerManagerAdminServiceDSHolder.getInstance()
+                .getQueueManagerService();
+        try {
+            org.wso2.carbon.andes.core.types.JobStatus status =
+                    queueManagerService.getJobStatus(jobId, getCurrentUser());
+
+            JobStatus statusDTO = new JobStatus();
+            statusDTO.setJobId(status.getJobId());
+            statusDTO.setJobType(status.getJobType());
+            statusDTO.setQueueName(status.getQueueName());
+            statusDTO.setState(status.getState());
+            statusDTO.setProcessedCount(status.getProcessedCount());
+            statusDTO.setTotalCount(status.getTotalCount());
+            statusDTO.setStartTime(status.getStartTime());
+            statusDTO.setEndTime(status.getEndTime());
+            statusDTO.setMessagesPerSecond(status.getMessagesPerSecond());
+            statusDTO.setErrorMessage(status.getErrorMessage());
+            statusDTO.setCancellable(status.isCancellable());
+            return statusDTO;
+        } catch (QueueManagerException e) {
+            throw new BrokerManagerAdminException("Unable to get job status.", e);
+        }
+    }
+
+    /**
+     * Cancel a job started by the current user
+     *
+     * @param jobId - ID of the job
+     * @throws BrokerManagerAdminException
+     */
+    public void cancelJob(String jobId) throws BrokerManagerAdminException {
+        QueueManagerService queueManagerService = AndesBrokerManagerAdminServiceDSHolder.getInstance()
+                .getQueueManagerService();
+        try {
+            queueManagerService.cancelJob(jobId, getCurrentUser());
+        } catch (QueueManagerException e) {
+            throw new BrokerManagerAdminException("Unable to cancel job.", e);
+        }
+    }
+
     public String getAccessKey() {
         return AndesBrokerManagerAdminServiceDSHolder.getInstance().getAccessKey();
     }
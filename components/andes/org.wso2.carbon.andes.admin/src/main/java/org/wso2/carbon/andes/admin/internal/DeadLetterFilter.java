@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.admin.internal;
+
+/**
+ * Predicate selecting messages of a Dead Letter Queue for a bulk operation. Only messages matching all conditions
+ * set are selected, and a filter with no condition set selects all messages.
+ */
+public class DeadLetterFilter {
+
+    private String originalDestination;
+
+    private long fromTime;
+
+    private long toTime;
+
+    private String jmsType;
+
+    private String propertySelector;
+
+    /**
+     * @return Destination the messages were dead lettered from, or null for any destination
+     */
+    public String getOriginalDestination() {
+        return originalDestination;
+    }
+
+    public void setOriginalDestination(String originalDestination) {
+        this.originalDestination = originalDestination;
+    }
+
+    /**
+     * @return Earliest JMS timestamp of the messages in milliseconds since epoch, or 0 for no lower bound
+     */
+    public long getFromTime() {
+        return fromTime;
+    }
+
+    public void setFromTime(long fromTime) {
+        this.fromTime = fromTime;
+    }
+
+    /**
+     * @return Latest JMS timestamp of the messages in milliseconds since epoch, or 0 for no upper bound
+     */
+    public long getToTime() {
+        return toTime;
+    }
+
+    public void setToTime(long toTime) {
+        this.toTime = toTime;
+    }
+
+    /**
+     * @return JMS type of the messages, or null for any type
+     */
+    public String getJmsType() {
+        return jmsType;
+    }
+
+    public void setJmsType(String jmsType) {
+        this.jmsType = jmsType;
+    }
+
+    /**
+     * @return JMS message selector on message properties, or null to not select on properties
+     */
+    public String getPropertySelector() {
+        return propertySelector;
+    }
+
+    public void setPropertySelector(String propertySelector) {
+        this.propertySelector = propertySelector;
+    }
+}
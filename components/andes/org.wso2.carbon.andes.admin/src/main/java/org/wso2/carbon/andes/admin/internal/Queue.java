@@ -29,6 +29,8 @@ public class Queue {
 
     private long messageCount;
 
+    private long messageCountAge;
+
     private Calendar createdTime;
 
     private Calendar updatedTime;
@@ -66,6 +68,17 @@ public class Queue {
         this.messageCount = messageCount;
     }
 
+    /**
+     * @return Age of the message count in milliseconds, 0 if it was read from the broker for this request
+     */
+    public long getMessageCountAge() {
+        return messageCountAge;
+    }
+
+    public void setMessageCountAge(long messageCountAge) {
+        this.messageCountAge = messageCountAge;
+    }
+
     public Calendar getCreatedTime() {
         return createdTime;
     }
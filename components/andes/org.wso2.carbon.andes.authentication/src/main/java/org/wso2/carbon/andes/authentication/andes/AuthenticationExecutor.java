@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.authentication.andes;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs user store authentications on a dedicated, bounded pool of workers so that a slow user store does not
+ * hold broker threads indefinitely. Authentications are admitted only if the tenant has not exceeded its share
+ * of pending authentications and the queue has room; otherwise they are rejected right away. A caller waits for
+ * its authentication only up to the configured timeout. Workers run authentications in the tenant flow of the
+ * caller.
+ */
+public class AuthenticationExecutor implements AuthenticationExecutorMBean {
+
+    /**
+     * System property to enable/disable the executor. Authentications run on the calling thread if disabled.
+     */
+    public static final String ENABLED_PROPERTY = "andes.authentication.executor.enabled";
+
+    /**
+     * System property for the number of authentication workers
+     */
+    public static final String POOL_SIZE_PROPERTY = "andes.authentication.executor.poolSize";
+
+    /**
+     * System property for the number of authentications that can wait for a worker
+     */
+    public static final String QUEUE_CAPACITY_PROPERTY = "andes.authentication.executor.queueCapacity";
+
+    /**
+     * System property for the number of pending authentications allowed per tenant
+     */
+    public static final String MAX_PENDING_PER_TENANT_PROPERTY =
+            "andes.authentication.executor.maxPendingPerTenant";
+
+    /**
+     * System property for the time in milliseconds a caller waits for an authentication
+     */
+    public static final String TIMEOUT_PROPERTY = "andes.authentication.executor.timeout";
+
+    private static final int DEFAULT_POOL_SIZE = 16;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    private static final int DEFAULT_MAX_PENDING_PER_TENANT = 250;
+    private static final long DEFAULT_TIMEOUT = 30000;
+    private static final double NANOS_PER_MILLISECOND = 1000000d;
+
+    private static AuthenticationExecutor instance = new AuthenticationExecutor();
+
+    private final boolean enabled;
+    private final int poolSize;
+    private final int queueCapacity;
+    private final int maxPendingPerTenant;
+    private final long timeout;
+    private volatile ThreadPoolExecutor executor;
+    private final ConcurrentMap<Integer, Semaphore> tenantPermits = new ConcurrentHashMap<Integer, Semaphore>();
+
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalQueueWaitTime = new AtomicLong();
+    private final AtomicLong maxQueueWaitTime = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    private AuthenticationExecutor() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, true);
+        poolSize = CommonsUtil.getIntProperty(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE);
+        queueCapacity = CommonsUtil.getIntProperty(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY);
+        maxPendingPerTenant = CommonsUtil.getIntProperty(MAX_PENDING_PER_TENANT_PROPERTY,
+                DEFAULT_MAX_PENDING_PER_TENANT);
+        timeout = CommonsUtil.getLongProperty(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT);
+    }
+
+    public static AuthenticationExecutor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start the workers
+     */
+    public synchronized void start() {
+        if (!enabled || null != executor) {
+            return;
+        }
+
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new AuthenticationThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Run an authentication and wait for the result
+     *
+     * @param tenantId       Tenant of the user being authenticated
+     * @param authentication Authentication against the user store
+     * @param <T>            Type of the authentication result
+     * @return Result of the authentication
+     * @throws AuthenticationRejectedException if the authentication could not be admitted or did not complete
+     *                                         within the timeout
+     * @throws ExecutionException              if the authentication failed with an exception
+     * @throws InterruptedException            if the caller was interrupted while waiting
+     */
+    public <T> T execute(int tenantId, Callable<T> authentication)
+            throws AuthenticationRejectedException, ExecutionException, InterruptedException {
+        if (!enabled) {
+            try {
+                return authentication.call();
+            } catch (Exception e) {
+                throw new ExecutionException(e);
+            }
+        }
+
+        ThreadPoolExecutor currentExecutor = executor;
+        if (null == currentExecutor) {
+            rejectedCount.incrementAndGet();
+            throw new AuthenticationRejectedException("Authentication workers are not running.");
+        }
+
+        final Semaphore permits = getTenantPermits(tenantId);
+        if (!permits.tryAcquire()) {
+            rejectedCount.incrementAndGet();
+            throw new AuthenticationRejectedException("Too many pending authentications for tenant " + tenantId);
+        }
+
+        // Permit is given back once the authentication completes or is cancelled
+        FutureTask<T> future = new FutureTask<T>(new TimedAuthentication<T>(
+                authentication, tenantId, PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain())) {
+            @Override
+            protected void done() {
+                permits.release();
+            }
+        };
+
+        try {
+            currentExecutor.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.cancel(false);
+            rejectedCount.incrementAndGet();
+            throw new AuthenticationRejectedException("Authentication queue is full.", e);
+        }
+
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeoutCount.incrementAndGet();
+            throw new AuthenticationRejectedException(
+                    "Authentication did not complete within " + timeout + "ms.", e);
+        }
+    }
+
+    /**
+     * Stop the workers. Pending authentications are cancelled.
+     */
+    public synchronized void shutdown() {
+        if (null != executor) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getActiveCount() {
+        ThreadPoolExecutor currentExecutor = executor;
+        return (null != currentExecutor) ? currentExecutor.getActiveCount() : 0;
+    }
+
+    public int getQueueSize() {
+        ThreadPoolExecutor currentExecutor = executor;
+        return (null != currentExecutor) ? currentExecutor.getQueue().size() : 0;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public double getAverageQueueWaitTime() {
+        long count = completedCount.get();
+        return (0 == count) ? 0 : totalQueueWaitTime.get() / NANOS_PER_MILLISECOND / count;
+    }
+
+    public double getMaxQueueWaitTime() {
+        return maxQueueWaitTime.get() / NANOS_PER_MILLISECOND;
+    }
+
+    public double getAverageLatency() {
+        long count = completedCount.get();
+        return (0 == count) ? 0 : totalLatency.get() / NANOS_PER_MILLISECOND / count;
+    }
+
+    public double getMaxLatency() {
+        return maxLatency.get() / NANOS_PER_MILLISECOND;
+    }
+
+    public void resetStatistics() {
+        completedCount.set(0);
+        rejectedCount.set(0);
+        timeoutCount.set(0);
+        totalQueueWaitTime.set(0);
+        maxQueueWaitTime.set(0);
+        totalLatency.set(0);
+        maxLatency.set(0);
+    }
+
+    private Semaphore getTenantPermits(int tenantId) {
+        Semaphore permits = tenantPermits.get(tenantId);
+        if (null == permits) {
+            permits = new Semaphore(maxPendingPerTenant);
+            Semaphore existingPermits = tenantPermits.putIfAbsent(tenantId, permits);
+            if (null != existingPermits) {
+                permits = existingPermits;
+            }
+        }
+        return permits;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Runs an authentication in the tenant flow of the caller, recording the time it waited for a worker and the
+     * time it took
+     */
+    private class TimedAuthentication<T> implements Callable<T> {
+
+        private final Callable<T> authentication;
+        private final int tenantId;
+        private final String tenantDomain;
+        private final long submittedTime = System.nanoTime();
+
+        private TimedAuthentication(Callable<T> authentication, int tenantId, String tenantDomain) {
+            this.authentication = authentication;
+            this.tenantId = tenantId;
+            this.tenantDomain = tenantDomain;
+        }
+
+        public T call() throws Exception {
+            long startedTime = System.nanoTime();
+            long queueWaitTime = startedTime - submittedTime;
+            PrivilegedCarbonContext.startTenantFlow();
+            try {
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId);
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain);
+                return authentication.call();
+            } finally {
+                PrivilegedCarbonContext.endTenantFlow();
+                long latency = System.nanoTime() - startedTime;
+                completedCount.incrementAndGet();
+                totalQueueWaitTime.addAndGet(queueWaitTime);
+                updateMax(maxQueueWaitTime, queueWaitTime);
+                totalLatency.addAndGet(latency);
+                updateMax(maxLatency, latency);
+            }
+        }
+    }
+
+    /**
+     * Creates named daemon threads for the authentication workers
+     */
+    private static class AuthenticationThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AndesAuthenticationWorker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.authentication.andes;
+
+/**
+ * Management interface of the authentication executor
+ */
+public interface AuthenticationExecutorMBean {
+
+    /**
+     * Object name the authentication executor is registered with in the platform MBean server
+     */
+    String OBJECT_NAME = "org.wso2.carbon.andes:type=Authentication,name=AuthenticationExecutor";
+
+    boolean isEnabled();
+
+    int getPoolSize();
+
+    int getActiveCount();
+
+    int getQueueSize();
+
+    int getQueueCapacity();
+
+    long getCompletedCount();
+
+    long getRejectedCount();
+
+    long getTimeoutCount();
+
+    /**
+     * @return Average time in milliseconds authentications waited in the queue before a worker picked them up
+     */
+    double getAverageQueueWaitTime();
+
+    /**
+     * @return Maximum time in milliseconds an authentication waited in the queue
+     */
+    double getMaxQueueWaitTime();
+
+    /**
+     * @return Average time in milliseconds taken by the user store to authenticate
+     */
+    double getAverageLatency();
+
+    /**
+     * @return Maximum time in milliseconds taken by the user store to authenticate
+     */
+    double getMaxLatency();
+
+    /**
+     * Reset the counters and timings
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.authentication.andes;
+
+/**
+ * Thrown when an authentication could not be carried out in time because the authentication workers are
+ * saturated or the user store is too slow
+ */
+public class AuthenticationRejectedException extends Exception {
+
+    public AuthenticationRejectedException() {
+    }
+
+    public AuthenticationRejectedException(String message) {
+        super(message);
+    }
+
+    public AuthenticationRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public AuthenticationRejectedException(Throwable cause) {
+        super(cause);
+    }
+}
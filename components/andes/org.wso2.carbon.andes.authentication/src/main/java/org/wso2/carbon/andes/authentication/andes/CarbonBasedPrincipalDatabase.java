@@ -25,9 +25,11 @@ import org.wso2.andes.server.security.auth.sasl.UsernamePrincipal;
 import org.wso2.andes.server.security.auth.sasl.plain.PlainInitialiser;
 import org.wso2.andes.server.security.auth.sasl.plain.PlainPasswordCallback;
 import org.wso2.carbon.andes.authentication.internal.AuthenticationServiceDataHolder;
+import org.wso2.carbon.andes.commons.cache.TenantRealmCache;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.user.api.UserRealm;
 import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.api.UserStoreManager;
 import org.wso2.carbon.user.core.service.RealmService;
 import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 
@@ -38,6 +40,8 @@ import java.security.Principal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Carbon-based principal database for Apache Qpid. This uses Carbon user manager to handle authentication
@@ -89,8 +93,19 @@ public class CarbonBasedPrincipalDatabase implements PrincipalDatabase {
         try {
             UserRealm userRealm = getUserRealm(username);
 
-            if ((null != userRealm) && userRealm.getUserStoreManager().isExistingUser(username)) {
-                user = new UsernamePrincipal(username);
+            if (null != userRealm) {
+                int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
+                UnknownPrincipalFilter unknownPrincipalFilter = UnknownPrincipalFilter.getInstance();
+
+                if (unknownPrincipalFilter.isNonExistent(tenantId, username)) {
+                    return null;
+                }
+
+                if (userRealm.getUserStoreManager().isExistingUser(username)) {
+                    user = new UsernamePrincipal(username);
+                } else {
+                    unknownPrincipalFilter.addNonExistent(tenantId, username);
+                }
             }
         } catch (Exception e) {
             logger.error("Error while retrieving RegistryService.", e);
@@ -134,7 +149,6 @@ public class CarbonBasedPrincipalDatabase implements PrincipalDatabase {
             // Given username/password
             String username = principal.getName();
             String password = ((PlainPasswordCallback) passwordCallback).getPlainPassword();
-            String domainName = null;
 
             boolean isAuthenticated = false;
 
@@ -152,32 +166,50 @@ public class CarbonBasedPrincipalDatabase implements PrincipalDatabase {
                 // Get username from tenant username
                 int domainNameSeparatorIndex = username.indexOf(DOMAIN_NAME_SEPARATOR);
                 if (-1 != domainNameSeparatorIndex) {
-                    domainName = username.substring(domainNameSeparatorIndex + 1);
                     username = username.substring(0, domainNameSeparatorIndex);
                 }
 
-                // User not found in the UM
-                if (!userRealm.getUserStoreManager().isExistingUser(username)) {
-
+                // Reject usernames known not to exist without going to the user store
+                int tenantId = PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId();
+                if (UnknownPrincipalFilter.getInstance().isNonExistent(tenantId, username)) {
                     throw new AccountNotFoundException("Invalid User : " + principal);
                 }
 
-                // Check if the user is authenticated
-                isAuthenticated = userRealm.getUserStoreManager().authenticate(username, password);
-                if (isAuthenticated && -1 != domainNameSeparatorIndex) {
-                    RealmService realmService = AuthenticationServiceDataHolder.getInstance().getRealmService();
-                    int tenantID = realmService.getTenantManager().getTenantId(domainName);
-                    PrivilegedCarbonContext.destroyCurrentContext();
-                    PrivilegedCarbonContext cc = PrivilegedCarbonContext.getThreadLocalCarbonContext();
-                    cc.setTenantDomain(domainName);
-                    cc.setTenantId(tenantID);
+                // Skip the user store if the user was recently authenticated with the same password
+                String[] roles = CredentialCache.getInstance().verify(tenantId, username, password);
+
+                if (null != roles) {
+                    isAuthenticated = true;
+                } else {
+                    // Go to the user store on an authentication worker, not to hold the broker thread
+                    roles = AuthenticationExecutor.getInstance().execute(
+                            tenantId, new UserStoreAuthentication(
+                            userRealm, tenantId, principal.getName(), username, password));
+                    isAuthenticated = (null != roles);
+
+                    if (isAuthenticated) {
+                        CredentialCache.getInstance().put(tenantId, username, password, roles);
+                    }
+                }
+
+                // Resolve roles once for the connection, to be used when authorizing its operations
+                if (isAuthenticated) {
+                    RoleSnapshotHolder.getInstance().put(new RoleSnapshotPrincipal(principal.getName(), roles));
                 }
             }
 
             // Let the engine know if the user is authenticated or not
             ((PlainPasswordCallback) passwordCallback).setAuthenticated(isAuthenticated);
-        } catch (UserStoreException e) {
-            logger.error("User not authenticated.", e);
+        } catch (AuthenticationRejectedException e) {
+            logger.warn("User " + principal + " not authenticated. " + e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AccountNotFoundException) {
+                throw (AccountNotFoundException) e.getCause();
+            }
+            logger.error("User not authenticated.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while authenticating user " + principal, e);
         } catch (NullPointerException e) {
             logger.error("Error while authenticating.", e);
         }
@@ -186,6 +218,51 @@ public class CarbonBasedPrincipalDatabase implements PrincipalDatabase {
     public void setPasswordFile(String passwordFile) {
     }
 
+    /**
+     * Authenticates a user against the user store. Resolves to the roles of the user if authenticated,
+     * or null otherwise.
+     */
+    private static class UserStoreAuthentication implements Callable<String[]> {
+
+        private final UserRealm userRealm;
+        private final int tenantId;
+        private final String principalName;
+        private final String username;
+        private final String password;
+
+        private UserStoreAuthentication(UserRealm userRealm, int tenantId, String principalName, String username,
+                                        String password) {
+            this.userRealm = userRealm;
+            this.tenantId = tenantId;
+            this.principalName = principalName;
+            this.username = username;
+            this.password = password;
+        }
+
+        public String[] call() throws UserStoreException, AccountNotFoundException {
+            UserStoreManager userStoreManager = userRealm.getUserStoreManager();
+
+            // User not found in the UM
+            if (!userStoreManager.isExistingUser(username)) {
+                UnknownPrincipalFilter.getInstance().addNonExistent(tenantId, username);
+                throw new AccountNotFoundException("Invalid User : " + principalName);
+            }
+
+            // Check if the user is authenticated
+            if (!userStoreManager.authenticate(username, password)) {
+                return null;
+            }
+
+            return userStoreManager.getRoleListOfUser(username);
+        }
+    }
+
+    /**
+     * Get the user realm of a user's tenant. The carbon context of the thread is set to the user's tenant.
+     *
+     * @param username Username, with the tenant domain if the user is a tenant user
+     * @return User realm
+     */
     private UserRealm getUserRealm(String username) {
         UserRealm userRealm = null;
 
@@ -193,19 +270,27 @@ public class CarbonBasedPrincipalDatabase implements PrincipalDatabase {
         if (null != realmService) {
             try {
                 // Get tenant ID
-                int tenantID = MultitenantConstants.SUPER_TENANT_ID;
+                String domainName = MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
                 int domainNameSeparatorIndex = username.indexOf(DOMAIN_NAME_SEPARATOR);
-                PrivilegedCarbonContext.destroyCurrentContext();
-                PrivilegedCarbonContext cc = PrivilegedCarbonContext.getThreadLocalCarbonContext();
-                cc.setTenantDomain(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME);
-                cc.setTenantId(tenantID);
                 if (-1 != domainNameSeparatorIndex) { // Service case
-                    String domainName = username.substring(domainNameSeparatorIndex + 1);
-                    tenantID = realmService.getTenantManager().getTenantId(domainName);
+                    domainName = username.substring(domainNameSeparatorIndex + 1);
+                }
+                int tenantID = TenantRealmCache.getInstance().getTenantId(realmService, domainName);
+
+                // The broker thread keeps its context across connections. Carbon does not let a context be
+                // moved from one tenant to another, so it is renewed only when the tenant differs.
+                PrivilegedCarbonContext cc = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                if (tenantID != cc.getTenantId()) {
+                    if (MultitenantConstants.INVALID_TENANT_ID != cc.getTenantId()) {
+                        PrivilegedCarbonContext.destroyCurrentContext();
+                        cc = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                    }
+                    cc.setTenantDomain(domainName);
+                    cc.setTenantId(tenantID);
                 }
 
                 // Get Realm
-                userRealm = realmService.getTenantUserRealm(tenantID);
+                userRealm = TenantRealmCache.getInstance().getTenantUserRealm(realmService, tenantID);
             } catch (org.wso2.carbon.user.api.UserStoreException e) {
                 logger.error("Error while getting tenant user realm for user " + username, e);
             }
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.authentication.andes;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.andes.authentication.internal.AuthenticationServiceDataHolder;
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.commons.cache.BoundedTimedCache;
+import org.wso2.carbon.andes.commons.cache.TenantRealmCache;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches successful authentications of broker connections, so that clients reconnecting within a short time
+ * are authenticated without going to the user store. Passwords are never kept; a salted PBKDF2 hash of the
+ * password is kept instead, along with the roles of the user resolved at the time of authentication.
+ * <p/>
+ * The cache is disabled by default. Entries are kept per tenant and dropped when the credentials or roles of
+ * the user change, or through the management interface.
+ */
+public class CredentialCache implements CredentialCacheMBean {
+
+    private static final Logger logger = Logger.getLogger(CredentialCache.class);
+
+    /**
+     * System property to enable/disable the cache
+     */
+    public static final String ENABLED_PROPERTY = "andes.authentication.cache.enabled";
+
+    /**
+     * System property for the time in seconds a successful authentication is kept
+     */
+    public static final String TIME_TO_LIVE_PROPERTY = "andes.authentication.cache.timeToLive";
+
+    /**
+     * System property for the maximum number of users kept per tenant
+     */
+    public static final String MAX_SIZE_PROPERTY = "andes.authentication.cache.maxEntriesPerTenant";
+
+    /**
+     * System property for the number of PBKDF2 iterations used to hash credentials
+     */
+    public static final String HASH_ITERATIONS_PROPERTY = "andes.authentication.cache.hashIterations";
+
+    private static final int DEFAULT_TIME_TO_LIVE = 120;
+    private static final int DEFAULT_MAX_SIZE = 50000;
+    private static final int DEFAULT_HASH_ITERATIONS = 1000;
+    private static final String HASH_ALGORITHM = "PBKDF2WithHmacSHA1";
+    private static final int HASH_LENGTH = 160;
+    private static final int SALT_LENGTH = 16;
+    private static final String DOMAIN_NAME_SEPARATOR = "!";
+
+    private static CredentialCache instance = new CredentialCache();
+
+    private final boolean enabled;
+    private final long timeToLive;
+    private final int maxSize;
+    private final int hashIterations;
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ConcurrentMap<Integer, BoundedTimedCache<String, CachedCredential>> tenantCaches =
+            new ConcurrentHashMap<Integer, BoundedTimedCache<String, CachedCredential>>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private CredentialCache() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, false);
+        timeToLive = CommonsUtil.getIntProperty(TIME_TO_LIVE_PROPERTY, DEFAULT_TIME_TO_LIVE) * 1000L;
+        maxSize = CommonsUtil.getIntProperty(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+        hashIterations = CommonsUtil.getIntProperty(HASH_ITERATIONS_PROPERTY, DEFAULT_HASH_ITERATIONS);
+    }
+
+    public static CredentialCache getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Verify the credentials of a user against the cache
+     *
+     * @param tenantId Tenant of the user
+     * @param username Username without the tenant domain
+     * @param password Given password
+     * @return Roles of the user if the user was authenticated with the same password within the time to live,
+     *         null otherwise
+     */
+    public String[] verify(int tenantId, String username, String password) {
+        if (!enabled) {
+            return null;
+        }
+
+        BoundedTimedCache<String, CachedCredential> tenantCache = tenantCaches.get(tenantId);
+        CachedCredential cachedCredential = (null != tenantCache) ? tenantCache.get(username) : null;
+
+        if (null != cachedCredential && MessageDigest.isEqual(
+                cachedCredential.hash, hash(password, cachedCredential.salt))) {
+            hitCount.incrementAndGet();
+            return cachedCredential.roles;
+        }
+
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Cache a successful authentication
+     *
+     * @param tenantId Tenant of the user
+     * @param username Username without the tenant domain
+     * @param password Password the user was authenticated with
+     * @param roles    Roles of the user
+     */
+    public void put(int tenantId, String username, String password, String[] roles) {
+        if (!enabled) {
+            return;
+        }
+
+        byte[] salt = new byte[SALT_LENGTH];
+        secureRandom.nextBytes(salt);
+        byte[] hash = hash(password, salt);
+        if (null == hash) {
+            return;
+        }
+
+        BoundedTimedCache<String, CachedCredential> tenantCache = tenantCaches.get(tenantId);
+        if (null == tenantCache) {
+            tenantCache = new BoundedTimedCache<String, CachedCredential>(maxSize, timeToLive);
+            BoundedTimedCache<String, CachedCredential> existingCache =
+                    tenantCaches.putIfAbsent(tenantId, tenantCache);
+            if (null != existingCache) {
+                tenantCache = existingCache;
+            }
+        }
+
+        tenantCache.put(username, new CachedCredential(salt, hash, roles));
+    }
+
+    /**
+     * Drop the cached credentials of a user
+     *
+     * @param tenantId Tenant of the user
+     * @param username Username without the tenant domain
+     */
+    public void invalidateUser(int tenantId, String username) {
+        BoundedTimedCache<String, CachedCredential> tenantCache = tenantCaches.get(tenantId);
+        if (null != tenantCache) {
+            tenantCache.remove(username);
+        }
+    }
+
+    /**
+     * Drop the cached credentials of all users of a tenant
+     *
+     * @param tenantId Tenant ID
+     */
+    public void invalidateTenant(int tenantId) {
+        tenantCaches.remove(tenantId);
+    }
+
+    public void invalidateUser(String username) {
+        String tenantDomain = MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
+        int domainNameSeparatorIndex = username.indexOf(DOMAIN_NAME_SEPARATOR);
+        if (-1 != domainNameSeparatorIndex) {
+            tenantDomain = username.substring(domainNameSeparatorIndex + 1);
+            username = username.substring(0, domainNameSeparatorIndex);
+        }
+
+        Integer tenantId = getTenantId(tenantDomain);
+        if (null != tenantId) {
+            invalidateUser(tenantId, username);
+        }
+    }
+
+    public void invalidateTenant(String tenantDomain) {
+        Integer tenantId = getTenantId(tenantDomain);
+        if (null != tenantId) {
+            invalidateTenant(tenantId);
+        }
+    }
+
+    public void invalidateAll() {
+        tenantCaches.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (BoundedTimedCache<String, CachedCredential> tenantCache : tenantCaches.values()) {
+            size += tenantCache.size();
+        }
+        return size;
+    }
+
+    private Integer getTenantId(String tenantDomain) {
+        RealmService realmService = AuthenticationServiceDataHolder.getInstance().getRealmService();
+        if (null == realmService) {
+            return null;
+        }
+
+        try {
+            return TenantRealmCache.getInstance().getTenantId(realmService, tenantDomain);
+        } catch (UserStoreException e) {
+            logger.error("Error while getting tenant ID of " + tenantDomain, e);
+            return null;
+        }
+    }
+
+    private byte[] hash(String password, byte[] salt) {
+        try {
+            PBEKeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt, hashIterations, HASH_LENGTH);
+            return SecretKeyFactory.getInstance(HASH_ALGORITHM).generateSecret(keySpec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            logger.error("Error while hashing credentials, authentication will not be cached.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Salted hash of the credentials a user was authenticated with, along with the user's roles
+     */
+    private static class CachedCredential {
+
+        private final byte[] salt;
+        private final byte[] hash;
+        private final String[] roles;
+
+        private CachedCredential(byte[] salt, byte[] hash, String[] roles) {
+            this.salt = salt;
+            this.hash = hash;
+            this.roles = roles;
+        }
+    }
+}
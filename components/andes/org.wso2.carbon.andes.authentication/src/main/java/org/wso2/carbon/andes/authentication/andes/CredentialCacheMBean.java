@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.authentication.andes;
+
+/**
+ * Management interface of the credential cache
+ */
+public interface CredentialCacheMBean {
+
+    /**
+     * Object name the credential cache is registered with in the platform MBean server
+     */
+    String OBJECT_NAME = "org.wso2.carbon.andes:type=Authentication,name=CredentialCache";
+
+    boolean isEnabled();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    int getSize();
+
+    /**
+     * Drop the cached credentials of a user
+     *
+     * @param username Username, with the tenant domain if the user is a tenant user (eg: user!tenant.com)
+     */
+    void invalidateUser(String username);
+
+    /**
+     * Drop the cached credentials of all users of a tenant
+     *
+     * @param tenantDomain Tenant domain
+     */
+    void invalidateTenant(String tenantDomain);
+
+    /**
+     * Drop all cached credentials
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.authentication.andes;
+
+import org.wso2.carbon.andes.commons.cache.BoundedTimedCache;
+
+/**
+ * Holds role snapshots resolved while authenticating a connection until the Subject of the connection is
+ * available to the authorization plugin. The principal database does not have access to the Subject, hence
+ * the snapshot is handed over by the principal name.
+ */
+public class RoleSnapshotHolder {
+
+    private static final int MAX_PENDING_SNAPSHOTS = 10000;
+    private static final long PENDING_SNAPSHOT_TIME_TO_LIVE = 60 * 1000L;
+
+    private static RoleSnapshotHolder instance = new RoleSnapshotHolder();
+
+    private final BoundedTimedCache<String, RoleSnapshotPrincipal> pendingSnapshots =
+            new BoundedTimedCache<String, RoleSnapshotPrincipal>(MAX_PENDING_SNAPSHOTS,
+                    PENDING_SNAPSHOT_TIME_TO_LIVE);
+
+    private RoleSnapshotHolder() {
+    }
+
+    public static RoleSnapshotHolder getInstance() {
+        return instance;
+    }
+
+    /**
+     * Keep the role snapshot of a user who just got authenticated
+     *
+     * @param roleSnapshot Role snapshot
+     */
+    public void put(RoleSnapshotPrincipal roleSnapshot) {
+        pendingSnapshots.put(roleSnapshot.getName(), roleSnapshot);
+    }
+
+    /**
+     * Take the role snapshot resolved for a principal while authenticating
+     *
+     * @param principalName Name of the user principal
+     * @return Role snapshot or null if there is none
+     */
+    public RoleSnapshotPrincipal take(String principalName) {
+        return pendingSnapshots.remove(principalName);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.authentication.andes;
+
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the roles of an authenticated user. This is attached to the Subject of a broker
+ * connection so that authorization of the connection's operations does not need to go to the user store.
+ */
+public class RoleSnapshotPrincipal implements Principal {
+
+    private final String name;
+    private final Set<String> roles;
+    private final long resolvedTime;
+
+    /**
+     * Create a role snapshot
+     *
+     * @param name  Name of the user principal the roles belong to, including the tenant domain
+     * @param roles Roles of the user
+     */
+    public RoleSnapshotPrincipal(String name, String[] roles) {
+        this.name = name;
+        this.roles = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(roles)));
+        this.resolvedTime = System.currentTimeMillis();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    public long getResolvedTime() {
+        return resolvedTime;
+    }
+
+    /**
+     * Check whether the roles were resolved longer ago than the given interval
+     *
+     * @param interval Interval in milliseconds
+     * @return true if the snapshot is older than the interval
+     */
+    public boolean isOlderThan(long interval) {
+        return System.currentTimeMillis() - resolvedTime > interval;
+    }
+
+    @Override
+    public String toString() {
+        return "RoleSnapshotPrincipal{name=" + name + ", roles=" + roles + "}";
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.authentication.andes;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.commons.cache.BoundedTimedCache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rejects usernames that do not exist without going to the user store. Usernames the user store reported as
+ * non-existent are remembered for a short time per tenant, and forgotten right away when a user of that name is
+ * added on this node.
+ */
+public class UnknownPrincipalFilter {
+
+    /**
+     * System property to enable/disable remembering non-existent usernames
+     */
+    public static final String NEGATIVE_CACHE_ENABLED_PROPERTY = "andes.authentication.negativeCache.enabled";
+
+    /**
+     * System property for the time in seconds a non-existent username is remembered
+     */
+    public static final String NEGATIVE_CACHE_TIME_TO_LIVE_PROPERTY = "andes.authentication.negativeCache.timeToLive";
+
+    /**
+     * System property for the maximum number of non-existent usernames remembered per tenant
+     */
+    public static final String NEGATIVE_CACHE_MAX_SIZE_PROPERTY =
+            "andes.authentication.negativeCache.maxEntriesPerTenant";
+
+    private static final int DEFAULT_NEGATIVE_CACHE_TIME_TO_LIVE = 30;
+    private static final int DEFAULT_NEGATIVE_CACHE_MAX_SIZE = 10000;
+
+    private static UnknownPrincipalFilter instance = new UnknownPrincipalFilter();
+
+    private final boolean negativeCacheEnabled;
+    private final long negativeCacheTimeToLive;
+    private final int negativeCacheMaxSize;
+
+    private final ConcurrentMap<Integer, BoundedTimedCache<String, Boolean>> negativeCaches =
+            new ConcurrentHashMap<Integer, BoundedTimedCache<String, Boolean>>();
+
+    private UnknownPrincipalFilter() {
+        negativeCacheEnabled = CommonsUtil.getBooleanProperty(NEGATIVE_CACHE_ENABLED_PROPERTY, true);
+        negativeCacheTimeToLive = CommonsUtil.getIntProperty(NEGATIVE_CACHE_TIME_TO_LIVE_PROPERTY,
+                DEFAULT_NEGATIVE_CACHE_TIME_TO_LIVE) * 1000L;
+        negativeCacheMaxSize = CommonsUtil.getIntProperty(NEGATIVE_CACHE_MAX_SIZE_PROPERTY,
+                DEFAULT_NEGATIVE_CACHE_MAX_SIZE);
+    }
+
+    public static UnknownPrincipalFilter getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return negativeCacheEnabled;
+    }
+
+    /**
+     * Drop everything remembered
+     */
+    public void shutdown() {
+        negativeCaches.clear();
+    }
+
+    /**
+     * Check whether a username is known not to exist
+     *
+     * @param tenantId Tenant of the user
+     * @param username Username without the tenant domain
+     * @return true if the user store recently reported the username as non-existent, false otherwise
+     */
+    public boolean isNonExistent(int tenantId, String username) {
+        if (!negativeCacheEnabled) {
+            return false;
+        }
+
+        BoundedTimedCache<String, Boolean> negativeCache = negativeCaches.get(tenantId);
+        return (null != negativeCache) && (null != negativeCache.get(username));
+    }
+
+    /**
+     * Remember that the user store reported a username as non-existent
+     *
+     * @param tenantId Tenant of the user
+     * @param username Username without the tenant domain
+     */
+    public void addNonExistent(int tenantId, String username) {
+        if (!negativeCacheEnabled) {
+            return;
+        }
+
+        BoundedTimedCache<String, Boolean> negativeCache = negativeCaches.get(tenantId);
+        if (null == negativeCache) {
+            negativeCache = new BoundedTimedCache<String, Boolean>(negativeCacheMaxSize, negativeCacheTimeToLive);
+            BoundedTimedCache<String, Boolean> existingCache = negativeCaches.putIfAbsent(tenantId, negativeCache);
+            if (null != existingCache) {
+                negativeCache = existingCache;
+            }
+        }
+        negativeCache.put(username, Boolean.TRUE);
+    }
+
+    /**
+     * Record a username that exists, eg: a newly added user
+     *
+     * @param tenantId Tenant of the user
+     * @param username Username without the tenant domain
+     */
+    public void addExistent(int tenantId, String username) {
+        BoundedTimedCache<String, Boolean> negativeCache = negativeCaches.get(tenantId);
+        if (null != negativeCache) {
+            negativeCache.remove(username);
+        }
+    }
+
+    /**
+     * Drop everything remembered of a tenant
+     *
+     * @param tenantId Tenant ID
+     */
+    public void invalidateTenant(int tenantId) {
+        negativeCaches.remove(tenantId);
+    }
+}
@@ -20,9 +20,16 @@ package org.wso2.carbon.andes.authentication.internal;
 
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
+import org.wso2.carbon.andes.authentication.andes.AuthenticationExecutor;
+import org.wso2.carbon.andes.authentication.andes.AuthenticationExecutorMBean;
+import org.wso2.carbon.andes.authentication.andes.CredentialCache;
+import org.wso2.carbon.andes.authentication.andes.CredentialCacheMBean;
+import org.wso2.carbon.andes.authentication.andes.UnknownPrincipalFilter;
 import org.wso2.carbon.andes.authentication.service.AuthenticationService;
 import org.wso2.carbon.andes.authentication.service.AuthenticationServiceImpl;
+import org.wso2.carbon.andes.commons.CommonsUtil;
 import org.wso2.carbon.registry.core.service.RegistryService;
+import org.wso2.carbon.user.core.listener.UserOperationEventListener;
 import org.wso2.carbon.user.core.service.RealmService;
 
 import java.util.UUID;
@@ -46,6 +53,8 @@ import java.util.UUID;
 public class AuthenticationServiceComponent {
 
     private ServiceRegistration authenticationService = null;
+    private ServiceRegistration credentialCacheInvalidator = null;
+    private ServiceRegistration unknownPrincipalFilterUpdater = null;
 
     protected void activate(ComponentContext ctx) {
         // Generate access key
@@ -56,6 +65,26 @@ public class AuthenticationServiceComponent {
         authenticationService = ctx.getBundleContext().registerService(
                 AuthenticationService.class.getName(),
                 new AuthenticationServiceImpl(accessKey), null);
+
+        if (CredentialCache.getInstance().isEnabled()) {
+            // Register listener to drop cached credentials on credential/role changes
+            credentialCacheInvalidator = ctx.getBundleContext().registerService(
+                    UserOperationEventListener.class.getName(), new CredentialCacheInvalidator(), null);
+
+            // Expose cache metrics and invalidation through JMX
+            CommonsUtil.registerMBean(CredentialCache.getInstance(), CredentialCacheMBean.OBJECT_NAME);
+        }
+
+        if (AuthenticationExecutor.getInstance().isEnabled()) {
+            AuthenticationExecutor.getInstance().start();
+            CommonsUtil.registerMBean(AuthenticationExecutor.getInstance(), AuthenticationExecutorMBean.OBJECT_NAME);
+        }
+
+        if (UnknownPrincipalFilter.getInstance().isEnabled()) {
+            // Register listener to let newly added users through the unknown principal filter
+            unknownPrincipalFilterUpdater = ctx.getBundleContext().registerService(
+                    UserOperationEventListener.class.getName(), new UnknownPrincipalFilterUpdater(), null);
+        }
     }
 
     protected void deactivate(ComponentContext ctx) {
@@ -63,6 +92,21 @@ public class AuthenticationServiceComponent {
         if (null != authenticationService) {
             authenticationService.unregister();
         }
+
+        if (null != credentialCacheInvalidator) {
+            credentialCacheInvalidator.unregister();
+            CommonsUtil.unregisterMBean(CredentialCacheMBean.OBJECT_NAME);
+        }
+
+        CredentialCache.getInstance().invalidateAll();
+
+        CommonsUtil.unregisterMBean(AuthenticationExecutorMBean.OBJECT_NAME);
+        AuthenticationExecutor.getInstance().shutdown();
+
+        if (null != unknownPrincipalFilterUpdater) {
+            unknownPrincipalFilterUpdater.unregister();
+        }
+        UnknownPrincipalFilter.getInstance().shutdown();
     }
 
     protected void setRegistryService(RegistryService registryService) {
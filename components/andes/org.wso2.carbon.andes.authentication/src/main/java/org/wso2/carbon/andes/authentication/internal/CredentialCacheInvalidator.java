@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.authentication.internal;
+
+import org.wso2.carbon.andes.authentication.andes.CredentialCache;
+import org.wso2.carbon.user.core.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.common.AbstractUserOperationEventListener;
+
+/**
+ * Drops cached credentials when the credentials or roles of users change
+ */
+public class CredentialCacheInvalidator extends AbstractUserOperationEventListener {
+
+    private static final int EXECUTION_ORDER_ID = 91;
+
+    @Override
+    public int getExecutionOrderId() {
+        return EXECUTION_ORDER_ID;
+    }
+
+    @Override
+    public boolean doPostUpdateCredential(String userName, Object credential, UserStoreManager userStoreManager)
+            throws UserStoreException {
+        CredentialCache.getInstance().invalidateUser(userStoreManager.getTenantId(), userName);
+        return true;
+    }
+
+    @Override
+    public boolean doPostUpdateCredentialByAdmin(String userName, Object newCredential,
+                                                 UserStoreManager userStoreManager) throws UserStoreException {
+        CredentialCache.getInstance().invalidateUser(userStoreManager.getTenantId(), userName);
+        return true;
+    }
+
+    @Override
+    public boolean doPostDeleteUser(String userName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+        CredentialCache.getInstance().invalidateUser(userStoreManager.getTenantId(), userName);
+        return true;
+    }
+
+    @Override
+    public boolean doPostUpdateRoleListOfUser(String userName, String[] deletedRoles, String[] newRoles,
+                                              UserStoreManager userStoreManager) throws UserStoreException {
+        CredentialCache.getInstance().invalidateUser(userStoreManager.getTenantId(), userName);
+        return true;
+    }
+
+    @Override
+    public boolean doPostUpdateUserListOfRole(String roleName, String[] deletedUsers, String[] newUsers,
+                                              UserStoreManager userStoreManager) throws UserStoreException {
+        CredentialCache.getInstance().invalidateTenant(userStoreManager.getTenantId());
+        return true;
+    }
+
+    @Override
+    public boolean doPostDeleteRole(String roleName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+        CredentialCache.getInstance().invalidateTenant(userStoreManager.getTenantId());
+        return true;
+    }
+
+    @Override
+    public boolean doPostUpdateRoleName(String roleName, String newRoleName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+        CredentialCache.getInstance().invalidateTenant(userStoreManager.getTenantId());
+        return true;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.authentication.internal;
+
+import org.wso2.carbon.andes.authentication.andes.UnknownPrincipalFilter;
+import org.wso2.carbon.user.core.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.common.AbstractUserOperationEventListener;
+
+import java.util.Map;
+
+/**
+ * Lets users added to the user store be authenticated right away, even though they were previously looked up
+ * as non-existent
+ */
+public class UnknownPrincipalFilterUpdater extends AbstractUserOperationEventListener {
+
+    private static final int EXECUTION_ORDER_ID = 92;
+
+    @Override
+    public int getExecutionOrderId() {
+        return EXECUTION_ORDER_ID;
+    }
+
+    @Override
+    public boolean doPostAddUser(String userName, Object credential, String[] roleList, Map<String, String> claims,
+                                 String profile, UserStoreManager userStoreManager) throws UserStoreException {
+        UnknownPrincipalFilter.getInstance().addExistent(userStoreManager.getTenantId(), userName);
+        return true;
+    }
+}
@@ -23,14 +23,19 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.andes.server.security.Result;
 import org.wso2.andes.server.security.access.ObjectProperties;
 import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.commons.cache.PermissionIndex;
+import org.wso2.carbon.andes.commons.cache.QueueVisibilityIndex;
 import org.wso2.carbon.andes.commons.registry.RegistryClient;
 import org.wso2.carbon.andes.commons.registry.RegistryClientException;
 import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.user.api.AuthorizationManager;
 import org.wso2.carbon.user.api.UserRealm;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.api.UserStoreManager;
 import org.wso2.carbon.user.core.authorization.TreeNode;
 
+import java.util.Set;
+
 /**
  * This class includes the actual access control logic
  */
@@ -60,16 +65,18 @@ public class QpidAuthorizationHandler {
      * Handle creating queue
      *
      * @param username   User who is trying to create the queue
+     * @param roles      Roles of the user
      * @param userRealm  User's Realm
      * @param properties NAME, OWNER, DURABLE
      * @return ALLOWED/DENIED
      * @throws QpidAuthorizationHandlerException
      */
-    public static Result handleCreateQueue(String username, UserRealm userRealm, ObjectProperties properties)
+    public static Result handleCreateQueue(String username, Set<String> roles, UserRealm userRealm,
+                                           ObjectProperties properties)
             throws QpidAuthorizationHandlerException {
         try {
             if (null != userRealm) {
-                if (isAdminUser(username, userRealm) || userRealm.getAuthorizationManager()
+                if (isAdminUser(roles) || userRealm.getAuthorizationManager()
                         .isUserAuthorized(username, PERMISSION_ADMIN_MANAGE_QUEUE_ADD_QUEUE,
                                 UI_EXECUTE) || userRealm.getAuthorizationManager()
                         .isUserAuthorized(username, PERMISSION_ADMIN_MANAGE_TOPIC_ADD_TOPIC, UI_EXECUTE)) {
@@ -77,17 +84,31 @@ public class QpidAuthorizationHandler {
                     String queueName =
                             getRawQueueName(properties.get(ObjectProperties.Property.NAME));
 
+                    // Temporary subscriber queues are kept off the registry and the permission tree, unless too
+                    // many of them are tracked already
+                    if (isTrackedInMemory(queueName) && TemporaryQueueTracker.getInstance().add(
+                            CarbonContext.getThreadLocalCarbonContext().getTenantId(), queueName, username)) {
+                        return Result.ALLOWED;
+                    }
+
                     //For registry we use a modified queue name
                     String newQname = queueName.replace("@", AT_REPLACE_CHAR);
                     // Store queue details
-                    RegistryClient.createQueue(newQname, username);
+                    try {
+                        RegistryClient.createQueue(newQname, username);
+                    } catch (RegistryClientException e) {
+                        if (!RegistryClient.isQueueReconcilerRunning()) {
+                            throw e;
+                        }
+                        log.warn("Failed to store details of queue " + queueName + ". The entry is left to be " +
+                                "repaired by the reconciler.", e);
+                    }
 
                     String queueID = CommonsUtil.getQueueID(queueName);
 
                     if (isOwnDomain(tenantDomain, queueName) || isTopicSubscriberQueue(queueName)) {
                         UserStoreManager userStoreManager = userRealm.getUserStoreManager();
-                        String[] roleNames = userStoreManager.getRoleListOfUser(username);
-                        for (String role : roleNames) {
+                        for (String role : roles) {
                             if (!role.equalsIgnoreCase(ROLE_EVERY_ONE) && userStoreManager.isExistingRole(role)) {
                                 userRealm.getAuthorizationManager().authorizeRole(
                                         role, queueID, TreeNode.Permission.CONSUME.toString().toLowerCase());
@@ -97,6 +118,10 @@ public class QpidAuthorizationHandler {
                                         role, queueID, PERMISSION_CHANGE_PERMISSION);
                             }
                         }
+                        PermissionIndex.getInstance().invalidate(
+                                CarbonContext.getThreadLocalCarbonContext().getTenantId(), queueID);
+                        QueueVisibilityIndex.getInstance().invalidate(
+                                CarbonContext.getThreadLocalCarbonContext().getTenantId(), queueID);
                         return Result.ALLOWED;
                     }
                 }
@@ -118,16 +143,18 @@ public class QpidAuthorizationHandler {
      * based on permission granted.
      *
      * @param username   User who is trying to consume the queue
+     * @param roles      Roles of the user
      * @param userRealm  User's Realm
      * @param properties NAME, OWNER, TEMPORARY
      * @return ALLOWED/DENIED
      * @throws QpidAuthorizationHandlerException
      */
-    public static Result handleConsumeQueue(String username, UserRealm userRealm, ObjectProperties properties)
+    public static Result handleConsumeQueue(String username, Set<String> roles, UserRealm userRealm,
+                                            ObjectProperties properties)
             throws QpidAuthorizationHandlerException {
         try {
             if (null != userRealm) {
-                if (isAdminUser(username, userRealm) || userRealm.getAuthorizationManager()
+                if (isAdminUser(roles) || userRealm.getAuthorizationManager()
                         .isUserAuthorized(username, PERMISSION_ADMIN_MANAGE_QUEUE_BROWSE_QUEUE,
                                 UI_EXECUTE) || userRealm.getAuthorizationManager()
                         .isUserAuthorized(username, PERMISSION_ADMIN_MANAGE_DLC_BROWSE_DLC, UI_EXECUTE)) {
@@ -136,10 +163,12 @@ public class QpidAuthorizationHandler {
                     String tenantDomain = CarbonContext.getThreadLocalCarbonContext().getTenantDomain();
                     String queueID = CommonsUtil.getQueueID(queueName);
 
-                    if (isAdminUser(username, userRealm) && isOwnDomain(tenantDomain, queueName)) {
+                    if (isAdminUser(roles) && isOwnDomain(tenantDomain, queueName)) {
+                        return Result.ALLOWED;
+                    } else if (isTemporaryQueueOwner(queueName, username)) {
                         return Result.ALLOWED;
-                    } else if (userRealm.getAuthorizationManager().isUserAuthorized(
-                            username, queueID, TreeNode.Permission.CONSUME.toString().toLowerCase())) {
+                    } else if (isUserAuthorized(username, roles, userRealm, queueID,
+                            TreeNode.Permission.CONSUME.toString().toLowerCase())) {
                         return Result.ALLOWED;
                     }
                 }
@@ -156,12 +185,14 @@ public class QpidAuthorizationHandler {
      *
      * @param username   topicID
      *                   User who is trying to do the binding
+     * @param roles      Roles of the user
      * @param userRealm  User's Realm
      * @param properties NAME, ROUTING_KEY
      * @return ALLOWED/DENIED
      * @throws QpidAuthorizationHandlerException
      */
-    public static Result handleBindQueue(String username, UserRealm userRealm, ObjectProperties properties)
+    public static Result handleBindQueue(String username, Set<String> roles, UserRealm userRealm,
+                                         ObjectProperties properties)
             throws QpidAuthorizationHandlerException {
         try {
             if (null != userRealm) {
@@ -178,10 +209,11 @@ public class QpidAuthorizationHandler {
                     String queueID = CommonsUtil.getQueueID(queueName);
 
                     // Authorize
-                    if (isAdminUser(username, userRealm) && isOwnDomain(tenantDomain, queueName)) {
+                    if (isAdminUser(roles) && isOwnDomain(tenantDomain, queueName)) {
+                        return Result.ALLOWED;
+                    } else if (isTemporaryQueueOwner(queueName, username)) {
                         return Result.ALLOWED;
-                    } else if (userRealm.getAuthorizationManager().isUserAuthorized(
-                            username, queueID,
+                    } else if (isUserAuthorized(username, roles, userRealm, queueID,
                             TreeNode.Permission.CONSUME.toString().toLowerCase())) {
                         return Result.ALLOWED;
                     }
@@ -189,10 +221,11 @@ public class QpidAuthorizationHandler {
                     String queueID = CommonsUtil.getQueueID(queueName);
 
                     // Authorize
-                    if (isAdminUser(username, userRealm) && isOwnDomain(tenantDomain, queueName)) {
+                    if (isAdminUser(roles) && isOwnDomain(tenantDomain, queueName)) {
                         return Result.ALLOWED;
-                    } else if (userRealm.getAuthorizationManager().isUserAuthorized(
-                            username, queueID,
+                    } else if (isTemporaryQueueOwner(queueName, username)) {
+                        return Result.ALLOWED;
+                    } else if (isUserAuthorized(username, roles, userRealm, queueID,
                             TreeNode.Permission.CONSUME.toString().toLowerCase())) {
                         return Result.ALLOWED;
                     }
@@ -212,19 +245,24 @@ public class QpidAuthorizationHandler {
                     // Authorize
                     String newRoutingKey = routingKey.replace("@", AT_REPLACE_CHAR);
                     String newQName = queueName.replace("@", AT_REPLACE_CHAR);
-                    if (isAdminUser(username, userRealm) && (isOwnDomain(tenantDomain,
+                    // Subscriptions of temporary queues tracked in memory are not stored
+                    boolean isTrackedQueue = TemporaryQueueTracker.getInstance().contains(
+                            CarbonContext.getThreadLocalCarbonContext().getTenantId(), queueName);
+                    if (isAdminUser(roles) && (isOwnDomain(tenantDomain,
                             queueName) || isTopicSubscriberQueue(queueName))) {
 
                         // Store subscription
-                        RegistryClient.createSubscription(newRoutingKey, newQName, username);
+                        if (!isTrackedQueue) {
+                            RegistryClient.createSubscription(newRoutingKey, newQName, username);
+                        }
 
                         return Result.ALLOWED;
-                    } else if (userRealm.getAuthorizationManager().isUserAuthorized(
-                            username, topicID,
+                    } else if (isUserAuthorized(username, roles, userRealm, topicID,
                             TreeNode.Permission.SUBSCRIBE.toString().toLowerCase())) {
                         // Store subscription
-
-                        RegistryClient.createSubscription(newRoutingKey, newQName, username);
+                        if (!isTrackedQueue) {
+                            RegistryClient.createSubscription(newRoutingKey, newQName, username);
+                        }
 
                         return Result.ALLOWED;
                     }
@@ -243,12 +281,14 @@ public class QpidAuthorizationHandler {
      * Authorise publishing to a given exchange
      *
      * @param username   User who is trying to publish
+     * @param roles      Roles of the user
      * @param userRealm  User's Realm
      * @param properties NAME, ROUTING_KEY   @return
      *                   ALLOWED, DENIED
      * @throws QpidAuthorizationHandlerException
      */
-    public static Result handlePublishToExchange(String username, UserRealm userRealm, ObjectProperties properties)
+    public static Result handlePublishToExchange(String username, Set<String> roles, UserRealm userRealm,
+                                                 ObjectProperties properties)
             throws QpidAuthorizationHandlerException {
         try {
             if (null != userRealm) {
@@ -264,10 +304,9 @@ public class QpidAuthorizationHandler {
                     String queueID = CommonsUtil.getQueueID(routingKey);
 
                     // Authorize
-                    if (isAdminUser(username, userRealm) && isOwnDomain(tenantDomain, routingKey)) {
+                    if (isAdminUser(roles) && isOwnDomain(tenantDomain, routingKey)) {
                         return Result.ALLOWED;
-                    } else if (userRealm.getAuthorizationManager().isUserAuthorized(
-                            username, queueID,
+                    } else if (isUserAuthorized(username, roles, userRealm, queueID,
                             TreeNode.Permission.PUBLISH.toString().toLowerCase())) {
                         return Result.ALLOWED;
                     }
@@ -285,10 +324,9 @@ public class QpidAuthorizationHandler {
                     String permissionID = CommonsUtil.getTopicID(routingKey);
 
                     // Authorize
-                    if (isAdminUser(username, userRealm)) {
+                    if (isAdminUser(roles)) {
                         return Result.ALLOWED;
-                    } else if (userRealm.getAuthorizationManager().isUserAuthorized(
-                            username, permissionID,
+                    } else if (isUserAuthorized(username, roles, userRealm, permissionID,
                             TreeNode.Permission.PUBLISH.toString().toLowerCase())) {
                         return Result.ALLOWED;
                     }
@@ -297,10 +335,9 @@ public class QpidAuthorizationHandler {
                     String queueID = CommonsUtil.getQueueID(routingKey);
 
                     // Authorize
-                    if (isAdminUser(username, userRealm) && isOwnDomain(tenantDomain, routingKey)) {
+                    if (isAdminUser(roles) && isOwnDomain(tenantDomain, routingKey)) {
                         return Result.ALLOWED;
-                    } else if (userRealm.getAuthorizationManager().isUserAuthorized(
-                            username, queueID,
+                    } else if (isUserAuthorized(username, roles, userRealm, queueID,
                             TreeNode.Permission.PUBLISH.toString().toLowerCase())) {
                         return Result.ALLOWED;
                     }
@@ -327,7 +364,8 @@ public class QpidAuthorizationHandler {
 
             String newRoutingKey = routingKey.replace("@", AT_REPLACE_CHAR);
             String newQName = queueName.replace("@", AT_REPLACE_CHAR);
-            if (TOPIC_EXCHANGE.equals(exchangeName)) {
+            if (TOPIC_EXCHANGE.equals(exchangeName) && !TemporaryQueueTracker.getInstance().contains(
+                    CarbonContext.getThreadLocalCarbonContext().getTenantId(), queueName)) {
                 // Delete subscription details
                 RegistryClient.deleteSubscription(newRoutingKey, newQName);
             }
@@ -345,20 +383,39 @@ public class QpidAuthorizationHandler {
      * @return ALLOWED/DENIED
      * @throws QpidAuthorizationHandlerException
      */
-    public static Result handleDeleteQueue(String username, UserRealm userRealm, ObjectProperties properties)
+    public static Result handleDeleteQueue(String username, Set<String> roles, UserRealm userRealm,
+                                           ObjectProperties properties)
             throws QpidAuthorizationHandlerException {
         try {
-            if (isAdminUser(username, userRealm) || userRealm.getAuthorizationManager()
+            if (isAdminUser(roles) || userRealm.getAuthorizationManager()
                     .isUserAuthorized(username, PERMISSION_ADMIN_MANAGE_QUEUE_DELETE_QUEUE,
                             UI_EXECUTE) || userRealm.getAuthorizationManager()
                     .isUserAuthorized(username, PERMISSION_ADMIN_MANAGE_TOPIC_DELETE_TOPIC, UI_EXECUTE)) {
                 String queueName =
                         getRawQueueName(properties.get(ObjectProperties.Property.NAME));
 
+                // Temporary queues tracked in memory have no registry resource
+                if (TemporaryQueueTracker.getInstance().remove(
+                        CarbonContext.getThreadLocalCarbonContext().getTenantId(), queueName)) {
+                    return Result.ALLOWED;
+                }
+
                 // Delete queue details
 
                 String newQName = queueName.replace("@", AT_REPLACE_CHAR);
-                RegistryClient.deleteQueue(newQName);
+                try {
+                    RegistryClient.deleteQueue(newQName);
+                } catch (RegistryClientException e) {
+                    if (!RegistryClient.isQueueReconcilerRunning()) {
+                        throw e;
+                    }
+                    log.warn("Failed to delete details of queue " + queueName + ". The entry is left to be " +
+                            "removed by the reconciler.", e);
+                }
+                PermissionIndex.getInstance().invalidate(
+                        CarbonContext.getThreadLocalCarbonContext().getTenantId(), CommonsUtil.getQueueID(queueName));
+                QueueVisibilityIndex.getInstance().invalidate(
+                        CarbonContext.getThreadLocalCarbonContext().getTenantId(), CommonsUtil.getQueueID(queueName));
 
                 return Result.ALLOWED;
             }
@@ -406,20 +463,36 @@ public class QpidAuthorizationHandler {
         return exchangeName.equals("<<default>>") ? DEFAULT_EXCHANGE : exchangeName;
     }
 
-    private static boolean isAdminUser(String username, UserRealm userRealm) {
-        try {
-            String[] userRoles = userRealm.getUserStoreManager().getRoleListOfUser(username);
-
-            for (String userRole : userRoles) {
-                if (ADMIN_ROLE.equals(userRole)) {
-                    return true;
-                }
+    /**
+     * Check whether a user is allowed to perform an action on a queue/topic resource. Role permissions are
+     * checked against the permission index first, and the user store is consulted only if none of the
+     * user's roles is allowed, since permissions can also be given to the user directly.
+     *
+     * @param username   User who performs the action
+     * @param roles      Roles of the user
+     * @param userRealm  User's Realm
+     * @param resourceId Queue/topic id
+     * @param action     Action on the resource
+     * @return true if authorized, false otherwise
+     * @throws UserStoreException
+     */
+    private static boolean isUserAuthorized(String username, Set<String> roles, UserRealm userRealm,
+                                            String resourceId, String action) throws UserStoreException {
+        AuthorizationManager authorizationManager = userRealm.getAuthorizationManager();
+        PermissionIndex permissionIndex = PermissionIndex.getInstance();
+
+        if (permissionIndex.isEnabled()) {
+            int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+            if (permissionIndex.isAuthorized(tenantId, authorizationManager, roles, resourceId, action)) {
+                return true;
             }
-        } catch (UserStoreException ignore) {
-            // do nothing
         }
 
-        return false;
+        return authorizationManager.isUserAuthorized(username, resourceId, action);
+    }
+
+    private static boolean isAdminUser(Set<String> roles) {
+        return roles.contains(ADMIN_ROLE);
     }
 
     /**
@@ -451,6 +524,29 @@ public class QpidAuthorizationHandler {
         return isOwnDomain;
     }
 
+    /**
+     * Check whether a queue should be tracked in memory instead of the registry and the permission tree
+     *
+     * @param queueName Queue name
+     * @return true if the queue is a temporary topic subscriber queue and such queues are tracked in memory
+     */
+    private static boolean isTrackedInMemory(String queueName) {
+        return TemporaryQueueTracker.getInstance().isEnabled() && isTopicSubscriberQueue(queueName);
+    }
+
+    /**
+     * Check whether a user created a temporary queue tracked in memory. Such queues have no permissions, so
+     * only their owner is allowed to consume from them.
+     *
+     * @param queueName Queue name
+     * @param username  User to check
+     * @return true if the queue is tracked in memory and was created by the user
+     */
+    private static boolean isTemporaryQueueOwner(String queueName, String username) {
+        return isTrackedInMemory(queueName) && TemporaryQueueTracker.getInstance().isOwner(
+                CarbonContext.getThreadLocalCarbonContext().getTenantId(), queueName, username);
+    }
+
     /**
      * when a subscriber is created for a topic in tenant mode, a temporary queue as 'tmp_<queueId></>' created for
      * its messages. this is to check
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.authorization.andes;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of temporary topic subscriber queues (tmp_ queues) in memory, in place of registry resources and
+ * permissions. Such queues live only as long as their subscriber, so writing them to the registry and the
+ * permission tree only to delete them again shortly after is avoided.
+ * <p/>
+ * A queue is tracked until it is deleted, since evicting a live queue would lock its owner out. The number of
+ * queues tracked is bounded instead: once the limit is reached, new temporary queues are not tracked and are
+ * stored in the registry like any other queue.
+ */
+public class TemporaryQueueTracker {
+
+    /**
+     * System property to enable tracking temporary subscriber queues in memory
+     */
+    public static final String ENABLED_PROPERTY = "andes.authorization.temporaryQueues.inMemory";
+
+    /**
+     * System property for the maximum number of temporary queues tracked
+     */
+    public static final String MAX_SIZE_PROPERTY = "andes.authorization.temporaryQueues.maxEntries";
+
+    private static final int DEFAULT_MAX_SIZE = 100000;
+    private static final String KEY_SEPARATOR = "/";
+
+    private static TemporaryQueueTracker instance = new TemporaryQueueTracker();
+
+    private final boolean enabled;
+    private final int maxSize;
+
+    /**
+     * Owners of the tracked queues, by tenant and queue name
+     */
+    private final ConcurrentMap<String, String> queueOwners = new ConcurrentHashMap<String, String>();
+
+    private TemporaryQueueTracker() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, false);
+        maxSize = CommonsUtil.getIntProperty(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+    }
+
+    public static TemporaryQueueTracker getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Track a temporary queue
+     *
+     * @param tenantId  Tenant of the queue
+     * @param queueName Queue name
+     * @param owner     User who created the queue
+     * @return true if the queue is tracked, false if too many queues are tracked already
+     */
+    public boolean add(int tenantId, String queueName, String owner) {
+        String key = getKey(tenantId, queueName);
+        if ((queueOwners.size() >= maxSize) && !queueOwners.containsKey(key)) {
+            return false;
+        }
+        queueOwners.put(key, owner);
+        return true;
+    }
+
+    /**
+     * Check whether a queue is tracked here
+     *
+     * @param tenantId  Tenant of the queue
+     * @param queueName Queue name
+     * @return true if tracked
+     */
+    public boolean contains(int tenantId, String queueName) {
+        return null != queueOwners.get(getKey(tenantId, queueName));
+    }
+
+    /**
+     * Check whether a user owns a tracked queue
+     *
+     * @param tenantId  Tenant of the queue
+     * @param queueName Queue name
+     * @param username  User to check
+     * @return true if the queue is tracked and was created by the user
+     */
+    public boolean isOwner(int tenantId, String queueName, String username) {
+        return username.equals(queueOwners.get(getKey(tenantId, queueName)));
+    }
+
+    /**
+     * Stop tracking a queue
+     *
+     * @param tenantId  Tenant of the queue
+     * @param queueName Queue name
+     * @return true if the queue was tracked
+     */
+    public boolean remove(int tenantId, String queueName) {
+        return null != queueOwners.remove(getKey(tenantId, queueName));
+    }
+
+    public int size() {
+        return queueOwners.size();
+    }
+
+    private static String getKey(int tenantId, String queueName) {
+        return tenantId + KEY_SEPARATOR + queueName;
+    }
+}
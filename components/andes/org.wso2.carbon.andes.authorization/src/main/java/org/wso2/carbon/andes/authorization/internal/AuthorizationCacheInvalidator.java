@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.authorization.internal;
+
+import org.wso2.carbon.andes.commons.cache.AuthorizationCache;
+import org.wso2.carbon.andes.commons.cache.PermissionIndex;
+import org.wso2.carbon.andes.commons.cache.QueueVisibilityIndex;
+import org.wso2.carbon.user.core.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.common.AbstractUserOperationEventListener;
+
+/**
+ * Drops cached authorization decisions of a tenant when users or roles of the tenant change. The permission
+ * and queue visibility indexes of the tenant are dropped as well when a role is deleted or renamed.
+ */
+public class AuthorizationCacheInvalidator extends AbstractUserOperationEventListener {
+
+    private static final int EXECUTION_ORDER_ID = 90;
+
+    @Override
+    public int getExecutionOrderId() {
+        return EXECUTION_ORDER_ID;
+    }
+
+    @Override
+    public boolean doPostUpdateRoleListOfUser(String userName, String[] deletedRoles, String[] newRoles,
+                                              UserStoreManager userStoreManager) throws UserStoreException {
+        return invalidate(userStoreManager);
+    }
+
+    @Override
+    public boolean doPostUpdateUserListOfRole(String roleName, String[] deletedUsers, String[] newUsers,
+                                              UserStoreManager userStoreManager) throws UserStoreException {
+        return invalidate(userStoreManager);
+    }
+
+    @Override
+    public boolean doPostDeleteRole(String roleName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+        PermissionIndex.getInstance().invalidateTenant(userStoreManager.getTenantId());
+        QueueVisibilityIndex.getInstance().invalidateTenant(userStoreManager.getTenantId());
+        return invalidate(userStoreManager);
+    }
+
+    @Override
+    public boolean doPostDeleteUser(String userName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+        return invalidate(userStoreManager);
+    }
+
+    @Override
+    public boolean doPostUpdateRoleName(String roleName, String newRoleName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+        PermissionIndex.getInstance().invalidateTenant(userStoreManager.getTenantId());
+        QueueVisibilityIndex.getInstance().invalidateTenant(userStoreManager.getTenantId());
+        return invalidate(userStoreManager);
+    }
+
+    private boolean invalidate(UserStoreManager userStoreManager) throws UserStoreException {
+        AuthorizationCache.getInstance().invalidateTenant(userStoreManager.getTenantId());
+        return true;
+    }
+}
@@ -27,6 +27,7 @@ import org.osgi.service.component.ComponentContext;
 import org.wso2.carbon.andes.authorization.service.andes.QpidAuthorizationPlugin;
 import org.wso2.carbon.andes.authorization.service.andes.QpidAuthorizationPluginConfiguration;
 import org.wso2.carbon.registry.core.service.RegistryService;
+import org.wso2.carbon.user.core.listener.UserOperationEventListener;
 import org.wso2.carbon.user.core.service.RealmService;
 
 /**
@@ -50,6 +51,7 @@ public class AuthorizationServiceComponent {
     private static final Log log = LogFactory.getLog(AuthorizationServiceComponent.class);
     private ServiceRegistration securityPluginFactory = null;
     private ServiceRegistration configurationPluginFactory = null;
+    private ServiceRegistration authorizationCacheInvalidator = null;
 
     protected void activate(ComponentContext ctx) {
         try {
@@ -61,6 +63,10 @@ public class AuthorizationServiceComponent {
             configurationPluginFactory = ctx.getBundleContext().registerService(
                     ConfigurationPluginFactory.class.getName(),
                     QpidAuthorizationPluginConfiguration.FACTORY, null);
+
+            // Register listener to drop cached authorization decisions on user/role changes
+            authorizationCacheInvalidator = ctx.getBundleContext().registerService(
+                    UserOperationEventListener.class.getName(), new AuthorizationCacheInvalidator(), null);
         } catch (Throwable e) {
             log.error("Failed to activate org.wso2.carbon.andes.authorization.internal." +
                       "AuthorizationServiceComponent : " + e);
@@ -76,6 +82,10 @@ public class AuthorizationServiceComponent {
         if (null != configurationPluginFactory) {
             configurationPluginFactory.unregister();
         }
+
+        if (null != authorizationCacheInvalidator) {
+            authorizationCacheInvalidator.unregister();
+        }
     }
 
     protected void setRegistryService(RegistryService registryService) {
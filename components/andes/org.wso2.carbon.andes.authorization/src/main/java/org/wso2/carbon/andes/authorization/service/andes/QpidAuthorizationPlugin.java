@@ -28,9 +28,14 @@ import org.wso2.andes.server.security.SecurityPluginFactory;
 import org.wso2.andes.server.security.access.ObjectProperties;
 import org.wso2.andes.server.security.access.ObjectType;
 import org.wso2.andes.server.security.access.Operation;
+import org.wso2.carbon.andes.authentication.andes.RoleSnapshotHolder;
+import org.wso2.carbon.andes.authentication.andes.RoleSnapshotPrincipal;
 import org.wso2.carbon.andes.authorization.andes.QpidAuthorizationHandler;
 import org.wso2.carbon.andes.authorization.andes.QpidAuthorizationHandlerException;
 import org.wso2.carbon.andes.authorization.internal.AuthorizationServiceDataHolder;
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.commons.cache.AuthorizationCache;
+import org.wso2.carbon.andes.commons.cache.TenantRealmCache;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.user.api.UserRealm;
 import org.wso2.carbon.user.api.UserStoreException;
@@ -39,6 +44,8 @@ import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 
 import javax.security.auth.Subject;
 import java.security.Principal;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * Qpid access control class based on Carbon Authorization Manager
@@ -49,6 +56,15 @@ public class QpidAuthorizationPlugin extends AbstractPlugin {
 
     private static final String DOMAIN_NAME_SEPARATOR = "!";
 
+    /**
+     * System property for the interval in seconds after which roles attached to a connection are resolved
+     * again. Roles are resolved only once per connection by default.
+     */
+    public static final String ROLE_REFRESH_INTERVAL_PROPERTY = "andes.authorization.roles.refreshInterval";
+
+    private static final long ROLE_REFRESH_INTERVAL =
+            CommonsUtil.getIntProperty(ROLE_REFRESH_INTERVAL_PROPERTY, 0) * 1000L;
+
     /**
      * Factory method for QpidAuthorizationPlugin
      */
@@ -78,7 +94,7 @@ public class QpidAuthorizationPlugin extends AbstractPlugin {
     public Result access(ObjectType objectType, Object instance) {
         try {
             Subject subject = SecurityManager.getThreadSubject();
-            Principal principal = (Principal) (subject.getPrincipals().toArray())[0];
+            Principal principal = getUserPrincipal(subject);
 
             if (principal == null) { // No user associated with the thread
                 return getDefault();
@@ -114,7 +130,7 @@ public class QpidAuthorizationPlugin extends AbstractPlugin {
 
             Principal principal = null;
             if (subject != null) {
-                principal = (Principal) (subject.getPrincipals().toArray())[0];
+                principal = getUserPrincipal(subject);
             }
 
             if (principal == null) { // No user associated with the thread
@@ -122,52 +138,49 @@ public class QpidAuthorizationPlugin extends AbstractPlugin {
             }
 
             String username = principal.getName();
-
-            // Get User Realm
-            UserRealm userRealm = getUserRealm(username);
-
-            if (username.contains(DOMAIN_NAME_SEPARATOR)) {
-                String tenantDomain = username.substring(username.indexOf(DOMAIN_NAME_SEPARATOR) + 1);
-                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain);
-                PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId(true);
-            } else {
-                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(MultitenantConstants.SUPER_TENANT_ID);
-                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(MultitenantConstants
-                        .SUPER_TENANT_DOMAIN_NAME);
-            }
+            String tenantDomain = MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
 
             int domainNameSeparatorIndex = username.indexOf(DOMAIN_NAME_SEPARATOR);
             if (-1 != domainNameSeparatorIndex) {
+                tenantDomain = username.substring(domainNameSeparatorIndex + 1);
                 username = username.substring(0, domainNameSeparatorIndex);
             }
-            switch (operation) {
-                case CREATE:
-                    if (ObjectType.EXCHANGE == objectType) {
-                        return Result.ALLOWED;
-                    } else if (ObjectType.QUEUE == objectType) {
-                        return QpidAuthorizationHandler.handleCreateQueue(
-                                username, userRealm, properties);
-                    }
-                case BIND:
-                    return QpidAuthorizationHandler.handleBindQueue(
-                            username, userRealm, properties);
-                case PUBLISH:
-                    return QpidAuthorizationHandler.handlePublishToExchange(
-                            username, userRealm, properties);
-                case CONSUME:
-                    return QpidAuthorizationHandler.handleConsumeQueue(
-                            username, userRealm, properties);
-                case UNBIND:
-                    return QpidAuthorizationHandler.handleUnbindQueue(properties);
-                case DELETE:
-                    if (ObjectType.EXCHANGE == objectType) {
-                        return Result.ALLOWED;
-                    } else if (ObjectType.QUEUE == objectType) {
-                        return QpidAuthorizationHandler.handleDeleteQueue(username, userRealm, properties);
-                    }
+
+            // The tenant ID is resolved through the cache and set explicitly, instead of letting the carbon
+            // context look it up from the tenant manager
+            RealmService realmService = AuthorizationServiceDataHolder.getInstance().getRealmService();
+            int tenantId = getTenantId(realmService, tenantDomain);
+            if (MultitenantConstants.INVALID_TENANT_ID == tenantId) {
+                return Result.DENIED;
+            }
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId);
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain);
+
+            // Publish and consume happen per message, so their decisions are served from the cache if possible
+            String decisionKey = getDecisionKey(principal.getName(), operation, objectType, properties);
+            if (null != decisionKey
+                    && Boolean.TRUE.equals(AuthorizationCache.getInstance().getDecision(tenantId, decisionKey))) {
+                return Result.ALLOWED;
+            }
+            long decisionGeneration = AuthorizationCache.getInstance().getGeneration(tenantId);
+
+            // Get User Realm
+            UserRealm userRealm = getUserRealm(realmService, tenantId, principal.getName());
+
+            Set<String> roles = getUserRoles(subject, principal.getName(), username, userRealm);
+
+            Result result = authoriseOperation(operation, objectType, username, roles, userRealm, properties);
+
+            // Only granted access is cached, so that a permission given to a user takes effect immediately
+            if (null != decisionKey && Result.ALLOWED == result) {
+                AuthorizationCache.getInstance().putDecision(tenantId, decisionKey, true, decisionGeneration);
             }
+
+            return result;
         } catch (QpidAuthorizationHandlerException e) {
             logger.error("Error while invoking QpidAuthorizationHandler", e);
+        } catch (UserStoreException e) {
+            logger.error("Error while resolving roles of the user", e);
         } finally {
             PrivilegedCarbonContext.endTenantFlow();
         }
@@ -175,30 +188,183 @@ public class QpidAuthorizationPlugin extends AbstractPlugin {
         return Result.DENIED;
     }
 
+    /**
+     * Invoke the authorization handler relevant to the operation
+     *
+     * @param operation  Operation on broker object
+     * @param objectType Type of object
+     * @param username   Username without the tenant domain
+     * @param roles      Roles of the user
+     * @param userRealm  User realm of the user's tenant
+     * @param properties Properties attached to the operation
+     * @return ALLOWED/DENIED
+     * @throws QpidAuthorizationHandlerException
+     */
+    private static Result authoriseOperation(Operation operation, ObjectType objectType, String username,
+                                             Set<String> roles, UserRealm userRealm,
+                                             ObjectProperties properties)
+            throws QpidAuthorizationHandlerException {
+        switch (operation) {
+            case CREATE:
+                if (ObjectType.EXCHANGE == objectType) {
+                    return Result.ALLOWED;
+                } else if (ObjectType.QUEUE == objectType) {
+                    return QpidAuthorizationHandler.handleCreateQueue(
+                            username, roles, userRealm, properties);
+                }
+            case BIND:
+                return QpidAuthorizationHandler.handleBindQueue(
+                        username, roles, userRealm, properties);
+            case PUBLISH:
+                return QpidAuthorizationHandler.handlePublishToExchange(
+                        username, roles, userRealm, properties);
+            case CONSUME:
+                return QpidAuthorizationHandler.handleConsumeQueue(
+                        username, roles, userRealm, properties);
+            case UNBIND:
+                return QpidAuthorizationHandler.handleUnbindQueue(properties);
+            case DELETE:
+                if (ObjectType.EXCHANGE == objectType) {
+                    return Result.ALLOWED;
+                } else if (ObjectType.QUEUE == objectType) {
+                    return QpidAuthorizationHandler.handleDeleteQueue(username, roles, userRealm, properties);
+                }
+        }
+
+        return Result.DENIED;
+    }
+
+    /**
+     * Get the key under which the decision of an operation is cached. Only publish and consume decisions
+     * are cached since other operations change the registry as a side effect.
+     *
+     * @param username   Username including the tenant domain
+     * @param operation  Operation on broker object
+     * @param objectType Type of object
+     * @param properties Properties attached to the operation
+     * @return Decision key, or null if the decision should not be cached
+     */
+    private static String getDecisionKey(String username, Operation operation, ObjectType objectType,
+                                         ObjectProperties properties) {
+        if (!AuthorizationCache.getInstance().isEnabled()
+                || (Operation.PUBLISH != operation && Operation.CONSUME != operation)) {
+            return null;
+        }
+
+        return AuthorizationCache.getKey(username, operation.name(), objectType.name(),
+                properties.get(ObjectProperties.Property.NAME),
+                properties.get(ObjectProperties.Property.ROUTING_KEY));
+    }
+
+    /**
+     * Get the principal of the user from the connection's Subject, skipping the role snapshot attached to it
+     *
+     * @param subject Subject of the connection
+     * @return User principal or null if there is none
+     */
+    private static Principal getUserPrincipal(Subject subject) {
+        // Channels of a connection share the Subject, whose principal set has to be locked while iterated
+        Set<Principal> principals = subject.getPrincipals();
+        synchronized (principals) {
+            for (Principal principal : principals) {
+                if (!(principal instanceof RoleSnapshotPrincipal)) {
+                    return principal;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the roles of the user. Roles are resolved once per connection, preferably while authenticating, and
+     * attached to the connection's Subject. They are resolved again only if a refresh interval is configured
+     * and the attached snapshot is older than that.
+     *
+     * @param subject       Subject of the connection
+     * @param principalName Name of the user principal, including the tenant domain
+     * @param username      Username without the tenant domain
+     * @param userRealm     User's Realm
+     * @return Roles of the user
+     * @throws UserStoreException
+     */
+    private static Set<String> getUserRoles(Subject subject, String principalName, String username,
+                                            UserRealm userRealm) throws UserStoreException {
+        RoleSnapshotPrincipal roleSnapshot = null;
+        Set<Principal> principals = subject.getPrincipals();
+        synchronized (principals) {
+            for (Principal principal : principals) {
+                if (principal instanceof RoleSnapshotPrincipal) {
+                    roleSnapshot = (RoleSnapshotPrincipal) principal;
+                    break;
+                }
+            }
+        }
+        if (null != roleSnapshot
+                && (ROLE_REFRESH_INTERVAL <= 0 || !roleSnapshot.isOlderThan(ROLE_REFRESH_INTERVAL))) {
+            return roleSnapshot.getRoles();
+        }
+
+        RoleSnapshotPrincipal newRoleSnapshot = null;
+        if (null == roleSnapshot) {
+            newRoleSnapshot = RoleSnapshotHolder.getInstance().take(principalName);
+        }
+        if (null == newRoleSnapshot) {
+            if (null == userRealm) {
+                return Collections.emptySet();
+            }
+            newRoleSnapshot = new RoleSnapshotPrincipal(
+                    principalName, userRealm.getUserStoreManager().getRoleListOfUser(username));
+        }
+
+        if (!subject.isReadOnly()) {
+            synchronized (principals) {
+                if (null != roleSnapshot) {
+                    principals.remove(roleSnapshot);
+                }
+                principals.add(newRoleSnapshot);
+            }
+        }
+
+        return newRoleSnapshot.getRoles();
+    }
+
     private String getRawQueueName(String queueName) {
         return queueName.substring(queueName.indexOf(":") + 1, queueName.length());
     }
 
-    private static UserRealm getUserRealm(String username) {
+    /**
+     * Get the ID of a tenant
+     *
+     * @param realmService Realm service
+     * @param tenantDomain Tenant domain
+     * @return Tenant ID, or -1 if the tenant could not be resolved
+     */
+    private static int getTenantId(RealmService realmService, String tenantDomain) {
+        if (MultitenantConstants.SUPER_TENANT_DOMAIN_NAME.equals(tenantDomain)) {
+            return MultitenantConstants.SUPER_TENANT_ID;
+        }
+
+        if (null == realmService) {
+            logger.error("Realm service is not available to resolve tenant " + tenantDomain);
+            return MultitenantConstants.INVALID_TENANT_ID;
+        }
+
+        try {
+            return TenantRealmCache.getInstance().getTenantId(realmService, tenantDomain);
+        } catch (UserStoreException e) {
+            logger.error("Error while getting tenant ID of tenant " + tenantDomain, e);
+            return MultitenantConstants.INVALID_TENANT_ID;
+        }
+    }
+
+    private static UserRealm getUserRealm(RealmService realmService, int tenantId, String username) {
         UserRealm userRealm = null;
 
-        RealmService realmService = AuthorizationServiceDataHolder.getInstance().getRealmService();
         if (null != realmService) {
             try {
-                // Get tenant ID
-                int tenantID = MultitenantConstants.SUPER_TENANT_ID;
-                int domainNameSeparatorIndex = username.indexOf(DOMAIN_NAME_SEPARATOR);
-                if (-1 != domainNameSeparatorIndex) { // Service case
-                    String domainName = username.substring(domainNameSeparatorIndex + 1);
-                    tenantID = realmService.getTenantManager().getTenantId(domainName);
-                }
-
-                // Get Realm
-                userRealm = realmService.getTenantUserRealm(tenantID);
+                userRealm = TenantRealmCache.getInstance().getTenantUserRealm(realmService, tenantId);
             } catch (UserStoreException e) {
                 logger.error("Error while getting tenant user realm for user " + username, e);
-            } catch (NullPointerException e) {
-                logger.error("Error while accessing the realm service.", e);
             }
         }
 
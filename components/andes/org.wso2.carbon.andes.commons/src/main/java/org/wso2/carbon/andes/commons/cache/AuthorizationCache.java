@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.cache;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches authorization decisions taken for broker operations, so that repeated operations of the same
+ * user on the same resource do not go to the user store. Decisions are kept per tenant, which allows the
+ * decisions of a tenant to be dropped when permissions or roles of that tenant change. A decision taken while the
+ * decisions of its tenant were being dropped is not cached, as it may have been taken on the old permissions.
+ */
+public class AuthorizationCache {
+
+    /**
+     * System property to enable/disable the cache
+     */
+    public static final String ENABLED_PROPERTY = "andes.authorization.cache.enabled";
+
+    /**
+     * System property for the time in seconds a decision is kept
+     */
+    public static final String TIME_TO_LIVE_PROPERTY = "andes.authorization.cache.timeToLive";
+
+    /**
+     * System property for the maximum number of decisions kept per tenant
+     */
+    public static final String MAX_SIZE_PROPERTY = "andes.authorization.cache.maxEntriesPerTenant";
+
+    private static final int DEFAULT_TIME_TO_LIVE = 60;
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private static AuthorizationCache instance = new AuthorizationCache();
+
+    private final boolean enabled;
+    private final long timeToLive;
+    private final int maxSize;
+    private final ConcurrentMap<Integer, BoundedTimedCache<String, Boolean>> tenantCaches =
+            new ConcurrentHashMap<Integer, BoundedTimedCache<String, Boolean>>();
+
+    /**
+     * Generation of the decisions of each tenant, moved forward whenever the decisions of the tenant are dropped
+     */
+    private final ConcurrentMap<Integer, AtomicLong> tenantGenerations = new ConcurrentHashMap<Integer, AtomicLong>();
+
+    private AuthorizationCache() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, true);
+        timeToLive = CommonsUtil.getIntProperty(TIME_TO_LIVE_PROPERTY, DEFAULT_TIME_TO_LIVE) * 1000L;
+        maxSize = CommonsUtil.getIntProperty(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+    }
+
+    public static AuthorizationCache getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Build the key of a decision
+     *
+     * @param username   User who performs the operation
+     * @param operation  Operation on broker object (CONSUME, PUBLISH, etc)
+     * @param objectType Type of object (EXCHANGE, QUEUE, etc)
+     * @param resource   Properties identifying the object the operation is performed on
+     * @return Decision key
+     */
+    public static String getKey(String username, String operation, String objectType, String... resource) {
+        StringBuilder key = new StringBuilder(username);
+        key.append(KEY_SEPARATOR).append(operation).append(KEY_SEPARATOR).append(objectType);
+        for (String resourceProperty : resource) {
+            key.append(KEY_SEPARATOR).append(resourceProperty);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Get a cached decision
+     *
+     * @param tenantId Tenant of the user
+     * @param key      Decision key
+     * @return true/false if a decision is cached, null otherwise
+     */
+    public Boolean getDecision(int tenantId, String key) {
+        if (!enabled) {
+            return null;
+        }
+
+        BoundedTimedCache<String, Boolean> tenantCache = tenantCaches.get(tenantId);
+        return (null != tenantCache) ? tenantCache.get(key) : null;
+    }
+
+    /**
+     * Get the generation of the decisions of a tenant, which has to be taken before a decision is computed and
+     * passed when caching it
+     *
+     * @param tenantId Tenant ID
+     * @return Generation of the decisions
+     */
+    public long getGeneration(int tenantId) {
+        return getGenerationCounter(tenantId).get();
+    }
+
+    /**
+     * Cache a decision, unless the decisions of the tenant were dropped after it was computed
+     *
+     * @param tenantId   Tenant of the user
+     * @param key        Decision key
+     * @param allowed    Decision
+     * @param generation Generation of the decisions taken before the decision was computed
+     */
+    public void putDecision(int tenantId, String key, boolean allowed, long generation) {
+        if (!enabled || (generation != getGeneration(tenantId))) {
+            return;
+        }
+
+        BoundedTimedCache<String, Boolean> tenantCache = tenantCaches.get(tenantId);
+        if (null == tenantCache) {
+            tenantCache = new BoundedTimedCache<String, Boolean>(maxSize, timeToLive);
+            BoundedTimedCache<String, Boolean> existingCache = tenantCaches.putIfAbsent(tenantId, tenantCache);
+            if (null != existingCache) {
+                tenantCache = existingCache;
+            }
+        }
+
+        tenantCache.put(key, allowed);
+
+        // Dropped meanwhile, the cache put into may be the one that replaced the dropped cache
+        if (generation != getGeneration(tenantId)) {
+            tenantCache.remove(key);
+        }
+    }
+
+    /**
+     * Drop all decisions of a tenant. This should be called whenever permissions or roles of the tenant change.
+     *
+     * @param tenantId Tenant ID
+     */
+    public void invalidateTenant(int tenantId) {
+        getGenerationCounter(tenantId).incrementAndGet();
+        tenantCaches.remove(tenantId);
+    }
+
+    /**
+     * Drop all cached decisions
+     */
+    public void invalidateAll() {
+        for (AtomicLong generation : tenantGenerations.values()) {
+            generation.incrementAndGet();
+        }
+        tenantCaches.clear();
+    }
+
+    private AtomicLong getGenerationCounter(int tenantId) {
+        AtomicLong generation = tenantGenerations.get(tenantId);
+        if (null == generation) {
+            generation = new AtomicLong();
+            AtomicLong existingGeneration = tenantGenerations.putIfAbsent(tenantId, generation);
+            if (null != existingGeneration) {
+                generation = existingGeneration;
+            }
+        }
+        return generation;
+    }
+}
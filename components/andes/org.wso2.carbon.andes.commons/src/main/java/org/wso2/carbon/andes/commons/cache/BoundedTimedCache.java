@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe cache bounded by size and by time. Entries are kept in access order so that the least
+ * recently used entry is evicted once the cache grows beyond its maximum size, and an entry older than the
+ * time to live is treated as absent.
+ *
+ * @param <K> Type of the cache key
+ * @param <V> Type of the cached value
+ */
+public class BoundedTimedCache<K, V> {
+
+    private final int maxSize;
+    private final long timeToLive;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Create a cache
+     *
+     * @param maxSize    Maximum number of entries kept in the cache
+     * @param timeToLive Time in milliseconds an entry is valid after it is put to the cache
+     */
+    public BoundedTimedCache(int maxSize, long timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > BoundedTimedCache.this.maxSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a cached value
+     *
+     * @param key Cache key
+     * @return Cached value or null if there is no valid entry for the key
+     */
+    public V get(K key) {
+        synchronized (entries) {
+            CacheEntry<V> entry = entries.get(key);
+            if (null == entry) {
+                missCount.incrementAndGet();
+                return null;
+            }
+
+            if (entry.isExpired(System.currentTimeMillis())) {
+                entries.remove(key);
+                missCount.incrementAndGet();
+                return null;
+            }
+
+            hitCount.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Add or replace a cached value
+     *
+     * @param key   Cache key
+     * @param value Value to be cached
+     */
+    public void put(K key, V value) {
+        synchronized (entries) {
+            entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis() + timeToLive));
+        }
+    }
+
+    /**
+     * Remove a cached value
+     *
+     * @param key Cache key
+     * @return Removed value or null if there was no entry for the key
+     */
+    public V remove(K key) {
+        synchronized (entries) {
+            CacheEntry<V> entry = entries.remove(key);
+            return (null != entry) ? entry.value : null;
+        }
+    }
+
+    /**
+     * Remove all the entries of the cache
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Get a snapshot of the keys currently held in the cache, including keys of expired entries that are
+     * not yet removed
+     *
+     * @return List of keys
+     */
+    public List<K> keys() {
+        synchronized (entries) {
+            return new ArrayList<K>(entries.keySet());
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * A cached value along with the time it expires
+     */
+    private static class CacheEntry<V> {
+
+        private final V value;
+        private final long expiryTime;
+
+        private CacheEntry(V value, long expiryTime) {
+            this.value = value;
+            this.expiryTime = expiryTime;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiryTime;
+        }
+    }
+}
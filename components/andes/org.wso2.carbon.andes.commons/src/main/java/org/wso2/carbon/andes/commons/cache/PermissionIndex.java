@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.cache;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.user.api.AuthorizationManager;
+import org.wso2.carbon.user.api.UserStoreException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory index of role permissions on queue and topic resources (event/queues/jms/*, event/topics/*).
+ * Resources of a tenant are kept in a trie keyed by path segments, and each node holds the roles allowed to
+ * perform an action on the resource as a bit set. A user's roles are mapped to a bit set of the same layout,
+ * so an authorization check is a trie walk plus a bit set intersection.
+ * <p/>
+ * The allowed roles of a resource are read from the user store the first time the resource is checked, and
+ * are dropped when the permissions of the resource or one of its parents change, or after the time to live.
+ * Only role permissions are indexed, hence a negative answer should be confirmed with the user store.
+ * <p/>
+ * Nodes left empty when a resource is dropped are pruned. Since resources that are never checked again, and
+ * roles that no longer exist, would still pile up, the index of a tenant is rebuilt from scratch once it is
+ * older than the time to live.
+ */
+public class PermissionIndex {
+
+    /**
+     * System property to enable/disable the index
+     */
+    public static final String ENABLED_PROPERTY = "andes.authorization.permissionIndex.enabled";
+
+    /**
+     * System property for the time in seconds the allowed roles of a resource are kept
+     */
+    public static final String TIME_TO_LIVE_PROPERTY = "andes.authorization.permissionIndex.timeToLive";
+
+    private static final int DEFAULT_TIME_TO_LIVE = 300;
+    private static final String PATH_SEPARATOR = "/";
+
+    private static PermissionIndex instance = new PermissionIndex();
+
+    private final boolean enabled;
+    private final long timeToLive;
+    private final ConcurrentMap<Integer, TenantPermissionIndex> tenantIndexes =
+            new ConcurrentHashMap<Integer, TenantPermissionIndex>();
+
+    private PermissionIndex() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, true);
+        timeToLive = CommonsUtil.getIntProperty(TIME_TO_LIVE_PROPERTY, DEFAULT_TIME_TO_LIVE) * 1000L;
+    }
+
+    public static PermissionIndex getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Check whether any of the roles is allowed to perform an action on a resource
+     *
+     * @param tenantId             Tenant of the resource
+     * @param authorizationManager Authorization manager of the tenant, used to load permissions not in the index
+     * @param roles                Role names of the user
+     * @param resourceId           Resource id (eg: event/queues/jms/myQueue)
+     * @param action               Action (eg: consume, publish)
+     * @return true if one of the roles is allowed, false otherwise
+     * @throws UserStoreException
+     */
+    public boolean isAuthorized(int tenantId, AuthorizationManager authorizationManager, Collection<String> roles,
+                                String resourceId, String action) throws UserStoreException {
+        // Role masks are only valid against the index that numbered the roles
+        TenantPermissionIndex tenantIndex = getTenantIndex(tenantId);
+        BitSet roleMask = new BitSet();
+        for (String role : roles) {
+            roleMask.set(tenantIndex.getRoleIndex(role));
+        }
+
+        PermissionNode node = tenantIndex.getNode(resourceId);
+
+        long now = System.currentTimeMillis();
+        AllowedRoles allowedRoles = node.permissions.get(action);
+        if (null == allowedRoles || allowedRoles.isExpired(now)) {
+            String[] allowedRoleNames = authorizationManager.getAllowedRolesForResource(resourceId, action);
+            BitSet roleBits = new BitSet();
+            if (null != allowedRoleNames) {
+                for (String role : allowedRoleNames) {
+                    roleBits.set(tenantIndex.getRoleIndex(role));
+                }
+            }
+            allowedRoles = new AllowedRoles(roleBits, now + timeToLive);
+            node.permissions.put(action, allowedRoles);
+        }
+
+        return allowedRoles.roles.intersects(roleMask);
+    }
+
+    /**
+     * Drop indexed permissions of a resource and its child resources. This should be called whenever the
+     * permissions of the resource change, or the resource is deleted.
+     *
+     * @param tenantId   Tenant of the resource
+     * @param resourceId Resource id
+     */
+    public void invalidate(int tenantId, String resourceId) {
+        TenantPermissionIndex tenantIndex = tenantIndexes.get(tenantId);
+        if (null != tenantIndex) {
+            tenantIndex.removeNode(resourceId);
+        }
+    }
+
+    /**
+     * Drop all indexed permissions of a tenant. This should be called when roles of the tenant are
+     * deleted or renamed.
+     *
+     * @param tenantId Tenant ID
+     */
+    public void invalidateTenant(int tenantId) {
+        tenantIndexes.remove(tenantId);
+    }
+
+    /**
+     * Drop the whole index
+     */
+    public void invalidateAll() {
+        tenantIndexes.clear();
+    }
+
+    private TenantPermissionIndex getTenantIndex(int tenantId) {
+        long now = System.currentTimeMillis();
+        TenantPermissionIndex tenantIndex = tenantIndexes.get(tenantId);
+        if (null == tenantIndex) {
+            tenantIndex = new TenantPermissionIndex(now + timeToLive);
+            TenantPermissionIndex existingIndex = tenantIndexes.putIfAbsent(tenantId, tenantIndex);
+            if (null != existingIndex) {
+                tenantIndex = existingIndex;
+            }
+        } else if (tenantIndex.isExpired(now)) {
+            // Rebuild, dropping nodes and roles that are no longer used
+            TenantPermissionIndex newIndex = new TenantPermissionIndex(now + timeToLive);
+            if (tenantIndexes.replace(tenantId, tenantIndex, newIndex)) {
+                tenantIndex = newIndex;
+            } else {
+                return getTenantIndex(tenantId);
+            }
+        }
+        return tenantIndex;
+    }
+
+    /**
+     * Resource trie and role numbering of a tenant
+     */
+    private static class TenantPermissionIndex {
+
+        private final PermissionNode root = new PermissionNode();
+        private final ConcurrentMap<String, Integer> roleIndexes = new ConcurrentHashMap<String, Integer>();
+        private final AtomicInteger roleCount = new AtomicInteger();
+        private final long expiryTime;
+
+        private TenantPermissionIndex(long expiryTime) {
+            this.expiryTime = expiryTime;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiryTime;
+        }
+
+        private int getRoleIndex(String role) {
+            Integer roleIndex = roleIndexes.get(role);
+            if (null == roleIndex) {
+                // A number lost to a concurrent lookup of the same role only leaves a gap in the bit set
+                roleIndex = roleCount.getAndIncrement();
+                Integer existingIndex = roleIndexes.putIfAbsent(role, roleIndex);
+                if (null != existingIndex) {
+                    roleIndex = existingIndex;
+                }
+            }
+            return roleIndex;
+        }
+
+        private PermissionNode getNode(String resourceId) {
+            PermissionNode node = root;
+            for (String segment : resourceId.split(PATH_SEPARATOR)) {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                PermissionNode child = node.children.get(segment);
+                if (null == child) {
+                    child = new PermissionNode();
+                    PermissionNode existingChild = node.children.putIfAbsent(segment, child);
+                    if (null != existingChild) {
+                        child = existingChild;
+                    }
+                }
+                node = child;
+            }
+            return node;
+        }
+
+        private void removeNode(String resourceId) {
+            List<PermissionNode> path = new ArrayList<PermissionNode>();
+            List<String> segments = new ArrayList<String>();
+            PermissionNode node = root;
+            for (String segment : resourceId.split(PATH_SEPARATOR)) {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                path.add(node);
+                segments.add(segment);
+                node = node.children.get(segment);
+                if (null == node) {
+                    return;
+                }
+            }
+
+            if (path.isEmpty()) {
+                root.children.clear();
+                root.permissions.clear();
+                return;
+            }
+
+            // Remove the node, then the parents it leaves empty
+            int depth = path.size() - 1;
+            path.get(depth).children.remove(segments.get(depth), node);
+            for (depth--; depth >= 0; depth--) {
+                PermissionNode emptyNode = path.get(depth + 1);
+                if (!emptyNode.children.isEmpty() || !emptyNode.permissions.isEmpty()) {
+                    break;
+                }
+                path.get(depth).children.remove(segments.get(depth), emptyNode);
+            }
+        }
+    }
+
+    /**
+     * A resource in the trie
+     */
+    private static class PermissionNode {
+
+        private final ConcurrentMap<String, PermissionNode> children =
+                new ConcurrentHashMap<String, PermissionNode>();
+        private final ConcurrentMap<String, AllowedRoles> permissions =
+                new ConcurrentHashMap<String, AllowedRoles>();
+    }
+
+    /**
+     * Roles allowed to perform an action on a resource. Instances are never modified once created.
+     */
+    private static class AllowedRoles {
+
+        private final BitSet roles;
+        private final long expiryTime;
+
+        private AllowedRoles(BitSet roles, long expiryTime) {
+            this.roles = roles;
+            this.expiryTime = expiryTime;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiryTime;
+        }
+    }
+}
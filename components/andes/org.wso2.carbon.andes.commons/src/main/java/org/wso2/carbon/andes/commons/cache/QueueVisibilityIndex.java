@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.cache;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.user.api.AuthorizationManager;
+import org.wso2.carbon.user.api.UserStoreException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of the queues each role can see, that is consume from or publish to, kept per tenant. Listing the queues
+ * visible to a user is then a union of the queue sets of the user's roles, instead of one user store check per
+ * queue and role.
+ * <p/>
+ * The roles of a queue are read from the user store the first time the queue is listed, with one call per
+ * action. The index is updated role by role as permissions of queues are changed through the broker, and the
+ * roles of a queue are read again when it is created or deleted. Permissions may also be changed outside the
+ * broker, hence the index of a tenant is dropped after the time to live, and when roles of the tenant are
+ * deleted or renamed.
+ */
+public class QueueVisibilityIndex {
+
+    /**
+     * System property to enable/disable the index
+     */
+    public static final String ENABLED_PROPERTY = "andes.authorization.visibilityIndex.enabled";
+
+    /**
+     * System property for the time in seconds the index of a tenant is kept
+     */
+    public static final String TIME_TO_LIVE_PROPERTY = "andes.authorization.visibilityIndex.timeToLive";
+
+    private static final int DEFAULT_TIME_TO_LIVE = 300;
+    private static final String CONSUME_ACTION = "consume";
+    private static final String PUBLISH_ACTION = "publish";
+
+    private static QueueVisibilityIndex instance = new QueueVisibilityIndex();
+
+    private final boolean enabled;
+    private final long timeToLive;
+    private final ConcurrentMap<Integer, TenantVisibilityIndex> tenantIndexes =
+            new ConcurrentHashMap<Integer, TenantVisibilityIndex>();
+
+    private QueueVisibilityIndex() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, true);
+        timeToLive = CommonsUtil.getIntProperty(TIME_TO_LIVE_PROPERTY, DEFAULT_TIME_TO_LIVE) * 1000L;
+    }
+
+    public static QueueVisibilityIndex getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the queues visible to a set of roles, out of a given set of queues
+     *
+     * @param tenantId             Tenant of the queues
+     * @param authorizationManager Authorization manager of the tenant, used to load queues not in the index
+     * @param roles                Role names
+     * @param queueIDs             Resource IDs of the queues to choose from (eg: event/queues/jms/myQueue)
+     * @return Resource IDs of the visible queues. May include queues that are not among the given queues.
+     * @throws UserStoreException
+     */
+    public Set<String> getVisibleQueueIDs(int tenantId, AuthorizationManager authorizationManager, String[] roles,
+                                          Collection<String> queueIDs) throws UserStoreException {
+        TenantVisibilityIndex tenantIndex = getTenantIndex(tenantId);
+        for (String queueID : queueIDs) {
+            if (!tenantIndex.isIndexed(queueID)) {
+                Set<String> queueRoles = new HashSet<String>();
+                addAll(queueRoles, authorizationManager.getAllowedRolesForResource(queueID, CONSUME_ACTION));
+                addAll(queueRoles, authorizationManager.getAllowedRolesForResource(queueID, PUBLISH_ACTION));
+                tenantIndex.putQueue(queueID, queueRoles);
+            }
+        }
+
+        return tenantIndex.getQueueIDs(roles);
+    }
+
+    /**
+     * Update whether a role can see a queue. This should be called whenever the consume/publish permissions of
+     * the role on the queue change.
+     *
+     * @param tenantId Tenant of the queue
+     * @param queueID  Resource ID of the queue
+     * @param role     Role name
+     * @param visible  true if the role can consume from or publish to the queue
+     */
+    public void setVisibility(int tenantId, String queueID, String role, boolean visible) {
+        TenantVisibilityIndex tenantIndex = tenantIndexes.get(tenantId);
+        if (null != tenantIndex) {
+            tenantIndex.setVisibility(queueID, role, visible);
+        }
+    }
+
+    /**
+     * Drop a queue from the index, so that its roles are read again the next time it is listed. This should be
+     * called when a queue is created or deleted.
+     *
+     * @param tenantId Tenant of the queue
+     * @param queueID  Resource ID of the queue
+     */
+    public void invalidate(int tenantId, String queueID) {
+        TenantVisibilityIndex tenantIndex = tenantIndexes.get(tenantId);
+        if (null != tenantIndex) {
+            tenantIndex.removeQueue(queueID);
+        }
+    }
+
+    /**
+     * Drop the index of a tenant. This should be called when roles of the tenant are deleted or renamed.
+     *
+     * @param tenantId Tenant ID
+     */
+    public void invalidateTenant(int tenantId) {
+        tenantIndexes.remove(tenantId);
+    }
+
+    /**
+     * Drop the whole index
+     */
+    public void invalidateAll() {
+        tenantIndexes.clear();
+    }
+
+    private TenantVisibilityIndex getTenantIndex(int tenantId) {
+        long now = System.currentTimeMillis();
+        TenantVisibilityIndex tenantIndex = tenantIndexes.get(tenantId);
+        if ((null != tenantIndex) && (now >= tenantIndex.expiryTime)) {
+            tenantIndexes.remove(tenantId, tenantIndex);
+            tenantIndex = null;
+        }
+
+        if (null == tenantIndex) {
+            tenantIndex = new TenantVisibilityIndex(now + timeToLive);
+            TenantVisibilityIndex existingIndex = tenantIndexes.putIfAbsent(tenantId, tenantIndex);
+            if (null != existingIndex) {
+                tenantIndex = existingIndex;
+            }
+        }
+        return tenantIndex;
+    }
+
+    private static void addAll(Set<String> set, String[] values) {
+        if (null != values) {
+            for (String value : values) {
+                set.add(value);
+            }
+        }
+    }
+
+    /**
+     * Queues by role and roles by queue of a tenant
+     */
+    private static class TenantVisibilityIndex {
+
+        private final long expiryTime;
+        private final Map<String, Set<String>> roleQueues = new HashMap<String, Set<String>>();
+        private final Map<String, Set<String>> queueRoles = new HashMap<String, Set<String>>();
+
+        private TenantVisibilityIndex(long expiryTime) {
+            this.expiryTime = expiryTime;
+        }
+
+        private synchronized boolean isIndexed(String queueID) {
+            return queueRoles.containsKey(queueID);
+        }
+
+        private synchronized void putQueue(String queueID, Set<String> roles) {
+            removeQueue(queueID);
+            queueRoles.put(queueID, roles);
+            for (String role : roles) {
+                getQueues(role).add(queueID);
+            }
+        }
+
+        private synchronized void removeQueue(String queueID) {
+            Set<String> roles = queueRoles.remove(queueID);
+            if (null != roles) {
+                for (String role : roles) {
+                    Set<String> queues = roleQueues.get(role);
+                    queues.remove(queueID);
+                    if (queues.isEmpty()) {
+                        roleQueues.remove(role);
+                    }
+                }
+            }
+        }
+
+        private synchronized void setVisibility(String queueID, String role, boolean visible) {
+            Set<String> roles = queueRoles.get(queueID);
+            if (null == roles) {
+                // Not indexed yet, loaded with the current permissions when listed
+                return;
+            }
+
+            if (visible) {
+                roles.add(role);
+                getQueues(role).add(queueID);
+            } else if (roles.remove(role)) {
+                Set<String> queues = roleQueues.get(role);
+                queues.remove(queueID);
+                if (queues.isEmpty()) {
+                    roleQueues.remove(role);
+                }
+            }
+        }
+
+        private synchronized Set<String> getQueueIDs(String[] roles) {
+            Set<String> queueIDs = new HashSet<String>();
+            for (String role : roles) {
+                Set<String> queues = roleQueues.get(role);
+                if (null != queues) {
+                    queueIDs.addAll(queues);
+                }
+            }
+            return queueIDs;
+        }
+
+        private Set<String> getQueues(String role) {
+            Set<String> queues = roleQueues.get(role);
+            if (null == queues) {
+                queues = new HashSet<String>();
+                roleQueues.put(role, queues);
+            }
+            return queues;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.commons.cache;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.base.MultitenantConstants;
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.service.RealmService;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches tenant domain to tenant ID and tenant ID to user realm resolutions, so that authenticating and
+ * authorizing connections of tenant users does not go to the tenant manager each time. Concurrent lookups of
+ * the same uncached tenant are resolved only once. Domains and tenants that can not be resolved are not kept.
+ * Entries of a tenant are dropped when the tenant is unloaded, and all entries expire after the time to live.
+ */
+public class TenantRealmCache {
+
+    /**
+     * System property to enable/disable the cache
+     */
+    public static final String ENABLED_PROPERTY = "andes.tenantRealm.cache.enabled";
+
+    /**
+     * System property for the time in seconds a resolution is kept
+     */
+    public static final String TIME_TO_LIVE_PROPERTY = "andes.tenantRealm.cache.timeToLive";
+
+    private static final int DEFAULT_TIME_TO_LIVE = 900;
+
+    private static TenantRealmCache instance = new TenantRealmCache();
+
+    private final boolean enabled;
+    private final long timeToLive;
+    private final ConcurrentMap<String, CachedValue<Integer>> tenantIds =
+            new ConcurrentHashMap<String, CachedValue<Integer>>();
+    private final ConcurrentMap<Integer, CachedValue<UserRealm>> userRealms =
+            new ConcurrentHashMap<Integer, CachedValue<UserRealm>>();
+
+    private TenantRealmCache() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, true);
+        timeToLive = CommonsUtil.getIntProperty(TIME_TO_LIVE_PROPERTY, DEFAULT_TIME_TO_LIVE) * 1000L;
+    }
+
+    public static TenantRealmCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the ID of a tenant
+     *
+     * @param realmService Realm service
+     * @param tenantDomain Tenant domain, or null for the super tenant
+     * @return Tenant ID, or -1 if there is no such tenant
+     * @throws UserStoreException
+     */
+    public int getTenantId(RealmService realmService, String tenantDomain) throws UserStoreException {
+        if (null == tenantDomain || MultitenantConstants.SUPER_TENANT_DOMAIN_NAME.equals(tenantDomain)) {
+            return MultitenantConstants.SUPER_TENANT_ID;
+        }
+
+        if (!enabled) {
+            return realmService.getTenantManager().getTenantId(tenantDomain);
+        }
+
+        CachedValue<Integer> cachedTenantId = getCachedValue(tenantIds, tenantDomain);
+        Integer tenantId = cachedTenantId.get();
+        if (null == tenantId) {
+            synchronized (cachedTenantId) {
+                tenantId = cachedTenantId.get();
+                if (null == tenantId) {
+                    boolean resolved = false;
+                    try {
+                        tenantId = realmService.getTenantManager().getTenantId(tenantDomain);
+                        // Unknown domains are not cached, since the tenant may be created any time
+                        if (MultitenantConstants.INVALID_TENANT_ID != tenantId) {
+                            cachedTenantId.set(tenantId, System.currentTimeMillis() + timeToLive);
+                            resolved = true;
+                        }
+                    } finally {
+                        // Drop the placeholder, so that lookups of made up domains do not fill up the cache
+                        if (!resolved) {
+                            tenantIds.remove(tenantDomain, cachedTenantId);
+                        }
+                    }
+                }
+            }
+        }
+        return tenantId;
+    }
+
+    /**
+     * Get the user realm of a tenant
+     *
+     * @param realmService Realm service
+     * @param tenantId     Tenant ID
+     * @return User realm of the tenant
+     * @throws UserStoreException
+     */
+    public UserRealm getTenantUserRealm(RealmService realmService, int tenantId) throws UserStoreException {
+        if (!enabled) {
+            return realmService.getTenantUserRealm(tenantId);
+        }
+
+        CachedValue<UserRealm> cachedUserRealm = getCachedValue(userRealms, tenantId);
+        UserRealm userRealm = cachedUserRealm.get();
+        if (null == userRealm) {
+            synchronized (cachedUserRealm) {
+                userRealm = cachedUserRealm.get();
+                if (null == userRealm) {
+                    try {
+                        userRealm = realmService.getTenantUserRealm(tenantId);
+                        if (null != userRealm) {
+                            cachedUserRealm.set(userRealm, System.currentTimeMillis() + timeToLive);
+                        }
+                    } finally {
+                        if (null == userRealm) {
+                            userRealms.remove(tenantId, cachedUserRealm);
+                        }
+                    }
+                }
+            }
+        }
+        return userRealm;
+    }
+
+    /**
+     * Get the user realm of a tenant by the tenant domain
+     *
+     * @param realmService Realm service
+     * @param tenantDomain Tenant domain, or null for the super tenant
+     * @return User realm of the tenant
+     * @throws UserStoreException
+     */
+    public UserRealm getUserRealm(RealmService realmService, String tenantDomain) throws UserStoreException {
+        return getTenantUserRealm(realmService, getTenantId(realmService, tenantDomain));
+    }
+
+    /**
+     * Drop the cached resolutions of a tenant
+     *
+     * @param tenantId Tenant ID
+     */
+    public void invalidateTenant(int tenantId) {
+        userRealms.remove(tenantId);
+        Iterator<Map.Entry<String, CachedValue<Integer>>> iterator = tenantIds.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Integer cachedTenantId = iterator.next().getValue().get();
+            if (null == cachedTenantId || tenantId == cachedTenantId) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop all cached resolutions
+     */
+    public void invalidateAll() {
+        tenantIds.clear();
+        userRealms.clear();
+    }
+
+    private static <K, V> CachedValue<V> getCachedValue(ConcurrentMap<K, CachedValue<V>> cache, K key) {
+        CachedValue<V> cachedValue = cache.get(key);
+        if (null == cachedValue) {
+            cachedValue = new CachedValue<V>();
+            CachedValue<V> existingValue = cache.putIfAbsent(key, cachedValue);
+            if (null != existingValue) {
+                cachedValue = existingValue;
+            }
+        }
+        return cachedValue;
+    }
+
+    /**
+     * A resolved value along with the time it expires. Lookups of the same key synchronize on this.
+     */
+    private static class CachedValue<V> {
+
+        private volatile V value;
+        private volatile long expiryTime;
+
+        private V get() {
+            V currentValue = value;
+            return (null != currentValue && System.currentTimeMillis() < expiryTime) ? currentValue : null;
+        }
+
+        private void set(V value, long expiryTime) {
+            this.expiryTime = expiryTime;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.config;
+
+/**
+ * Values read from andes-config.xml. Values of elements not found in the file are null, or false for flags.
+ */
+public class AndesConfig {
+
+    private final String port;
+    private final String sslPort;
+    private final boolean sslOnly;
+    private final String keyStorePath;
+    private final String keyStorePassword;
+    private final String trustStorePath;
+    private final String trustStorePassword;
+    private final boolean viewMessageCounts;
+
+    AndesConfig(String port, String sslPort, boolean sslOnly, String keyStorePath, String keyStorePassword,
+                String trustStorePath, String trustStorePassword, boolean viewMessageCounts) {
+        this.port = port;
+        this.sslPort = sslPort;
+        this.sslOnly = sslOnly;
+        this.keyStorePath = keyStorePath;
+        this.keyStorePassword = keyStorePassword;
+        this.trustStorePath = trustStorePath;
+        this.trustStorePassword = trustStorePassword;
+        this.viewMessageCounts = viewMessageCounts;
+    }
+
+    /**
+     * @return AMQP port without the port offset (connector/port)
+     */
+    public String getPort() {
+        return port;
+    }
+
+    /**
+     * @return AMQP SSL port without the port offset (connector/sslport)
+     */
+    public String getSSLPort() {
+        return sslPort;
+    }
+
+    /**
+     * @return Whether only SSL connections are accepted (connector/ssl/sslOnly)
+     */
+    public boolean isSSLOnly() {
+        return sslOnly;
+    }
+
+    public String getKeyStorePath() {
+        return keyStorePath;
+    }
+
+    public String getKeyStorePassword() {
+        return keyStorePassword;
+    }
+
+    public String getTrustStorePath() {
+        return trustStorePath;
+    }
+
+    public String getTrustStorePassword() {
+        return trustStorePassword;
+    }
+
+    /**
+     * @return Whether message counts are shown in the console by default (queue/viewMessageCounts)
+     */
+    public boolean isViewMessageCounts() {
+        return viewMessageCounts;
+    }
+}
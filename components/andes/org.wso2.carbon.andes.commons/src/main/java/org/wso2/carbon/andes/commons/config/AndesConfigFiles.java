@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.config;
+
+import org.apache.axiom.om.OMElement;
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.utils.ServerConstants;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshots of the andes configuration files shared by the andes bundles, so that configuration values are read
+ * without parsing the files on each call. A file is parsed again when it changes, see ReloadableConfigFile.
+ */
+public class AndesConfigFiles {
+
+    /**
+     * System property for the minimum time in seconds between two checks of whether a configuration file changed
+     */
+    public static final String CHECK_INTERVAL_PROPERTY = "andes.config.reloadCheckInterval";
+
+    private static final int DEFAULT_CHECK_INTERVAL = 5;
+
+    private static final String QPID_CONF_DIR = "/repository/conf/advanced/";
+    private static final String ANDES_CONF_FILE = "andes-config.xml";
+    private static final String ANDES_VIRTUALHOST_CONF_FILE = "andes-virtualhosts.xml";
+
+    private static final String QPID_CONF_CONNECTOR_NODE = "connector";
+    private static final String QPID_CONF_PORT_NODE = "port";
+    private static final String QPID_CONF_SSL_PORT_NODE = "sslport";
+    private static final String QPID_CONF_SSL_NODE = "ssl";
+    private static final String QPID_CONF_SSL_ONLY_NODE = "sslOnly";
+    private static final String QPID_CONF_SSL_KEYSTORE_PATH = "keystorePath";
+    private static final String QPID_CONF_SSL_KEYSTORE_PASSWORD = "keystorePassword";
+    private static final String QPID_CONF_SSL_TRUSTSTORE_PATH = "truststorePath";
+    private static final String QPID_CONF_SSL_TRUSTSTORE_PASSWORD = "truststorePassword";
+    private static final String QPID_CONF_QUEUE_NODE = "queue";
+    private static final String QPID_CONF_VIEW_MESSAGE_COUNTS_NODE = "viewMessageCounts";
+
+    private static final String QPID_VIRTUALHOST_NODE = "virtualhost";
+    private static final String QPID_VIRTUALHOST_NAME_NODE = "name";
+    private static final String QPID_VIRTUALHOST_STORE_NODE = "store";
+    private static final String QPID_VIRTUALHOST_COORDINATION_NODE = "coordination";
+    private static final String QPID_VIRTUALHOST_MESSAGE_STORE_NODE = "messageStore";
+    private static final String QPID_VIRTUALHOST_CONTEXT_STORE_NODE = "andesContextStore";
+    private static final String QPID_VIRTUALHOST_CLASS_ATTRIBUTE = "class";
+    private static final String QPID_VIRTUALHOST_PROPERTY_NODE = "property";
+    private static final String QPID_VIRTUALHOST_NAME_ATTRIBUTE = "name";
+    private static final String QPID_VIRTUALHOST_COORDINATION_THRIFT_SERVER_HOST_NODE = "thriftServerHost";
+    private static final String QPID_VIRTUALHOST_COORDINATION_THRIFT_SERVER_PORT_NODE = "thriftServerPort";
+
+    private static AndesConfigFiles instance = new AndesConfigFiles();
+
+    private final ReloadableConfigFile<AndesConfig> andesConfig;
+    private final ReloadableConfigFile<VirtualHostsConfig> virtualHostsConfig;
+
+    private AndesConfigFiles() {
+        long checkInterval = CommonsUtil.getIntProperty(CHECK_INTERVAL_PROPERTY, DEFAULT_CHECK_INTERVAL) * 1000L;
+        String confDir = System.getProperty(ServerConstants.CARBON_HOME) + QPID_CONF_DIR;
+
+        andesConfig = new ReloadableConfigFile<AndesConfig>(new File(confDir + ANDES_CONF_FILE), checkInterval) {
+            protected AndesConfig parse(OMElement docRootNode) {
+                return parseAndesConfig(docRootNode);
+            }
+        };
+        virtualHostsConfig = new ReloadableConfigFile<VirtualHostsConfig>(
+                new File(confDir + ANDES_VIRTUALHOST_CONF_FILE), checkInterval) {
+            protected VirtualHostsConfig parse(OMElement docRootNode) {
+                return parseVirtualHostsConfig(docRootNode);
+            }
+        };
+    }
+
+    public static AndesConfigFiles getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return Values read from andes-config.xml
+     * @throws FileNotFoundException if the file was never read and is not found
+     * @throws XMLStreamException    if the file was never read and is not valid XML
+     */
+    public AndesConfig getAndesConfig() throws FileNotFoundException, XMLStreamException {
+        return andesConfig.get();
+    }
+
+    /**
+     * @return Values read from andes-virtualhosts.xml
+     * @throws FileNotFoundException if the file was never read and is not found
+     * @throws XMLStreamException    if the file was never read and is not valid XML
+     */
+    public VirtualHostsConfig getVirtualHostsConfig() throws FileNotFoundException, XMLStreamException {
+        return virtualHostsConfig.get();
+    }
+
+    private static AndesConfig parseAndesConfig(OMElement docRootNode) {
+        OMElement sslNode = ReloadableConfigFile.getElement(docRootNode, QPID_CONF_CONNECTOR_NODE,
+                QPID_CONF_SSL_NODE);
+        String sslOnly = null;
+        String keyStorePath = null;
+        String keyStorePassword = null;
+        String trustStorePath = null;
+        String trustStorePassword = null;
+        if (null != sslNode) {
+            sslOnly = ReloadableConfigFile.getText(sslNode, QPID_CONF_SSL_ONLY_NODE);
+            keyStorePath = ReloadableConfigFile.getText(sslNode, QPID_CONF_SSL_KEYSTORE_PATH);
+            keyStorePassword = ReloadableConfigFile.getText(sslNode, QPID_CONF_SSL_KEYSTORE_PASSWORD);
+            trustStorePath = ReloadableConfigFile.getText(sslNode, QPID_CONF_SSL_TRUSTSTORE_PATH);
+            trustStorePassword = ReloadableConfigFile.getText(sslNode, QPID_CONF_SSL_TRUSTSTORE_PASSWORD);
+        }
+
+        return new AndesConfig(
+                ReloadableConfigFile.getText(docRootNode, QPID_CONF_CONNECTOR_NODE, QPID_CONF_PORT_NODE),
+                ReloadableConfigFile.getText(docRootNode, QPID_CONF_CONNECTOR_NODE, QPID_CONF_SSL_PORT_NODE),
+                Boolean.parseBoolean(sslOnly), keyStorePath, keyStorePassword, trustStorePath, trustStorePassword,
+                Boolean.parseBoolean(ReloadableConfigFile.getText(docRootNode, QPID_CONF_QUEUE_NODE,
+                        QPID_CONF_VIEW_MESSAGE_COUNTS_NODE)));
+    }
+
+    private static VirtualHostsConfig parseVirtualHostsConfig(OMElement docRootNode) {
+        OMElement virtualHostNode = ReloadableConfigFile.getElement(docRootNode, QPID_VIRTUALHOST_NODE);
+        String virtualHostName = (null != virtualHostNode) ?
+                ReloadableConfigFile.getText(virtualHostNode, QPID_VIRTUALHOST_NAME_NODE) : null;
+        OMElement carbonVirtualHost = (null != virtualHostName) ?
+                ReloadableConfigFile.getElement(virtualHostNode, virtualHostName) : null;
+        if (null == carbonVirtualHost) {
+            return new VirtualHostsConfig(null, null, null, Collections.<String, String>emptyMap(), null,
+                    Collections.<String, String>emptyMap());
+        }
+
+        OMElement messageStoreNode = ReloadableConfigFile.getElement(carbonVirtualHost,
+                QPID_VIRTUALHOST_STORE_NODE, QPID_VIRTUALHOST_MESSAGE_STORE_NODE);
+        OMElement contextStoreNode = ReloadableConfigFile.getElement(carbonVirtualHost,
+                QPID_VIRTUALHOST_STORE_NODE, QPID_VIRTUALHOST_CONTEXT_STORE_NODE);
+        return new VirtualHostsConfig(
+                ReloadableConfigFile.getText(carbonVirtualHost, QPID_VIRTUALHOST_COORDINATION_NODE,
+                        QPID_VIRTUALHOST_COORDINATION_THRIFT_SERVER_HOST_NODE),
+                ReloadableConfigFile.getText(carbonVirtualHost, QPID_VIRTUALHOST_COORDINATION_NODE,
+                        QPID_VIRTUALHOST_COORDINATION_THRIFT_SERVER_PORT_NODE),
+                getClassName(messageStoreNode), getProperties(messageStoreNode),
+                getClassName(contextStoreNode), getProperties(contextStoreNode));
+    }
+
+    private static String getClassName(OMElement storeNode) {
+        String className = (null != storeNode) ?
+                storeNode.getAttributeValue(new QName(QPID_VIRTUALHOST_CLASS_ATTRIBUTE)) : null;
+        return (null != className) ? className.trim() : null;
+    }
+
+    private static Map<String, String> getProperties(OMElement storeNode) {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        if (null != storeNode) {
+            Iterator itr = storeNode.getChildrenWithName(new QName(QPID_VIRTUALHOST_PROPERTY_NODE));
+            while (itr.hasNext()) {
+                OMElement propertyElem = (OMElement) itr.next();
+                String attribute = propertyElem.getAttributeValue(new QName(QPID_VIRTUALHOST_NAME_ATTRIBUTE));
+                properties.put(attribute, propertyElem.getText().trim());
+            }
+        }
+        return Collections.unmodifiableMap(properties);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.config;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.impl.builder.StAXOMBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An XML configuration file parsed once into an immutable snapshot, which is served until the file changes.
+ * <p/>
+ * Whether the file changed is checked at most once per check interval, on the first access after the interval, by
+ * comparing the last modified time and the length of the file with those it was parsed at. A changed file is
+ * parsed by one thread while the others keep being served the previous snapshot, which is then replaced at once.
+ * If the changed file can not be parsed the previous snapshot is kept.
+ *
+ * @param <T> Type of the snapshot
+ */
+public abstract class ReloadableConfigFile<T> {
+
+    private static final Log log = LogFactory.getLog(ReloadableConfigFile.class);
+
+    private final File file;
+    private final long checkInterval;
+    private final Object parseLock = new Object();
+    private volatile Snapshot<T> snapshot;
+    private volatile long nextCheckTime;
+
+    /**
+     * @param file          Configuration file
+     * @param checkInterval Minimum time in milliseconds between two checks of whether the file changed
+     */
+    protected ReloadableConfigFile(File file, long checkInterval) {
+        this.file = file;
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Get the snapshot of the file, parsing the file first if it was never parsed or changed since
+     *
+     * @return Snapshot
+     * @throws FileNotFoundException if the file was never parsed and is not found
+     * @throws XMLStreamException    if the file was never parsed and is not valid XML
+     */
+    public T get() throws FileNotFoundException, XMLStreamException {
+        Snapshot<T> currentSnapshot = snapshot;
+        long now = System.currentTimeMillis();
+        if ((null != currentSnapshot) && (now < nextCheckTime)) {
+            return currentSnapshot.value;
+        }
+
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if ((null != currentSnapshot) && (currentSnapshot.lastModified == lastModified)
+                && (currentSnapshot.length == length)) {
+            nextCheckTime = now + checkInterval;
+            return currentSnapshot.value;
+        }
+
+        if (null == currentSnapshot) {
+            // Nothing to serve meanwhile, wait for the file to be parsed
+            synchronized (parseLock) {
+                if (null == snapshot) {
+                    snapshot = read(lastModified, length);
+                    nextCheckTime = now + checkInterval;
+                }
+                return snapshot.value;
+            }
+        }
+
+        if (!reload(lastModified, length)) {
+            // Being parsed by another thread
+            return currentSnapshot.value;
+        }
+        return snapshot.value;
+    }
+
+    /**
+     * Parse the changed file, unless another thread is parsing it
+     *
+     * @return false if another thread is parsing the file
+     */
+    private boolean reload(long lastModified, long length) {
+        // Only the thread that moves the next check time forward parses
+        synchronized (parseLock) {
+            long now = System.currentTimeMillis();
+            if (now < nextCheckTime) {
+                return false;
+            }
+            nextCheckTime = now + checkInterval;
+        }
+
+        try {
+            snapshot = read(lastModified, length);
+            log.info("Reloaded " + file.getPath());
+        } catch (FileNotFoundException e) {
+            log.warn(file.getPath() + " not found. Using the configuration read before.", e);
+        } catch (XMLStreamException e) {
+            log.warn("Error while reading " + file.getPath() + ". Using the configuration read before.", e);
+        } catch (RuntimeException e) {
+            log.warn("Invalid configuration : " + file.getPath() + ". Using the configuration read before.", e);
+        }
+        return true;
+    }
+
+    private Snapshot<T> read(long lastModified, long length) throws FileNotFoundException, XMLStreamException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            OMElement docRootNode = new StAXOMBuilder(inputStream).getDocumentElement();
+            // Read the whole document before the stream is closed
+            docRootNode.build();
+            return new Snapshot<T>(parse(docRootNode), lastModified, length);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                log.warn("Failed to close " + file.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * Read the snapshot out of the document. Elements not found in the document should be left as null or
+     * defaults rather than failing, as earlier versions of the file may not have them.
+     *
+     * @param docRootNode Root element of the document
+     * @return Snapshot
+     */
+    protected abstract T parse(OMElement docRootNode);
+
+    /**
+     * Get the text of an element below another, following the given path of element names
+     *
+     * @param element Element to start from
+     * @param path    Element names
+     * @return Trimmed text, or null if an element on the path is not found
+     */
+    protected static String getText(OMElement element, String... path) {
+        OMElement child = getElement(element, path);
+        return (null != child) ? child.getText().trim() : null;
+    }
+
+    /**
+     * Get an element below another, following the given path of element names
+     *
+     * @param element Element to start from
+     * @param path    Element names
+     * @return Element, or null if an element on the path is not found
+     */
+    protected static OMElement getElement(OMElement element, String... path) {
+        OMElement child = element;
+        for (int i = 0; (i < path.length) && (null != child); i++) {
+            child = child.getFirstChildWithName(new QName(path[i]));
+        }
+        return child;
+    }
+
+    /**
+     * A snapshot and the state of the file it was parsed from
+     */
+    private static class Snapshot<T> {
+
+        private final T value;
+        private final long lastModified;
+        private final long length;
+
+        private Snapshot(T value, long lastModified, long length) {
+            this.value = value;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.config;
+
+import java.util.Map;
+
+/**
+ * Values read from andes-virtualhosts.xml, for the virtual host named in virtualhost/name. Values of elements not
+ * found in the file are null.
+ */
+public class VirtualHostsConfig {
+
+    private final String thriftServerHost;
+    private final String thriftServerPort;
+    private final String messageStoreClassName;
+    private final Map<String, String> messageStoreProperties;
+    private final String andesContextStoreClassName;
+    private final Map<String, String> andesContextStoreProperties;
+
+    VirtualHostsConfig(String thriftServerHost, String thriftServerPort, String messageStoreClassName,
+                       Map<String, String> messageStoreProperties, String andesContextStoreClassName,
+                       Map<String, String> andesContextStoreProperties) {
+        this.thriftServerHost = thriftServerHost;
+        this.thriftServerPort = thriftServerPort;
+        this.messageStoreClassName = messageStoreClassName;
+        this.messageStoreProperties = messageStoreProperties;
+        this.andesContextStoreClassName = andesContextStoreClassName;
+        this.andesContextStoreProperties = andesContextStoreProperties;
+    }
+
+    /**
+     * @return Thrift server host (coordination/thriftServerHost)
+     */
+    public String getThriftServerHost() {
+        return thriftServerHost;
+    }
+
+    /**
+     * @return Thrift server port without the port offset (coordination/thriftServerPort)
+     */
+    public String getThriftServerPort() {
+        return thriftServerPort;
+    }
+
+    public String getMessageStoreClassName() {
+        return messageStoreClassName;
+    }
+
+    /**
+     * @return Unmodifiable message store properties by name
+     */
+    public Map<String, String> getMessageStoreProperties() {
+        return messageStoreProperties;
+    }
+
+    public String getAndesContextStoreClassName() {
+        return andesContextStoreClassName;
+    }
+
+    /**
+     * @return Unmodifiable andes context store properties by name
+     */
+    public Map<String, String> getAndesContextStoreProperties() {
+        return andesContextStoreProperties;
+    }
+}
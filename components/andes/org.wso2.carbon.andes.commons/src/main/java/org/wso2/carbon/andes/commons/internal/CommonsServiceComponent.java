@@ -18,9 +18,16 @@
 
 package org.wso2.carbon.andes.commons.internal;
 
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.commons.cache.TenantRealmCache;
+import org.wso2.carbon.andes.commons.registry.RegistryMetadataCache;
+import org.wso2.carbon.andes.commons.registry.RegistryMetadataCacheMBean;
+import org.wso2.carbon.andes.commons.registry.RegistryMutationQueue;
 import org.wso2.carbon.registry.core.service.RegistryService;
 import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.utils.Axis2ConfigurationContextObserver;
 
 /**
  * @scr.component name="org.wso2.carbon.andes.commons.internal.CommonsServiceComponent"
@@ -40,10 +47,31 @@ import org.wso2.carbon.user.core.service.RealmService;
  */
 public class CommonsServiceComponent {
 
+    private ServiceRegistration tenantRealmCacheObserver = null;
+
     protected void activate(ComponentContext ctx) {
+        // Register observer to drop cached data of unloaded tenants
+        tenantRealmCacheObserver = ctx.getBundleContext().registerService(
+                Axis2ConfigurationContextObserver.class.getName(), new TenantRealmCacheObserver(), null);
+
+        RegistryMutationQueue.getInstance().start();
+
+        if (RegistryMetadataCache.getInstance().isEnabled()) {
+            CommonsUtil.registerMBean(RegistryMetadataCache.getInstance(), RegistryMetadataCacheMBean.OBJECT_NAME);
+        }
     }
 
     protected void deactivate(ComponentContext ctx) {
+        // Write pending queue/subscription changes before the registry service goes away
+        RegistryMutationQueue.getInstance().shutdown();
+
+        if (null != tenantRealmCacheObserver) {
+            tenantRealmCacheObserver.unregister();
+        }
+        TenantRealmCache.getInstance().invalidateAll();
+
+        CommonsUtil.unregisterMBean(RegistryMetadataCacheMBean.OBJECT_NAME);
+        RegistryMetadataCache.getInstance().invalidateAll();
     }
 
     protected void setRegistryService(RegistryService registryService) {
@@ -52,6 +80,8 @@ public class CommonsServiceComponent {
 
     protected void unsetRegistryService(RegistryService registryService) {
         CommonsDataHolder.getInstance().setRegistryService(null);
+        // Cached registries belong to the registry service that went away
+        RegistryMetadataCache.getInstance().invalidateAll();
     }
 
     protected void setRealmService(RealmService realmService) {
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.commons.internal;
+
+import org.apache.axis2.context.ConfigurationContext;
+import org.wso2.carbon.andes.commons.cache.AuthorizationCache;
+import org.wso2.carbon.andes.commons.cache.PermissionIndex;
+import org.wso2.carbon.andes.commons.cache.QueueVisibilityIndex;
+import org.wso2.carbon.andes.commons.cache.TenantRealmCache;
+import org.wso2.carbon.andes.commons.registry.RegistryMetadataCache;
+import org.wso2.carbon.utils.AbstractAxis2ConfigurationContextObserver;
+import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
+
+/**
+ * Drops cached user realm, authorization and registry data of a tenant when the tenant is unloaded. Tenant
+ * management unloads a tenant when deactivating it, hence this also covers deactivation of a loaded tenant.
+ * Entries of a tenant deactivated while not loaded expire after the time to live of the caches.
+ */
+public class TenantRealmCacheObserver extends AbstractAxis2ConfigurationContextObserver {
+
+    @Override
+    public void terminatingConfigurationContext(ConfigurationContext configurationContext) {
+        int tenantId = MultitenantUtils.getTenantId(configurationContext);
+        TenantRealmCache.getInstance().invalidateTenant(tenantId);
+        AuthorizationCache.getInstance().invalidateTenant(tenantId);
+        PermissionIndex.getInstance().invalidateTenant(tenantId);
+        QueueVisibilityIndex.getInstance().invalidateTenant(tenantId);
+        RegistryMetadataCache.getInstance().invalidateTenant(tenantId);
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.registry;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.registry.core.Collection;
+import org.wso2.carbon.registry.core.Resource;
+import org.wso2.carbon.registry.core.exceptions.RegistryException;
+import org.wso2.carbon.registry.core.session.UserRegistry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Projection of the name, owner and created time of the queues/subscriptions kept under a registry collection,
+ * so that they can be listed without reading every child resource. The projection of a collection is spread
+ * over a fixed number of bucket resources kept outside the collection, each holding one multi-valued property
+ * per child. Listing a collection then costs one read per bucket instead of one read per child.
+ * <p/>
+ * Creating or deleting a queue/subscription does not touch the buckets. The change is recorded in memory and
+ * applied together with the other pending changes of the tenant, rewriting each affected bucket once, either by
+ * the RegistryMutationQueue flush or before the index is next read. Once changes pile up beyond a limit without
+ * being applied, as when many temporary queues come and go between two listings or when a listing indexes the
+ * children of a large collection created before the index existed, the change that crosses the limit applies
+ * them, so that the memory they take stays bounded. Changes are never dropped.
+ */
+final class MetadataIndex {
+
+    private static final String INDEX_ROOT = "andes/index/";
+    private static final int BUCKET_COUNT = 64;
+
+    /**
+     * System property for the maximum number of pending changes of a tenant
+     */
+    public static final String MAX_PENDING_CHANGES_PROPERTY = "andes.registry.index.maxPendingChanges";
+
+    private static final int DEFAULT_MAX_PENDING_CHANGES = 10000;
+    private static final int MAX_PENDING_CHANGES =
+            CommonsUtil.getIntProperty(MAX_PENDING_CHANGES_PROPERTY, DEFAULT_MAX_PENDING_CHANGES);
+
+    /**
+     * Pending change of a child that is removed
+     */
+    private static final String[] REMOVED = new String[0];
+
+    private static final int NAME_INDEX = 0;
+    private static final int OWNER_INDEX = 1;
+    private static final int CREATED_TIME_INDEX = 2;
+
+    /**
+     * Locks serializing updates of a bucket, striped by tenant and bucket ID
+     */
+    private static final Object[] BUCKET_LOCKS = new Object[BUCKET_COUNT];
+
+    /**
+     * Pending changes by tenant ID, holding the projection of each changed child by resource ID
+     */
+    private static final ConcurrentMap<Integer, ConcurrentMap<String, String[]>> PENDING_CHANGES =
+            new ConcurrentHashMap<Integer, ConcurrentMap<String, String[]>>();
+
+    static {
+        for (int i = 0; i < BUCKET_LOCKS.length; i++) {
+            BUCKET_LOCKS[i] = new Object();
+        }
+    }
+
+    private MetadataIndex() {
+    }
+
+    /**
+     * Add or replace the projection of a child resource. The change is applied later, unless it takes the
+     * pending changes of the tenant beyond the limit.
+     *
+     * @param registry    Registry the resource is kept in
+     * @param resourceID  Resource ID of the queue/subscription
+     * @param name        Name of the queue/subscription
+     * @param owner       Owner of the queue/subscription
+     * @param createdTime Time the queue/subscription was created
+     * @throws RegistryException
+     */
+    static void put(UserRegistry registry, String resourceID, String name, String owner, String createdTime)
+            throws RegistryException {
+        addPendingChange(registry, resourceID, new String[]{name, owner, createdTime});
+    }
+
+    /**
+     * Remove the projection of a child resource. The change is applied later, unless it takes the pending
+     * changes of the tenant beyond the limit.
+     *
+     * @param registry   Registry the resource is kept in
+     * @param resourceID Resource ID of the queue/subscription
+     * @throws RegistryException
+     */
+    static void remove(UserRegistry registry, String resourceID) throws RegistryException {
+        addPendingChange(registry, resourceID, REMOVED);
+    }
+
+    /**
+     * Apply the pending changes of the tenant of a registry, rewriting each affected bucket once. Changes
+     * recorded meanwhile are left pending.
+     *
+     * @param registry Registry of the tenant
+     * @throws RegistryException
+     */
+    static void applyPendingChanges(UserRegistry registry) throws RegistryException {
+        int tenantId = registry.getTenantId();
+        ConcurrentMap<String, String[]> pendingChanges = PENDING_CHANGES.get(tenantId);
+        if ((null == pendingChanges) || pendingChanges.isEmpty()) {
+            return;
+        }
+
+        Map<String, Map<String, String[]>> changesByBucket = new HashMap<String, Map<String, String[]>>();
+        for (Map.Entry<String, String[]> change : pendingChanges.entrySet()) {
+            String bucketID = getBucketID(change.getKey());
+            Map<String, String[]> bucketChanges = changesByBucket.get(bucketID);
+            if (null == bucketChanges) {
+                bucketChanges = new HashMap<String, String[]>();
+                changesByBucket.put(bucketID, bucketChanges);
+            }
+            bucketChanges.put(change.getKey(), change.getValue());
+        }
+
+        for (Map.Entry<String, Map<String, String[]>> bucketChanges : changesByBucket.entrySet()) {
+            String bucketID = bucketChanges.getKey();
+            synchronized (getLock(tenantId, bucketID)) {
+                Resource bucket = registry.resourceExists(bucketID) ? registry.get(bucketID) : registry.newResource();
+                boolean changed = false;
+                for (Map.Entry<String, String[]> change : bucketChanges.getValue().entrySet()) {
+                    String childName = getChildName(change.getKey());
+                    String[] projection = change.getValue();
+                    if (REMOVED == projection) {
+                        if (null != bucket.getProperty(childName)) {
+                            bucket.removeProperty(childName);
+                            changed = true;
+                        }
+                    } else {
+                        bucket.setProperty(childName, Arrays.asList(toValue(projection[NAME_INDEX]),
+                                toValue(projection[OWNER_INDEX]), toValue(projection[CREATED_TIME_INDEX])));
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    registry.put(bucketID, bucket);
+                }
+            }
+
+            // Keep changes recorded while the bucket was written
+            for (Map.Entry<String, String[]> change : bucketChanges.getValue().entrySet()) {
+                pendingChanges.remove(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    private static void addPendingChange(UserRegistry registry, String resourceID, String[] projection)
+            throws RegistryException {
+        int tenantId = registry.getTenantId();
+        ConcurrentMap<String, String[]> pendingChanges = PENDING_CHANGES.get(tenantId);
+        if (null == pendingChanges) {
+            pendingChanges = new ConcurrentHashMap<String, String[]>();
+            ConcurrentMap<String, String[]> existingChanges = PENDING_CHANGES.putIfAbsent(tenantId, pendingChanges);
+            if (null != existingChanges) {
+                pendingChanges = existingChanges;
+            }
+        }
+
+        pendingChanges.put(resourceID, projection);
+        if (pendingChanges.size() > MAX_PENDING_CHANGES) {
+            // Changes that fail to apply stay pending for the next flush or listing
+            applyPendingChanges(registry);
+        }
+    }
+
+    /**
+     * Read the projection of all children of a collection
+     *
+     * @param registry     Registry the collection is kept in
+     * @param collectionID Resource ID of the collection
+     * @return Name, owner and created time by child name
+     * @throws RegistryException
+     */
+    static Map<String, String[]> read(UserRegistry registry, String collectionID) throws RegistryException {
+        applyPendingChanges(registry);
+        Map<String, String[]> projection = new HashMap<String, String[]>();
+
+        String indexID = INDEX_ROOT + collectionID;
+        if (!registry.resourceExists(indexID)) {
+            return projection;
+        }
+
+        Collection index = (Collection) registry.get(indexID);
+        for (String bucketID : index.getChildren()) {
+            Resource bucket = registry.get(bucketID);
+            for (Object key : bucket.getProperties().keySet()) {
+                String childName = (String) key;
+                List<String> values = bucket.getPropertyValues(childName);
+                if ((null != values) && (values.size() > CREATED_TIME_INDEX)) {
+                    projection.put(childName, new String[]{fromValue(values.get(NAME_INDEX)),
+                            fromValue(values.get(OWNER_INDEX)), fromValue(values.get(CREATED_TIME_INDEX))});
+                }
+            }
+        }
+
+        return projection;
+    }
+
+    /**
+     * Read the projection of some of the children of a collection, reading only the buckets they are kept in
+     *
+     * @param registry     Registry the collection is kept in
+     * @param collectionID Resource ID of the collection
+     * @param childNames   Names of the children
+     * @return Name, owner and created time by child name
+     * @throws RegistryException
+     */
+    static Map<String, String[]> read(UserRegistry registry, String collectionID, Set<String> childNames)
+            throws RegistryException {
+        applyPendingChanges(registry);
+        Map<String, String[]> projection = new HashMap<String, String[]>();
+
+        Set<String> bucketIDs = new HashSet<String>();
+        for (String childName : childNames) {
+            bucketIDs.add(getBucketID(collectionID, childName));
+        }
+
+        for (String bucketID : bucketIDs) {
+            if (!registry.resourceExists(bucketID)) {
+                continue;
+            }
+
+            Resource bucket = registry.get(bucketID);
+            for (String childName : childNames) {
+                List<String> values = bucket.getPropertyValues(childName);
+                if ((null != values) && (values.size() > CREATED_TIME_INDEX)) {
+                    projection.put(childName, new String[]{fromValue(values.get(NAME_INDEX)),
+                            fromValue(values.get(OWNER_INDEX)), fromValue(values.get(CREATED_TIME_INDEX))});
+                }
+            }
+        }
+
+        return projection;
+    }
+
+    /**
+     * Get the name of a child from its resource ID
+     *
+     * @param resourceID Resource ID of the child
+     * @return Last segment of the resource ID
+     */
+    static String getChildName(String resourceID) {
+        return resourceID.substring(resourceID.lastIndexOf('/') + 1);
+    }
+
+    private static String getBucketID(String resourceID) {
+        int separatorIndex = resourceID.lastIndexOf('/');
+        String collectionID = (separatorIndex > 0) ? resourceID.substring(0, separatorIndex) : "";
+
+        return getBucketID(collectionID, resourceID.substring(separatorIndex + 1));
+    }
+
+    private static String getBucketID(String collectionID, String childName) {
+        return INDEX_ROOT + collectionID + "/" + ((childName.hashCode() & Integer.MAX_VALUE) % BUCKET_COUNT);
+    }
+
+    private static Object getLock(int tenantId, String bucketID) {
+        int hash = 31 * tenantId + bucketID.hashCode();
+        hash ^= (hash >>> 16);
+        return BUCKET_LOCKS[(hash & Integer.MAX_VALUE) % BUCKET_LOCKS.length];
+    }
+
+    private static String toValue(String value) {
+        return (null != value) ? value : "";
+    }
+
+    private static String fromValue(String value) {
+        return ((null != value) && (value.length() > 0)) ? value : null;
+    }
+}
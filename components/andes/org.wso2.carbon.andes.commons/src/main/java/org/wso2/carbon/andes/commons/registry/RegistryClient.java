@@ -28,13 +28,21 @@ import org.wso2.carbon.andes.commons.internal.CommonsDataHolder;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.registry.core.Collection;
+import org.wso2.carbon.registry.core.Resource;
 import org.wso2.carbon.registry.core.exceptions.RegistryException;
 import org.wso2.carbon.registry.core.service.RegistryService;
 import org.wso2.carbon.registry.core.session.UserRegistry;
 import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class wraps Registry API for the Qpid component
@@ -50,6 +58,36 @@ public class RegistryClient {
     private static final String CREATED_FROM_AMQP = "amqp";
     private static final String USER_COUNT = "userCount";
 
+    /**
+     * Locks serializing user count updates of a queue, striped by tenant and queue ID
+     */
+    private static final Object[] QUEUE_LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < QUEUE_LOCKS.length; i++) {
+            QUEUE_LOCKS[i] = new Object();
+        }
+    }
+
+    /**
+     * Whether a reconciler repairs queue entries that drift from the broker
+     */
+    private static volatile boolean queueReconcilerRunning = false;
+
+    public static boolean isQueueReconcilerRunning() {
+        return queueReconcilerRunning;
+    }
+
+    /**
+     * Set whether a reconciler repairs queue entries that drift from the broker. While it runs, failing to
+     * write a queue entry while creating or deleting the queue need not fail the broker operation.
+     *
+     * @param running true if a reconciler is running
+     */
+    public static void setQueueReconcilerRunning(boolean running) {
+        queueReconcilerRunning = running;
+    }
+
     /**
      * Create an entry for a queue in the Registry
      *
@@ -62,41 +100,19 @@ public class RegistryClient {
         try {
 
             RegistryService registryService = CommonsDataHolder.getInstance().getRegistryService();
-            UserRegistry registry = registryService.getGovernanceSystemRegistry(
+            UserRegistry registry = RegistryMetadataCache.getInstance().getGovernanceSystemRegistry(registryService,
                     PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId() <= 0 ?
                             MultitenantConstants.SUPER_TENANT_ID :
                             PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId()
             );
 
-            // Set queue properties
-            Collection queue;
             String queueID = CommonsUtil.getQueueID(queueName);
 
-            if (!registry.resourceExists(queueID)) { // Create queue
-                queue = registry.newCollection();
-
-                queue.setProperty(OWNER, owner);
-                queue.setProperty(NAME, queueName);
-                queue.setProperty(CREATED_TIME, ConverterUtil.convertToString(
-                        Calendar.getInstance()));
-                queue.setProperty(UPDATED_TIME, ConverterUtil.convertToString(
-                        Calendar.getInstance()));
-                queue.setProperty(CREATED_FROM, CREATED_FROM_AMQP);
-                queue.setProperty(USER_COUNT, "1");
-            } else { // Share queue
-                queue = (Collection) registry.get(queueID);
-
-                queue.setProperty(UPDATED_TIME, ConverterUtil.convertToString(
-                        Calendar.getInstance()));
-
-                String userCount = queue.getProperty(USER_COUNT);
-                if (null != userCount) {
-                    int count = Integer.parseInt(userCount);
-                    queue.setProperty(USER_COUNT, Integer.toString(++count));
-                }
+            if (RegistryMutationQueue.getInstance().isEnabled()) {
+                RegistryMutationQueue.getInstance().addQueueMutation(registry, queueID, queueName, owner, 1);
+            } else {
+                applyQueueMutation(registry, queueID, queueName, owner, 1);
             }
-
-            registry.put(queueID, queue);
         } catch (RegistryException e) {
             throw new RegistryClientException(e);
         }
@@ -113,29 +129,19 @@ public class RegistryClient {
         try {
             RegistryService registryService = CommonsDataHolder.getInstance().getRegistryService();
             if (registryService != null) {
-                UserRegistry registry = registryService.getGovernanceSystemRegistry();
+                UserRegistry registry = RegistryMetadataCache.getInstance().getGovernanceSystemRegistry(
+                        registryService, PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId() <= 0 ?
+                                MultitenantConstants.SUPER_TENANT_ID :
+                                PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantId()
+                );
 
                 // Delete queue
                 String queueID = CommonsUtil.getQueueID(queueName);
 
-                if (registry.resourceExists(queueID)) {
-                    String createdFrom = registry.get(queueID).getProperty(CREATED_FROM);
-
-                    if ((null != createdFrom) && (CREATED_FROM_AMQP.equals(createdFrom))) {
-                        Collection queue = (Collection) registry.get(queueID);
-
-                        String userCount = queue.getProperty(USER_COUNT);
-                        if (null != userCount) {
-                            int count = Integer.parseInt(userCount);
-
-                            if (count > 1) {
-                                queue.setProperty(USER_COUNT, Integer.toString(--count));
-                                registry.put(queueID, queue);
-                            } else {
-                                registry.delete(queueID);
-                            }
-                        }
-                    }
+                if (RegistryMutationQueue.getInstance().isEnabled()) {
+                    RegistryMutationQueue.getInstance().addQueueMutation(registry, queueID, queueName, null, -1);
+                } else {
+                    applyQueueMutation(registry, queueID, queueName, null, -1);
                 }
             }
 
@@ -144,6 +150,167 @@ public class RegistryClient {
         }
     }
 
+    /**
+     * Delete the entry of a queue from the Registry of the tenant in the carbon context, regardless of its user
+     * count. This is used to remove entries of queues that no longer exist in the broker.
+     *
+     * @param queueID Resource ID of the queue
+     * @throws RegistryClientException
+     */
+    public static void deleteQueueEntry(String queueID)
+            throws RegistryClientException {
+        try {
+            RegistryService registryService = CommonsDataHolder.getInstance().getRegistryService();
+            UserRegistry registry = RegistryMetadataCache.getInstance().getGovernanceSystemRegistry(registryService,
+                    CarbonContext.getThreadLocalCarbonContext().getTenantId() <= 0 ?
+                            MultitenantConstants.SUPER_TENANT_ID :
+                            CarbonContext.getThreadLocalCarbonContext().getTenantId()
+            );
+
+            synchronized (getQueueLock(registry.getTenantId(), queueID)) {
+                if (registry.resourceExists(queueID)) {
+                    registry.delete(queueID);
+                    MetadataIndex.remove(registry, queueID);
+                    invalidateListings(registry, queueID);
+                }
+            }
+        } catch (RegistryException e) {
+            throw new RegistryClientException(e);
+        }
+    }
+
+    /**
+     * Change the user count of a queue in the Registry. A queue created through AMQP is deleted once its user
+     * count drops to zero, and a queue that does not exist is created if the count is increased.
+     *
+     * @param registry  Registry the queue is kept in
+     * @param queueID   Resource ID of the queue
+     * @param queueName Name of the queue
+     * @param owner     Who creates the queue
+     * @param delta     Change of the user count
+     * @throws RegistryException
+     */
+    static void applyQueueMutation(UserRegistry registry, String queueID, String queueName, String owner,
+                                   int delta) throws RegistryException {
+        // Consumers of other queues are not blocked while the user count of a queue is read and written back
+        synchronized (getQueueLock(registry.getTenantId(), queueID)) {
+            updateUserCount(registry, queueID, queueName, owner, delta);
+        }
+    }
+
+    private static Object getQueueLock(int tenantId, String queueID) {
+        int hash = 31 * tenantId + queueID.hashCode();
+        hash ^= (hash >>> 16);
+        return QUEUE_LOCKS[(hash & Integer.MAX_VALUE) % QUEUE_LOCKS.length];
+    }
+
+    private static void updateUserCount(UserRegistry registry, String queueID, String queueName, String owner,
+                                        int delta) throws RegistryException {
+        if (!registry.resourceExists(queueID)) {
+            if (delta > 0) { // Create queue
+                Collection queue = registry.newCollection();
+
+                queue.setProperty(OWNER, owner);
+                queue.setProperty(NAME, queueName);
+                queue.setProperty(CREATED_TIME, ConverterUtil.convertToString(
+                        Calendar.getInstance()));
+                queue.setProperty(UPDATED_TIME, ConverterUtil.convertToString(
+                        Calendar.getInstance()));
+                queue.setProperty(CREATED_FROM, CREATED_FROM_AMQP);
+                queue.setProperty(USER_COUNT, Integer.toString(delta));
+
+                registry.put(queueID, queue);
+                MetadataIndex.put(registry, queueID, queueName, owner, queue.getProperty(CREATED_TIME));
+                invalidateListings(registry, queueID);
+            }
+            return;
+        }
+
+        Collection queue = (Collection) registry.get(queueID);
+        String userCount = queue.getProperty(USER_COUNT);
+
+        if (delta > 0) { // Share queue
+            queue.setProperty(UPDATED_TIME, ConverterUtil.convertToString(
+                    Calendar.getInstance()));
+
+            if (null != userCount) {
+                int count = Integer.parseInt(userCount);
+                queue.setProperty(USER_COUNT, Integer.toString(count + delta));
+            }
+
+            registry.put(queueID, queue);
+        } else if (delta < 0) { // Release queue
+            String createdFrom = queue.getProperty(CREATED_FROM);
+
+            if ((null != createdFrom) && (CREATED_FROM_AMQP.equals(createdFrom)) && (null != userCount)) {
+                int count = Integer.parseInt(userCount) + delta;
+
+                if (count > 0) {
+                    queue.setProperty(USER_COUNT, Integer.toString(count));
+                    registry.put(queueID, queue);
+                } else {
+                    registry.delete(queueID);
+                    MetadataIndex.remove(registry, queueID);
+                    invalidateListings(registry, queueID);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create or update a subscription in the Registry
+     *
+     * @param registry         Registry the subscription is kept in
+     * @param subscriptionID   Resource ID of the subscription
+     * @param subscriptionName Queue name used for the subscription
+     * @param owner            Who creates the subscription
+     * @param createdTime      Time the subscription is created
+     * @throws RegistryException
+     */
+    static void applySubscriptionCreation(UserRegistry registry, String subscriptionID, String subscriptionName,
+                                          String owner, String createdTime) throws RegistryException {
+        Collection subscription;
+        if (!registry.resourceExists(subscriptionID)) {
+            subscription = registry.newCollection();
+        } else {
+            subscription = (Collection) registry.get(subscriptionID);
+        }
+
+        subscription.setProperty(OWNER, owner);
+        subscription.setProperty(NAME, subscriptionName);
+        subscription.setProperty(CREATED_TIME, createdTime);
+
+        registry.put(subscriptionID, subscription);
+        MetadataIndex.put(registry, subscriptionID, subscriptionName, owner, createdTime);
+        invalidateListings(registry, subscriptionID);
+    }
+
+    /**
+     * Delete a subscription from the Registry if it exists
+     *
+     * @param registry       Registry the subscription is kept in
+     * @param subscriptionID Resource ID of the subscription
+     * @throws RegistryException
+     */
+    static void applySubscriptionDeletion(UserRegistry registry, String subscriptionID) throws RegistryException {
+        if (registry.resourceExists(subscriptionID)) {
+            registry.delete(subscriptionID);
+            MetadataIndex.remove(registry, subscriptionID);
+            invalidateListings(registry, subscriptionID);
+        }
+    }
+
+    /**
+     * Drop cached listings of the collection a queue/subscription belongs to
+     *
+     * @param registry   Registry the queue/subscription is kept in
+     * @param resourceID Resource ID of the queue/subscription
+     */
+    private static void invalidateListings(UserRegistry registry, String resourceID) {
+        RegistryMetadataCache.getInstance().invalidate(
+                registry.getTenantId(), resourceID.substring(0, resourceID.lastIndexOf('/')));
+    }
+
     /**
      * Get queues saved in the Registry
      *
@@ -152,11 +319,24 @@ public class RegistryClient {
      */
     public static QueueDetails[] getQueues()
             throws RegistryClientException {
+        return getQueues(0, -1);
+    }
+
+    /**
+     * Get a page of the queues saved in the Registry
+     *
+     * @param offset Index of the first queue
+     * @param limit  Maximum number of queues returned, or a negative value to return all queues after the offset
+     * @return Array of queues
+     * @throws RegistryClientException
+     */
+    public static QueueDetails[] getQueues(int offset, int limit)
+            throws RegistryClientException {
         try {
             QueueDetails[] queueDetailsArray = new QueueDetails[0];
 
             RegistryService registryService = CommonsDataHolder.getInstance().getRegistryService();
-            UserRegistry registry = registryService.getGovernanceSystemRegistry(
+            UserRegistry registry = RegistryMetadataCache.getInstance().getGovernanceSystemRegistry(registryService,
                     CarbonContext.getThreadLocalCarbonContext().getTenantId() <= 0 ?
                             MultitenantConstants.SUPER_TENANT_ID :
                             CarbonContext.getThreadLocalCarbonContext().getTenantId()
@@ -165,17 +345,15 @@ public class RegistryClient {
             // Get queues
             String queuesID = CommonsUtil.getQueuesID();
             if (registry.resourceExists(queuesID)) {
-                Collection queueCollection = (Collection) registry.get(queuesID);
-                queueDetailsArray = new QueueDetails[queueCollection.getChildCount()];
+                List<String[]> projections = getChildProjections(registry, queuesID, offset, limit);
+                queueDetailsArray = new QueueDetails[projections.size()];
 
                 int index = 0;
-                for (String queueId : queueCollection.getChildren()) {
-                    Collection queue = (Collection) registry.get(queueId);
-
+                for (String[] projection : projections) {
                     QueueDetails queueDetails = new QueueDetails();
-                    queueDetails.setName(queue.getProperty(NAME));
-                    queueDetails.setOwner(queue.getProperty(OWNER));
-                    queueDetails.setCreatedTime(queue.getProperty(CREATED_TIME));
+                    queueDetails.setName(projection[0]);
+                    queueDetails.setOwner(projection[1]);
+                    queueDetails.setCreatedTime(projection[2]);
 
                     queueDetailsArray[index++] = queueDetails;
                 }
@@ -202,28 +380,23 @@ public class RegistryClient {
 
 
             RegistryService registryService = CommonsDataHolder.getInstance().getRegistryService();
-            UserRegistry registry = registryService.getGovernanceSystemRegistry(
+            UserRegistry registry = RegistryMetadataCache.getInstance().getGovernanceSystemRegistry(registryService,
                     CarbonContext.getThreadLocalCarbonContext().getTenantId() <= 0 ?
                             MultitenantConstants.SUPER_TENANT_ID :
                             CarbonContext.getThreadLocalCarbonContext().getTenantId()
             );
 
             // Add new subscription and set properties
-            Collection subscription;
             String tenantBasedTopicName = getTenantBasedTopicName(topic);
             String subscriptionID = CommonsUtil.getSubscriptionID(tenantBasedTopicName, subscriptionName);
+            String createdTime = ConverterUtil.convertToString(new Date());
 
-            if (!registry.resourceExists(subscriptionID)) {
-                subscription = registry.newCollection();
+            if (RegistryMutationQueue.getInstance().isEnabled()) {
+                RegistryMutationQueue.getInstance().addSubscriptionMutation(
+                        registry, subscriptionID, subscriptionName, owner, createdTime, true);
             } else {
-                subscription = (Collection) registry.get(subscriptionID);
+                applySubscriptionCreation(registry, subscriptionID, subscriptionName, owner, createdTime);
             }
-
-            subscription.setProperty(OWNER, owner);
-            subscription.setProperty(NAME, subscriptionName);
-            subscription.setProperty(CREATED_TIME, ConverterUtil.convertToString(new Date()));
-
-            registry.put(subscriptionID, subscription);
         } catch (RegistryException e) {
             throw new RegistryClientException(e);
         }
@@ -255,7 +428,7 @@ public class RegistryClient {
         try {
             RegistryService registryService = CommonsDataHolder.getInstance().getRegistryService();
             if (registryService != null) {
-                UserRegistry registry = registryService.getGovernanceSystemRegistry(
+                UserRegistry registry = RegistryMetadataCache.getInstance().getGovernanceSystemRegistry(registryService,
                         CarbonContext.getThreadLocalCarbonContext().getTenantId() <= 0 ?
                                 MultitenantConstants.SUPER_TENANT_ID :
                                 CarbonContext.getThreadLocalCarbonContext().getTenantId()
@@ -263,8 +436,11 @@ public class RegistryClient {
 
                 // Delete subscription
                 String subscriptionID = CommonsUtil.getSubscriptionID(topic, subscriptionName);
-                if (registry.resourceExists(subscriptionID)) {
-                    registry.delete(subscriptionID);
+                if (RegistryMutationQueue.getInstance().isEnabled()) {
+                    RegistryMutationQueue.getInstance().addSubscriptionMutation(
+                            registry, subscriptionID, subscriptionName, null, null, false);
+                } else {
+                    applySubscriptionDeletion(registry, subscriptionID);
                 }
             }
         } catch (RegistryException e) {
@@ -281,11 +457,26 @@ public class RegistryClient {
      */
     public static SubscriptionDetails[] getSubscriptions(String topic)
             throws RegistryClientException {
+        return getSubscriptions(topic, 0, -1);
+    }
+
+    /**
+     * Get a page of the subscriptions saved in the Registry
+     *
+     * @param topic  Name of the topic
+     * @param offset Index of the first subscription
+     * @param limit  Maximum number of subscriptions returned, or a negative value to return all subscriptions
+     *               after the offset
+     * @return Array of subscriptions
+     * @throws RegistryClientException
+     */
+    public static SubscriptionDetails[] getSubscriptions(String topic, int offset, int limit)
+            throws RegistryClientException {
         try {
             SubscriptionDetails[] subscriptionDetailsArray = new SubscriptionDetails[0];
 
             RegistryService registryService = CommonsDataHolder.getInstance().getRegistryService();
-            UserRegistry registry = registryService.getGovernanceSystemRegistry(
+            UserRegistry registry = RegistryMetadataCache.getInstance().getGovernanceSystemRegistry(registryService,
                     CarbonContext.getThreadLocalCarbonContext().getTenantId() <= 0 ?
                             MultitenantConstants.SUPER_TENANT_ID :
                             CarbonContext.getThreadLocalCarbonContext().getTenantId()
@@ -294,18 +485,15 @@ public class RegistryClient {
             // Get subscriptions
             String subscriptionsID = CommonsUtil.getSubscriptonsID(topic);
             if (registry.resourceExists(subscriptionsID)) {
-                Collection subscriptionCollection = (Collection) registry.get(subscriptionsID);
-                subscriptionDetailsArray =
-                        new SubscriptionDetails[subscriptionCollection.getChildCount()];
+                List<String[]> projections = getChildProjections(registry, subscriptionsID, offset, limit);
+                subscriptionDetailsArray = new SubscriptionDetails[projections.size()];
 
                 int index = 0;
-                for (String subs : subscriptionCollection.getChildren()) {
-                    Collection subscription = (Collection) registry.get(subs);
-
+                for (String[] projection : projections) {
                     SubscriptionDetails subscriptionDetails = new SubscriptionDetails();
-                    subscriptionDetails.setName(subscription.getProperty(NAME));
-                    subscriptionDetails.setOwner(subscription.getProperty(OWNER));
-                    subscriptionDetails.setCreatedTime(subscription.getProperty(CREATED_TIME));
+                    subscriptionDetails.setName(projection[0]);
+                    subscriptionDetails.setOwner(projection[1]);
+                    subscriptionDetails.setCreatedTime(projection[2]);
 
                     subscriptionDetailsArray[index++] = subscriptionDetails;
                 }
@@ -316,4 +504,93 @@ public class RegistryClient {
             throw new RegistryClientException(e);
         }
     }
+
+    /**
+     * Iterate over the subscriptions saved in the Registry, reading them page by page so that only one page is
+     * held in memory at a time. The iterator reads the Registry of the tenant in the carbon context of the
+     * thread iterating, and subscriptions added or removed while iterating may be skipped or returned twice.
+     *
+     * @param topic    Name of the topic
+     * @param pageSize Number of subscriptions read from the Registry at a time
+     * @return Iterator over the subscriptions
+     */
+    public static Iterator<SubscriptionDetails> getSubscriptionIterator(String topic, int pageSize) {
+        return new SubscriptionIterator(topic, pageSize);
+    }
+
+    /**
+     * Get name, owner and created time of the children of a collection. These are read in bulk from the
+     * metadata index, and only children created before the index existed are read one by one, after which they
+     * are added to the index.
+     *
+     * @param registry     Registry the collection is kept in
+     * @param collectionID Resource ID of the collection
+     * @param offset       Index of the first child
+     * @param limit        Maximum number of children, or a negative value for all children after the offset
+     * @return Name, owner and created time of each child, in the order of the children
+     * @throws RegistryException
+     */
+    private static List<String[]> getChildProjections(UserRegistry registry, String collectionID, int offset,
+                                                      int limit) throws RegistryException {
+        int tenantId = registry.getTenantId();
+        List<String[]> projections = RegistryMetadataCache.getInstance().getListing(
+                tenantId, collectionID, offset, limit);
+        if (null != projections) {
+            return projections;
+        }
+        long generation = RegistryMetadataCache.getInstance().getGeneration(tenantId);
+
+        Collection collection;
+        if (limit < 0) {
+            collection = (Collection) registry.get(collectionID);
+        } else {
+            collection = (Collection) registry.get(collectionID, offset, limit);
+        }
+
+        String[] children = collection.getChildren();
+        if (limit < 0 && offset > 0) {
+            children = (offset < children.length) ?
+                    Arrays.copyOfRange(children, offset, children.length) : new String[0];
+        }
+
+        Map<String, String[]> index;
+        if (limit < 0) {
+            index = MetadataIndex.read(registry, collectionID);
+        } else {
+            // Read only the part of the index the page needs
+            Set<String> childNames = new HashSet<String>();
+            for (String childID : children) {
+                childNames.add(MetadataIndex.getChildName(childID));
+            }
+            index = MetadataIndex.read(registry, collectionID, childNames);
+        }
+        projections = new ArrayList<String[]>(children.length);
+
+        for (String childID : children) {
+            String childName = MetadataIndex.getChildName(childID);
+            String[] projection = index.get(childName);
+            if (null == projection) {
+                // Created before the index, read and index it
+                Resource child = registry.get(childID);
+                projection = new String[]{child.getProperty(NAME), child.getProperty(OWNER),
+                        child.getProperty(CREATED_TIME)};
+                try {
+                    MetadataIndex.put(registry, collectionID + "/" + childName,
+                            projection[0], projection[1], projection[2]);
+                } catch (RegistryException e) {
+                    log.warn("Error while adding " + childID + " to the metadata index.", e);
+                }
+            }
+            projections.add(projection);
+        }
+
+        try {
+            MetadataIndex.applyPendingChanges(registry);
+        } catch (RegistryException e) {
+            log.warn("Error while adding the children of " + collectionID + " to the metadata index.", e);
+        }
+
+        RegistryMetadataCache.getInstance().putListing(tenantId, collectionID, offset, limit, projections, generation);
+        return projections;
+    }
 }
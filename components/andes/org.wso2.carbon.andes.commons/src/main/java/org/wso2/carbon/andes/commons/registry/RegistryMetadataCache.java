@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.registry;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.commons.cache.BoundedTimedCache;
+import org.wso2.carbon.registry.core.exceptions.RegistryException;
+import org.wso2.carbon.registry.core.service.RegistryService;
+import org.wso2.carbon.registry.core.session.UserRegistry;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of queue and subscription metadata listed from the governance registry, kept per tenant
+ * and bounded by size with least recently used eviction. Listings of a collection are dropped whenever a queue
+ * or subscription of the collection is written from this node, while changes made by other nodes are picked up
+ * once the cached listing expires. The governance system registry of each tenant is cached as well, so that it
+ * is not looked up on every registry access.
+ */
+public class RegistryMetadataCache implements RegistryMetadataCacheMBean {
+
+    /**
+     * System property to enable/disable the cache
+     */
+    public static final String ENABLED_PROPERTY = "andes.registry.metadataCache.enabled";
+
+    /**
+     * System property for the time in seconds a listing is kept
+     */
+    public static final String TIME_TO_LIVE_PROPERTY = "andes.registry.metadataCache.timeToLive";
+
+    /**
+     * System property for the maximum number of collections kept per tenant
+     */
+    public static final String MAX_SIZE_PROPERTY = "andes.registry.metadataCache.maxEntriesPerTenant";
+
+    private static final int DEFAULT_TIME_TO_LIVE = 60;
+    private static final int DEFAULT_MAX_SIZE = 1000;
+    private static final int MAX_PAGES_PER_COLLECTION = 64;
+
+    private static RegistryMetadataCache instance = new RegistryMetadataCache();
+
+    private final boolean enabled;
+    private final long timeToLive;
+    private final int maxSize;
+    private final ConcurrentMap<Integer, BoundedTimedCache<String, CollectionListings>> tenantCaches =
+            new ConcurrentHashMap<Integer, BoundedTimedCache<String, CollectionListings>>();
+    private final ConcurrentMap<Integer, UserRegistry> tenantRegistries =
+            new ConcurrentHashMap<Integer, UserRegistry>();
+
+    /**
+     * Number of local writes per tenant, used to avoid caching a listing read before a write
+     */
+    private final ConcurrentMap<Integer, AtomicLong> tenantGenerations = new ConcurrentHashMap<Integer, AtomicLong>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private RegistryMetadataCache() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, true);
+        timeToLive = CommonsUtil.getIntProperty(TIME_TO_LIVE_PROPERTY, DEFAULT_TIME_TO_LIVE) * 1000L;
+        maxSize = CommonsUtil.getIntProperty(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+    }
+
+    public static RegistryMetadataCache getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the governance system registry of a tenant
+     *
+     * @param registryService Registry service
+     * @param tenantId        Tenant ID
+     * @return Governance system registry
+     * @throws RegistryException
+     */
+    public UserRegistry getGovernanceSystemRegistry(RegistryService registryService, int tenantId)
+            throws RegistryException {
+        if (!enabled) {
+            return registryService.getGovernanceSystemRegistry(tenantId);
+        }
+
+        UserRegistry registry = tenantRegistries.get(tenantId);
+        if (null == registry) {
+            registry = registryService.getGovernanceSystemRegistry(tenantId);
+            tenantRegistries.put(tenantId, registry);
+        }
+        return registry;
+    }
+
+    /**
+     * Get a cached listing of a collection
+     *
+     * @param tenantId     Tenant ID
+     * @param collectionID Resource ID of the collection
+     * @param offset       Index of the first child in the listing
+     * @param limit        Maximum number of children in the listing
+     * @return Name, owner and created time of the listed children, or null if the listing is not cached
+     */
+    List<String[]> getListing(int tenantId, String collectionID, int offset, int limit) {
+        if (!enabled) {
+            return null;
+        }
+
+        BoundedTimedCache<String, CollectionListings> tenantCache = tenantCaches.get(tenantId);
+        CollectionListings listings = (null != tenantCache) ? tenantCache.get(collectionID) : null;
+        List<String[]> listing = (null != listings) ? listings.get(offset, limit) : null;
+
+        if (null != listing) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return listing;
+    }
+
+    /**
+     * Get the generation of the metadata of a tenant, which has to be taken before reading a listing from the
+     * registry and passed when caching the listing
+     *
+     * @param tenantId Tenant ID
+     * @return Generation of the metadata
+     */
+    long getGeneration(int tenantId) {
+        return getGenerationCounter(tenantId).get();
+    }
+
+    /**
+     * Cache a listing of a collection, unless metadata of the tenant was written after the listing was read
+     *
+     * @param tenantId     Tenant ID
+     * @param collectionID Resource ID of the collection
+     * @param offset       Index of the first child in the listing
+     * @param limit        Maximum number of children in the listing
+     * @param listing      Name, owner and created time of the listed children
+     * @param generation   Generation of the metadata taken before the listing was read
+     */
+    void putListing(int tenantId, String collectionID, int offset, int limit, List<String[]> listing,
+                    long generation) {
+        if (!enabled) {
+            return;
+        }
+
+        BoundedTimedCache<String, CollectionListings> tenantCache = tenantCaches.get(tenantId);
+        if (null == tenantCache) {
+            tenantCache = new BoundedTimedCache<String, CollectionListings>(maxSize, timeToLive);
+            BoundedTimedCache<String, CollectionListings> existingCache =
+                    tenantCaches.putIfAbsent(tenantId, tenantCache);
+            if (null != existingCache) {
+                tenantCache = existingCache;
+            }
+        }
+
+        synchronized (tenantCache) {
+            if (generation != getGeneration(tenantId)) {
+                return;
+            }
+
+            // Listings of a collection expire together, so a new page does not outlive the listings cached before
+            CollectionListings listings = tenantCache.get(collectionID);
+            if (null == listings) {
+                listings = new CollectionListings();
+                tenantCache.put(collectionID, listings);
+            }
+            listings.put(offset, limit, listing);
+        }
+    }
+
+    /**
+     * Drop the cached listings of a collection. This is called whenever a child of the collection is written.
+     *
+     * @param tenantId     Tenant ID
+     * @param collectionID Resource ID of the collection
+     */
+    void invalidate(int tenantId, String collectionID) {
+        BoundedTimedCache<String, CollectionListings> tenantCache = tenantCaches.get(tenantId);
+        if (null != tenantCache) {
+            synchronized (tenantCache) {
+                getGenerationCounter(tenantId).incrementAndGet();
+                tenantCache.remove(collectionID);
+            }
+        } else {
+            getGenerationCounter(tenantId).incrementAndGet();
+        }
+    }
+
+    /**
+     * Drop cached metadata and the registry of a tenant
+     *
+     * @param tenantId Tenant ID
+     */
+    public void invalidateTenant(int tenantId) {
+        tenantCaches.remove(tenantId);
+        tenantRegistries.remove(tenantId);
+    }
+
+    public void invalidateAll() {
+        tenantCaches.clear();
+        tenantRegistries.clear();
+    }
+
+    private AtomicLong getGenerationCounter(int tenantId) {
+        AtomicLong generation = tenantGenerations.get(tenantId);
+        if (null == generation) {
+            generation = new AtomicLong();
+            AtomicLong existingGeneration = tenantGenerations.putIfAbsent(tenantId, generation);
+            if (null != existingGeneration) {
+                generation = existingGeneration;
+            }
+        }
+        return generation;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long lookups = hits + missCount.get();
+        return (lookups > 0) ? ((double) hits / lookups) : 0;
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (BoundedTimedCache<String, CollectionListings> tenantCache : tenantCaches.values()) {
+            size += tenantCache.size();
+        }
+        return size;
+    }
+
+    /**
+     * Listings of a collection by page
+     */
+    private static class CollectionListings {
+
+        private final Map<String, List<String[]>> pages = new HashMap<String, List<String[]>>();
+
+        private synchronized List<String[]> get(int offset, int limit) {
+            return pages.get(offset + ":" + limit);
+        }
+
+        private synchronized void put(int offset, int limit, List<String[]> listing) {
+            if (pages.size() >= MAX_PAGES_PER_COLLECTION) {
+                pages.clear();
+            }
+            pages.put(offset + ":" + limit, listing);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.registry;
+
+/**
+ * Management interface of the registry metadata cache
+ */
+public interface RegistryMetadataCacheMBean {
+
+    /**
+     * Object name the metadata cache is registered with in the platform MBean server
+     */
+    String OBJECT_NAME = "org.wso2.carbon.andes:type=Registry,name=MetadataCache";
+
+    boolean isEnabled();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * Get the ratio of lookups served from the cache
+     *
+     * @return Hit ratio between 0 and 1
+     */
+    double getHitRatio();
+
+    int getSize();
+
+    /**
+     * Drop all cached metadata
+     */
+    void invalidateAll();
+}
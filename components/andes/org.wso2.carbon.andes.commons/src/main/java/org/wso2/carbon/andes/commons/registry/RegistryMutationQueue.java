@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.registry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.registry.core.exceptions.RegistryException;
+import org.wso2.carbon.registry.core.session.UserRegistry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind queue for queue and subscription metadata written by the RegistryClient. Instead of going to
+ * the registry while the broker waits, mutations are queued and applied on a background thread at the flush
+ * interval, in one registry transaction per tenant. Pending mutations of the same resource are coalesced: user
+ * count changes of a queue are summed up in an in-memory counter without locking, and only the last of the
+ * creations/deletions of a subscription is applied. The metadata index changes caused by the mutations are applied
+ * after them, rewriting each affected index bucket once.
+ * <p/>
+ * Mutations are lost if the server stops abruptly within the flush interval, hence the interval bounds how
+ * long registry metadata can lag behind the broker. Pending mutations are flushed when the bundle stops.
+ */
+public class RegistryMutationQueue {
+
+    private static final Log log = LogFactory.getLog(RegistryMutationQueue.class);
+
+    /**
+     * System property to enable/disable write-behind of registry mutations
+     */
+    public static final String ENABLED_PROPERTY = "andes.registry.writeBehind.enabled";
+
+    /**
+     * System property for the interval in milliseconds pending mutations are flushed to the registry
+     */
+    public static final String FLUSH_INTERVAL_PROPERTY = "andes.registry.writeBehind.flushInterval";
+
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000;
+    private static final String KEY_SEPARATOR = ":";
+
+    private static RegistryMutationQueue instance = new RegistryMutationQueue();
+
+    private final boolean enabled;
+    private final long flushInterval;
+
+    /**
+     * Pending mutations by tenant and resource ID
+     */
+    private final ConcurrentMap<String, RegistryMutation> pendingMutations =
+            new ConcurrentHashMap<String, RegistryMutation>();
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService scheduler;
+
+    private RegistryMutationQueue() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, false);
+        flushInterval = CommonsUtil.getLongProperty(FLUSH_INTERVAL_PROPERTY, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public static RegistryMutationQueue getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start flushing pending mutations periodically
+     */
+    public synchronized void start() {
+        if (!enabled || null != scheduler) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AndesRegistryWriter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flush();
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop flushing periodically and flush what is pending
+     */
+    public synchronized void shutdown() {
+        if (null != scheduler) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(flushInterval, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        flush();
+    }
+
+    /**
+     * Queue a change of the user count of a queue. A queue is created with the change as the user count if it
+     * does not exist.
+     *
+     * @param registry  Registry the queue is kept in
+     * @param queueID   Resource ID of the queue
+     * @param queueName Name of the queue
+     * @param owner     User who created the queue
+     * @param delta     Change of the user count
+     */
+    public void addQueueMutation(UserRegistry registry, String queueID, String queueName, String owner, int delta) {
+        String key = getKey(registry, queueID);
+        while (true) {
+            RegistryMutation pendingMutation = pendingMutations.get(key);
+            if (null == pendingMutation) {
+                if (null == pendingMutations.putIfAbsent(
+                        key, new QueueMutation(registry, queueID, queueName, owner, delta))) {
+                    return;
+                }
+            } else if ((pendingMutation instanceof QueueMutation)
+                    && ((QueueMutation) pendingMutation).add(delta, owner)) {
+                return;
+            } else {
+                // Taken by a flush in the meantime, queue a new mutation
+                pendingMutations.remove(key, pendingMutation);
+            }
+        }
+    }
+
+    /**
+     * Queue creation or deletion of a subscription. Replaces a pending creation/deletion of the subscription.
+     *
+     * @param registry         Registry the subscription is kept in
+     * @param subscriptionID   Resource ID of the subscription
+     * @param subscriptionName Name of the subscription
+     * @param owner            User who created the subscription
+     * @param createdTime      Time the subscription was created
+     * @param create           true to create, false to delete
+     */
+    public void addSubscriptionMutation(UserRegistry registry, String subscriptionID, String subscriptionName,
+                                        String owner, String createdTime, boolean create) {
+        // Only the last creation/deletion of the subscription is applied
+        pendingMutations.put(getKey(registry, subscriptionID), new SubscriptionMutation(
+                registry, subscriptionID, subscriptionName, owner, createdTime, create));
+    }
+
+    /**
+     * Apply pending mutations to the registry
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<RegistryMutation> mutations = new ArrayList<RegistryMutation>();
+            for (String key : pendingMutations.keySet()) {
+                RegistryMutation mutation = pendingMutations.remove(key);
+                if ((null != mutation) && mutation.take()) {
+                    mutations.add(mutation);
+                }
+            }
+
+            if (mutations.isEmpty()) {
+                return;
+            }
+
+            // Group mutations by tenant, so that each tenant's mutations are committed together
+            Map<Integer, List<RegistryMutation>> tenantMutations = new LinkedHashMap<Integer, List<RegistryMutation>>();
+            for (RegistryMutation mutation : mutations) {
+                int tenantId = mutation.registry.getTenantId();
+                List<RegistryMutation> mutationsOfTenant = tenantMutations.get(tenantId);
+                if (null == mutationsOfTenant) {
+                    mutationsOfTenant = new ArrayList<RegistryMutation>();
+                    tenantMutations.put(tenantId, mutationsOfTenant);
+                }
+                mutationsOfTenant.add(mutation);
+            }
+
+            for (List<RegistryMutation> mutationsOfTenant : tenantMutations.values()) {
+                applyMutations(mutationsOfTenant);
+            }
+        }
+    }
+
+    private void applyMutations(List<RegistryMutation> mutations) {
+        UserRegistry registry = mutations.get(0).registry;
+        try {
+            registry.beginTransaction();
+            for (RegistryMutation mutation : mutations) {
+                mutation.apply();
+            }
+            registry.commitTransaction();
+            applyIndexChanges(registry);
+            return;
+        } catch (RegistryException e) {
+            log.warn("Failed to write " + mutations.size() + " queue/subscription changes to the registry " +
+                    "together. Writing them one by one.", e);
+            try {
+                registry.rollbackTransaction();
+            } catch (RegistryException rollbackException) {
+                log.error("Error while rolling back registry transaction.", rollbackException);
+            }
+        }
+
+        // Apply one by one so that a failing mutation does not drop the others
+        for (RegistryMutation mutation : mutations) {
+            try {
+                mutation.apply();
+            } catch (RegistryException e) {
+                log.error("Error while writing " + mutation.resourceID + " to the registry.", e);
+            }
+        }
+        applyIndexChanges(registry);
+    }
+
+    /**
+     * Apply the metadata index changes of the applied mutations, so that they are kept off the broker's path
+     */
+    private void applyIndexChanges(UserRegistry registry) {
+        try {
+            MetadataIndex.applyPendingChanges(registry);
+        } catch (RegistryException e) {
+            log.warn("Error while updating the metadata index. Changes are applied on the next flush or listing.",
+                    e);
+        }
+    }
+
+    private static String getKey(UserRegistry registry, String resourceID) {
+        return registry.getTenantId() + KEY_SEPARATOR + resourceID;
+    }
+
+    /**
+     * A pending change of a registry resource
+     */
+    private abstract static class RegistryMutation {
+
+        protected final UserRegistry registry;
+        protected final String resourceID;
+
+        protected RegistryMutation(UserRegistry registry, String resourceID) {
+            this.registry = registry;
+            this.resourceID = resourceID;
+        }
+
+        /**
+         * Take the mutation for applying, once it is removed from the pending mutations
+         *
+         * @return false if there is nothing to apply
+         */
+        protected boolean take() {
+            return true;
+        }
+
+        protected abstract void apply() throws RegistryException;
+    }
+
+    /**
+     * Pending change of the user count of a queue
+     */
+    private static class QueueMutation extends RegistryMutation {
+
+        /**
+         * Value of the pending delta once the mutation is taken by a flush
+         */
+        private static final int TAKEN = Integer.MIN_VALUE;
+
+        private final String queueName;
+        private volatile String owner;
+        private final AtomicInteger pendingDelta;
+        private int delta;
+
+        private QueueMutation(UserRegistry registry, String queueID, String queueName, String owner, int delta) {
+            super(registry, queueID);
+            this.queueName = queueName;
+            this.owner = owner;
+            this.pendingDelta = new AtomicInteger(delta);
+        }
+
+        /**
+         * Add to the user count change unless the mutation is already taken by a flush. The latest known owner is
+         * kept, since deletions carry no owner.
+         *
+         * @param change   Change of the user count
+         * @param newOwner User who created the queue, or null if not known
+         * @return true if added, false if the mutation is taken
+         */
+        private boolean add(int change, String newOwner) {
+            if (null != newOwner) {
+                owner = newOwner;
+            }
+            while (true) {
+                int current = pendingDelta.get();
+                if (TAKEN == current) {
+                    return false;
+                }
+                if (pendingDelta.compareAndSet(current, current + change)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        protected boolean take() {
+            delta = pendingDelta.getAndSet(TAKEN);
+            // Creations cancelled out by deletions
+            return 0 != delta;
+        }
+
+        @Override
+        protected void apply() throws RegistryException {
+            RegistryClient.applyQueueMutation(registry, resourceID, queueName, owner, delta);
+        }
+    }
+
+    /**
+     * Pending creation or deletion of a subscription
+     */
+    private static class SubscriptionMutation extends RegistryMutation {
+
+        private final String subscriptionName;
+        private final String owner;
+        private final String createdTime;
+        private final boolean create;
+
+        private SubscriptionMutation(UserRegistry registry, String subscriptionID, String subscriptionName,
+                                     String owner, String createdTime, boolean create) {
+            super(registry, subscriptionID);
+            this.subscriptionName = subscriptionName;
+            this.owner = owner;
+            this.createdTime = createdTime;
+            this.create = create;
+        }
+
+        @Override
+        protected void apply() throws RegistryException {
+            if (create) {
+                RegistryClient.applySubscriptionCreation(
+                        registry, resourceID, subscriptionName, owner, createdTime);
+            } else {
+                RegistryClient.applySubscriptionDeletion(registry, resourceID);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.commons.registry;
+
+import org.wso2.carbon.andes.commons.SubscriptionDetails;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the subscriptions of a topic saved in the Registry, one page at a time
+ */
+class SubscriptionIterator implements Iterator<SubscriptionDetails> {
+
+    private final String topic;
+    private final int pageSize;
+
+    private SubscriptionDetails[] page = new SubscriptionDetails[0];
+    private int pageOffset = 0;
+    private int indexInPage = 0;
+    private boolean lastPage = false;
+
+    SubscriptionIterator(String topic, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size should be positive, but was " + pageSize);
+        }
+        this.topic = topic;
+        this.pageSize = pageSize;
+    }
+
+    public boolean hasNext() {
+        if (indexInPage < page.length) {
+            return true;
+        }
+        if (lastPage) {
+            return false;
+        }
+
+        pageOffset += page.length;
+        indexInPage = 0;
+        try {
+            page = RegistryClient.getSubscriptions(topic, pageOffset, pageSize);
+        } catch (RegistryClientException e) {
+            throw new IllegalStateException("Error while reading subscriptions of " + topic + " from offset " +
+                    pageOffset, e);
+        }
+        lastPage = page.length < pageSize;
+
+        return page.length > 0;
+    }
+
+    public SubscriptionDetails next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page[indexInPage++];
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Subscriptions can not be removed through the iterator");
+    }
+}
@@ -65,10 +65,79 @@ public interface QueueManagerService {
     public void deleteMessagesFromDeadLetterQueue(String[] messageIDs, String deadLetterQueueName) throws
             QueueManagerException;
 
+    /**
+     * Start restoring the messages of a Dead Letter Queue matching a filter in the background, in chunks
+     *
+     * @param deadLetterQueueName Dead Letter Queue name for the respective tenant
+     * @param filter              Messages to restore
+     * @param destination         Destination to restore the messages to, or null to restore them to their
+     *                            original destinations
+     * @param userName            User restoring the messages
+     * @param accessKey           Access key of the user
+     * @return ID of the job to read the progress with
+     * @throws QueueManagerException if a job is running on the Dead Letter Queue already
+     */
+    public String startRestoreFromDeadLetterQueue(String deadLetterQueueName,
+                                                  org.wso2.carbon.andes.core.types.DeadLetterFilter filter,
+                                                  String destination, String userName, String accessKey)
+            throws QueueManagerException;
+
+    /**
+     * Start deleting the messages of a Dead Letter Queue matching a filter in the background, in chunks
+     *
+     * @param deadLetterQueueName Dead Letter Queue name for the respective tenant
+     * @param filter              Messages to delete
+     * @param userName            User deleting the messages
+     * @param accessKey           Access key of the user
+     * @return ID of the job to read the progress with
+     * @throws QueueManagerException if a job is running on the Dead Letter Queue already
+     */
+    public String startDeleteFromDeadLetterQueue(String deadLetterQueueName,
+                                                 org.wso2.carbon.andes.core.types.DeadLetterFilter filter,
+                                                 String userName, String accessKey) throws QueueManagerException;
+
     public void purgeMessagesOfQueue(String queueName) throws QueueManagerException;
 
+    /**
+     * Start deleting all messages of a queue in the background
+     *
+     * @param queueName Name of the queue
+     * @param userName  User purging the queue
+     * @return ID of the job to read the progress with
+     * @throws QueueManagerException if the queue is being purged already
+     */
+    public String startPurgeQueue(String queueName, String userName) throws QueueManagerException;
+
     public long getMessageCountForQueue(String queueName, String msgPattern) throws QueueManagerException;
 
+    /**
+     * Get message counts of a set of queues in one call
+     *
+     * @param queueNames Names of the queues
+     * @return Message counts, in the order of the queue names
+     * @throws QueueManagerException
+     */
+    public long[] getMessageCountsForQueues(String[] queueNames) throws QueueManagerException;
+
+    /**
+     * Get the age of the snapshot message counts are served from. Message counts are sampled in the background
+     * and served from the last sample, hence may be this old.
+     *
+     * @return Age in milliseconds, or -1 if message counts are read from the broker on each request
+     */
+    public long getMessageCountAge();
+
+    /**
+     * Get the enqueue rate, dequeue rate and depth history of a queue
+     *
+     * @param queueName  Name of the queue
+     * @param resolution Resolution of the history in seconds, 1 for the last 10 minutes or 60 for the last 24 hours
+     * @return Rate history of the queue
+     * @throws QueueManagerException if history is not kept, or not kept for the queue
+     */
+    public org.wso2.carbon.andes.core.types.QueueRateHistory getQueueRateHistory(String queueName, int resolution)
+            throws QueueManagerException;
+
     public void updatePermission(String queueName, org.wso2.carbon.andes.core.types.QueueRolePermission[]
             queueRolePermissions)
             throws QueueManagerException;
@@ -82,6 +151,37 @@ public interface QueueManagerService {
                                                                   String accessKey, int startingIndex, int maxMsgCount)
             throws QueueManagerException;
 
+    /**
+     * Browse a queue a page at a time. The browser is kept open between pages for a while, so that a page
+     * continues from where the previous page stopped.
+     *
+     * @param nameOfQueue Name of the queue
+     * @param userName    User browsing
+     * @param accessKey   Access key of the user
+     * @param resumeToken Resume token returned with the previous page, or null to start from the first message
+     * @param maxMsgCount Maximum number of messages in the page
+     * @return Page of messages and the token to browse the next page with
+     * @throws QueueManagerException
+     */
+    public org.wso2.carbon.andes.core.types.QueueBrowsePage browseQueueWithCursor(String nameOfQueue, String userName,
+                                                                                String accessKey, String resumeToken,
+                                                                                int maxMsgCount)
+            throws QueueManagerException;
+
+    /**
+     * Read the whole content of a message in a queue. Browsed messages carry only a preview of their content.
+     *
+     * @param nameOfQueue Name of the queue
+     * @param userName    User reading the message
+     * @param accessKey   Access key of the user
+     * @param messageID   JMS message ID of the message
+     * @return HTML escaped content of the message
+     * @throws QueueManagerException if the message ID is missing, the message is not in the queue or could not be
+     *                               read
+     */
+    public String getMessageContent(String nameOfQueue, String userName, String accessKey, String messageID)
+            throws QueueManagerException;
+
     public long getTotalMessagesInQueue(String queueName) throws QueueManagerException;
 
     public boolean sendMessage(String nameOfQueue, String userName, String accessKey, String jmsType,
@@ -89,4 +189,48 @@ public interface QueueManagerService {
                                String message, int deliveryMode, int priority,
                                long expireTime) throws QueueManagerException;
 
+    /**
+     * Start publishing copies of a text message to a queue in the background, in batches
+     *
+     * @param nameOfQueue      Name of the queue
+     * @param userName         User publishing
+     * @param accessKey        Access key of the user
+     * @param jmsType          JMS type of the messages, or null
+     * @param jmsCorrelationID JMS correlation ID of the messages, or null
+     * @param numberOfMessages Number of messages to publish
+     * @param message          Text of the messages
+     * @param deliveryMode     JMS delivery mode
+     * @param priority         JMS priority
+     * @param expireTime       Time to live in milliseconds, or 0 to never expire
+     * @param batchSize        Number of messages per batch, or 0 for the configured batch size
+     * @param transacted       true to commit each batch in a transaction, false to send without waiting for the
+     *                         broker
+     * @return ID of the job to read the progress with
+     * @throws QueueManagerException
+     */
+    public String startBulkPublish(String nameOfQueue, String userName, String accessKey, String jmsType,
+                                   String jmsCorrelationID, int numberOfMessages, String message, int deliveryMode,
+                                   int priority, long expireTime, int batchSize, boolean transacted)
+            throws QueueManagerException;
+
+    /**
+     * Get the progress of a job running in the background
+     *
+     * @param jobId    ID of the job
+     * @param userName User who started the job
+     * @return Status of the job
+     * @throws QueueManagerException if there is no such job of the user
+     */
+    public org.wso2.carbon.andes.core.types.JobStatus getJobStatus(String jobId, String userName)
+            throws QueueManagerException;
+
+    /**
+     * Cancel a job running in the background. The job stops after the chunk of work in progress.
+     *
+     * @param jobId    ID of the job
+     * @param userName User who started the job
+     * @throws QueueManagerException if there is no such job of the user, or the job can not be cancelled any more
+     */
+    public void cancelJob(String jobId, String userName) throws QueueManagerException;
+
 }
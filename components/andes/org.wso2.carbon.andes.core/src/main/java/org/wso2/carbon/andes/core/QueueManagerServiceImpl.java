@@ -23,10 +23,23 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.andes.server.ClusterResourceHolder;
 import org.wso2.carbon.CarbonConstants;
 import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.commons.cache.AuthorizationCache;
+import org.wso2.carbon.andes.commons.cache.PermissionIndex;
+import org.wso2.carbon.andes.commons.cache.QueueVisibilityIndex;
 import org.wso2.carbon.andes.commons.registry.RegistryClient;
 import org.wso2.carbon.andes.commons.registry.RegistryClientException;
 import org.wso2.carbon.andes.core.internal.ds.QueueManagerServiceValueHolder;
+import org.wso2.carbon.andes.core.internal.job.BulkPublishJob;
+import org.wso2.carbon.andes.core.internal.job.DeadLetterChannelJob;
+import org.wso2.carbon.andes.core.internal.job.PurgeQueueJob;
+import org.wso2.carbon.andes.core.internal.job.QueueManagerJob;
+import org.wso2.carbon.andes.core.internal.job.QueueManagerJobs;
 import org.wso2.carbon.andes.core.internal.registry.QueueManagementBeans;
+import org.wso2.carbon.andes.core.internal.registry.QueueMessageCountSampler;
+import org.wso2.carbon.andes.core.internal.registry.QueueMessageRateHistory;
+import org.wso2.carbon.andes.core.internal.util.JMSConnectionPool;
+import org.wso2.carbon.andes.core.internal.util.MessageContentRenderer;
+import org.wso2.carbon.andes.core.internal.util.QueueBrowseCursors;
 import org.wso2.carbon.andes.core.internal.util.QueueManagementConstants;
 import org.wso2.carbon.andes.core.internal.util.Utils;
 import org.wso2.carbon.andes.core.types.*;
@@ -34,6 +47,7 @@ import org.wso2.carbon.base.ServerConfiguration;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.registry.core.exceptions.RegistryException;
 import org.wso2.carbon.registry.core.session.UserRegistry;
+import org.wso2.carbon.user.api.AuthorizationManager;
 import org.wso2.carbon.user.api.UserRealm;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.api.UserStoreManager;
@@ -42,12 +56,7 @@ import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 
 import javax.jms.*;
 import javax.jms.Message;
-import javax.jms.Queue;
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
-import javax.xml.stream.XMLStreamException;
-import java.io.FileNotFoundException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.*;
@@ -61,17 +70,9 @@ public class QueueManagerServiceImpl implements QueueManagerService {
     private static final String URLEncodingFormat = "UTF-8";
     private static final String PERMISSION_CHANGE_PERMISSION = "changePermission";
     private static final String ROLE_EVERY_ONE = "everyone";
-    public static final String QPID_ICF = "org.wso2.andes.jndi.PropertiesFileInitialContextFactory";
-    private static final String CF_NAME_PREFIX = "connectionfactory.";
-    private static final String QUEUE_NAME_PREFIX = "queue.";
-    private static final String CF_NAME = "qpidConnectionfactory";
     public static final String UI_EXECUTE = "ui.execute";
     public static final String PERMISSION_ADMIN_MANAGE_DLC_BROWSE_DLC = "/permission/admin/manage/dlc/browseDlc";
-    private Properties properties;
-    private QueueConnection queueConnection;
-    private QueueSession queueSession;
-    private QueueBrowser queueBrowser;
-    private QueueSender queueSender;
+    private static final String QUEUE_MESSAGE_PATTERN = "queue";
 
     public void createQueue(String queueName) throws QueueManagerException {
         try {
@@ -116,7 +117,13 @@ public class QueueManagerServiceImpl implements QueueManagerService {
 
     public List<org.wso2.carbon.andes.core.types.Queue> getAllQueues() throws QueueManagerException {
         UserRealm userRealm;
-        List<org.wso2.carbon.andes.core.types.Queue> allQueues = QueueManagementBeans.getInstance().getAllQueues();
+        List<org.wso2.carbon.andes.core.types.Queue> allQueues = new ArrayList<org.wso2.carbon.andes.core.types
+                .Queue>();
+        for (String queueName : QueueManagementBeans.getInstance().getAllQueueNames()) {
+            org.wso2.carbon.andes.core.types.Queue queue = new org.wso2.carbon.andes.core.types.Queue();
+            queue.setQueueName(queueName);
+            allQueues.add(queue);
+        }
         //show queues belonging to current domain of user
         //also set queue name used by user
         List<org.wso2.carbon.andes.core.types.Queue> queues = Utils.filterDomainSpecificQueues(allQueues);
@@ -126,49 +133,107 @@ public class QueueManagerServiceImpl implements QueueManagerService {
             if (Utils.isAdmin(CarbonContext.getThreadLocalCarbonContext().getUsername())) {
                 filteredQueueByUser.addAll(queues);
             } else {
+                int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId() <= 0 ?
+                        MultitenantConstants.SUPER_TENANT_ID : CarbonContext.getThreadLocalCarbonContext()
+                        .getTenantId();
                 userRealm = QueueManagerServiceValueHolder.getInstance().getRealmService().getTenantUserRealm
-                        (CarbonContext.getThreadLocalCarbonContext().getTenantId() <= 0 ?
-                                MultitenantConstants.SUPER_TENANT_ID : CarbonContext.getThreadLocalCarbonContext()
-                                .getTenantId());
-                UserStoreManager userStoreManager = userRealm.getUserStoreManager();
-                //Get all the roles of the logged in user
-                String[] roleNames = userStoreManager.getRoleListOfUser(CarbonContext.getThreadLocalCarbonContext()
-                        .getUsername());
-                for (org.wso2.carbon.andes.core.types.Queue queue : queues) {
-                    String queueName = queue.getQueueName();
-                    String queueID = CommonsUtil.getQueueID(queueName);
-                    for (String role : roleNames) {
-                        if (userRealm.getAuthorizationManager().isRoleAuthorized(
-                                role, queueID, TreeNode.Permission.CONSUME.toString().toLowerCase()) || userRealm
-                                .getAuthorizationManager().isRoleAuthorized(
-                                        role, queueID, TreeNode.Permission.PUBLISH.toString().toLowerCase()) ||
-                                userRealm
-                                .getAuthorizationManager()
-                                .isUserAuthorized(CarbonContext.getThreadLocalCarbonContext().getUsername(),
-                                        PERMISSION_ADMIN_MANAGE_DLC_BROWSE_DLC, UI_EXECUTE)) {
-                            if (!filteredQueueByUser.contains(queue)) {
-                                filteredQueueByUser.add(queue);
-                            }
-                        }
-                    }
+                        (tenantId);
+                AuthorizationManager authorizationManager = userRealm.getAuthorizationManager();
+                String username = CarbonContext.getThreadLocalCarbonContext().getUsername();
+                //users allowed to browse the DLC see all queues
+                if (authorizationManager.isUserAuthorized(username, PERMISSION_ADMIN_MANAGE_DLC_BROWSE_DLC,
+                        UI_EXECUTE)) {
+                    filteredQueueByUser.addAll(queues);
+                } else {
+                    UserStoreManager userStoreManager = userRealm.getUserStoreManager();
+                    //Get all the roles of the logged in user
+                    String[] roleNames = userStoreManager.getRoleListOfUser(username);
+                    filteredQueueByUser.addAll(
+                            filterQueuesByRoles(tenantId, authorizationManager, roleNames, queues));
                 }
             }
         } catch (UserStoreException e) {
             throw new QueueManagerException("Unable to get all queues.", e);
         }
+        // Message counts are read only for the queues the user sees, all at once
+        QueueMessageCountSampler.MessageCountSnapshot snapshot = QueueMessageCountSampler.getInstance().getSnapshot();
+        if (null != snapshot) {
+            long messageCountAge = snapshot.getAge();
+            for (org.wso2.carbon.andes.core.types.Queue queue : filteredQueueByUser) {
+                queue.setMessageCount(snapshot.getMessageCount(queue.getQueueName()));
+                queue.setMessageCountAge(messageCountAge);
+            }
+        } else {
+            QueueManagementBeans.getInstance().setMessageCounts(filteredQueueByUser);
+        }
         return filteredQueueByUser;
     }
 
+    /**
+     * Filter queues a set of roles can consume from or publish to
+     *
+     * @param tenantId             Tenant of the queues
+     * @param authorizationManager Authorization manager of the tenant
+     * @param roleNames            Role names
+     * @param queues               Queues to filter
+     * @return Queues visible to at least one of the roles
+     * @throws UserStoreException
+     */
+    private List<org.wso2.carbon.andes.core.types.Queue> filterQueuesByRoles(
+            int tenantId, AuthorizationManager authorizationManager, String[] roleNames,
+            List<org.wso2.carbon.andes.core.types.Queue> queues) throws UserStoreException {
+        List<org.wso2.carbon.andes.core.types.Queue> visibleQueues = new ArrayList<org.wso2.carbon.andes.core
+                .types.Queue>();
+        String consume = TreeNode.Permission.CONSUME.toString().toLowerCase();
+        String publish = TreeNode.Permission.PUBLISH.toString().toLowerCase();
+
+        if (QueueVisibilityIndex.getInstance().isEnabled()) {
+            Map<org.wso2.carbon.andes.core.types.Queue, String> queueIDs = new LinkedHashMap<org.wso2.carbon.andes
+                    .core.types.Queue, String>();
+            for (org.wso2.carbon.andes.core.types.Queue queue : queues) {
+                queueIDs.put(queue, CommonsUtil.getQueueID(queue.getQueueName()));
+            }
+            Set<String> visibleQueueIDs = QueueVisibilityIndex.getInstance().getVisibleQueueIDs(
+                    tenantId, authorizationManager, roleNames, queueIDs.values());
+            for (Map.Entry<org.wso2.carbon.andes.core.types.Queue, String> entry : queueIDs.entrySet()) {
+                if (visibleQueueIDs.contains(entry.getValue())) {
+                    visibleQueues.add(entry.getKey());
+                }
+            }
+            return visibleQueues;
+        }
+
+        for (org.wso2.carbon.andes.core.types.Queue queue : queues) {
+            String queueID = CommonsUtil.getQueueID(queue.getQueueName());
+            for (String role : roleNames) {
+                if (authorizationManager.isRoleAuthorized(role, queueID, consume) ||
+                        authorizationManager.isRoleAuthorized(role, queueID, publish)) {
+                    visibleQueues.add(queue);
+                    break;
+                }
+            }
+        }
+        return visibleQueues;
+    }
+
     public void deleteQueue(String queueName) throws QueueManagerException {
         try {
             UserRegistry userRegistry = Utils.getUserRegistry();
             String resourcePath = QueueManagementConstants.MB_QUEUE_STORAGE_PATH + "/" + queueName;
             if (QueueManagementBeans.queueExists(queueName)) {
                 QueueManagementBeans.getInstance().deleteQueue(queueName);
+                PermissionIndex.getInstance().invalidate(
+                        CarbonContext.getThreadLocalCarbonContext().getTenantId(), CommonsUtil.getQueueID(queueName));
+                QueueVisibilityIndex.getInstance().invalidate(
+                        CarbonContext.getThreadLocalCarbonContext().getTenantId(), CommonsUtil.getQueueID(queueName));
                 userRegistry.delete(resourcePath);
             }
         } catch (RegistryException e) {
-            throw new QueueManagerException("Failed to delete queue : " + queueName, e);
+            if (!RegistryClient.isQueueReconcilerRunning()) {
+                throw new QueueManagerException("Failed to delete queue : " + queueName, e);
+            }
+            log.warn("Failed to delete registry entry of queue " + queueName + ". The entry is left to be " +
+                    "removed by the reconciler.", e);
         }
 
     }
@@ -212,16 +277,79 @@ public class QueueManagerServiceImpl implements QueueManagerService {
         QueueManagementBeans.getInstance().deleteMessagesFromDeadLetterQueue(messageIDs, deadLetterQueueName);
     }
 
+    public String startRestoreFromDeadLetterQueue(String deadLetterQueueName, DeadLetterFilter filter,
+                                                  String destination, String userName, String accessKey)
+            throws QueueManagerException {
+        if ((null != destination) && destination.trim().isEmpty()) {
+            destination = null;
+        }
+        return QueueManagerJobs.getInstance().submitExclusive(new DeadLetterChannelJob(deadLetterQueueName,
+                userName, encodeUserName(userName), accessKey, (null != filter) ? filter : new DeadLetterFilter(),
+                false, destination));
+    }
+
+    public String startDeleteFromDeadLetterQueue(String deadLetterQueueName, DeadLetterFilter filter,
+                                                 String userName, String accessKey) throws QueueManagerException {
+        return QueueManagerJobs.getInstance().submitExclusive(new DeadLetterChannelJob(deadLetterQueueName,
+                userName, encodeUserName(userName), accessKey, (null != filter) ? filter : new DeadLetterFilter(),
+                true, null));
+    }
+
     public void purgeMessagesOfQueue(String queueName) throws QueueManagerException {
         QueueManagementBeans.getInstance().purgeMessagesFromQueue(queueName);
     }
 
+    public String startPurgeQueue(String queueName, String userName) throws QueueManagerException {
+        return QueueManagerJobs.getInstance().submitExclusive(new PurgeQueueJob(queueName, userName));
+    }
+
     public long getMessageCountForQueue(String queueName, String msgPattern) throws QueueManagerException {
         long messageCount;
-        messageCount = QueueManagementBeans.getInstance().getMessageCount(queueName, msgPattern);
+        // Only counts of queues are sampled
+        Long sampledCount = QUEUE_MESSAGE_PATTERN.equals(msgPattern) ?
+                QueueMessageCountSampler.getInstance().getMessageCount(queueName) : null;
+        if (null != sampledCount) {
+            messageCount = sampledCount;
+        } else {
+            messageCount = QueueManagementBeans.getInstance().getMessageCount(queueName, msgPattern);
+        }
         return messageCount;
     }
 
+    public long[] getMessageCountsForQueues(String[] queueNames) throws QueueManagerException {
+        QueueMessageCountSampler.MessageCountSnapshot snapshot = QueueMessageCountSampler.getInstance().getSnapshot();
+        if (null == snapshot) {
+            return QueueManagementBeans.getInstance().getMessageCounts(queueNames);
+        }
+
+        long[] messageCounts = new long[queueNames.length];
+        for (int i = 0; i < queueNames.length; i++) {
+            messageCounts[i] = snapshot.getMessageCount(queueNames[i]);
+        }
+        return messageCounts;
+    }
+
+    public long getMessageCountAge() {
+        return QueueMessageCountSampler.getInstance().getSnapshotAge();
+    }
+
+    public QueueRateHistory getQueueRateHistory(String queueName, int resolution) throws QueueManagerException {
+        QueueMessageRateHistory rateHistory = QueueMessageRateHistory.getInstance();
+        if (!rateHistory.isEnabled() || !QueueMessageCountSampler.getInstance().isSampling()) {
+            throw new QueueManagerException("Message rate history of queues is not enabled.");
+        }
+        if ((QueueMessageRateHistory.SECOND_RESOLUTION != resolution) &&
+                (QueueMessageRateHistory.MINUTE_RESOLUTION != resolution)) {
+            throw new QueueManagerException("Unsupported resolution of message rate history : " + resolution);
+        }
+
+        QueueRateHistory history = rateHistory.getHistory(queueName, resolution);
+        if (null == history) {
+            throw new QueueManagerException("No message rate history for the queue : " + queueName);
+        }
+        return history;
+    }
+
     @Override
     public void updatePermission(String queueName, QueueRolePermission[] queueRolePermissions) throws
             QueueManagerException {
@@ -229,13 +357,15 @@ public class QueueManagerServiceImpl implements QueueManagerService {
         if (QueueManagementBeans.queueExists(tenantBasedQueueName)) {
             String queueID = CommonsUtil.getQueueID(queueName);
             UserRealm userRealm;
+            int tenantId;
             String role;
             String loggedInUser = CarbonContext.getThreadLocalCarbonContext().getUsername();
             try {
+                tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId() <= 0 ?
+                        MultitenantConstants.SUPER_TENANT_ID : CarbonContext.getThreadLocalCarbonContext()
+                        .getTenantId();
                 userRealm = QueueManagerServiceValueHolder.getInstance().getRealmService().getTenantUserRealm
-                        (CarbonContext.getThreadLocalCarbonContext().getTenantId() <= 0 ?
-                                MultitenantConstants.SUPER_TENANT_ID : CarbonContext.getThreadLocalCarbonContext()
-                                .getTenantId());
+                        (tenantId);
                 if (!userRealm.getAuthorizationManager().isUserAuthorized(
                         loggedInUser, queueID, PERMISSION_CHANGE_PERMISSION)) {
                     throw new QueueManagerException(" User " + loggedInUser + " can not change" +
@@ -257,7 +387,12 @@ public class QueueManagerServiceImpl implements QueueManagerService {
                         userRealm.getAuthorizationManager().denyRole(
                                 role, queueID, TreeNode.Permission.PUBLISH.toString().toLowerCase());
                     }
+                    QueueVisibilityIndex.getInstance().setVisibility(tenantId, queueID, role,
+                            queueRolePermission.isAllowedToConsume() || queueRolePermission.isAllowedToPublish());
                 }
+                // Cached decisions of the tenant may no longer be valid
+                AuthorizationCache.getInstance().invalidateTenant(tenantId);
+                PermissionIndex.getInstance().invalidate(tenantId, queueID);
             } catch (UserStoreException e) {
                 throw new QueueManagerException("Unable to update permission of the queue.", e);
             }
@@ -374,83 +509,215 @@ public class QueueManagerServiceImpl implements QueueManagerService {
         List<org.wso2.carbon.andes.core.types.Message> messageList =
                 new ArrayList<org.wso2.carbon.andes.core.types.Message>();
 
+        checkBrowsePosition(startingIndex);
+        QueueBrowseCursors.BrowseCursor cursor = openBrowseCursor(nameOfQueue, userName, accessKey);
         try {
-            // User name may contain the domain name and the user name. eg: WSO2/admin
-            // having this username with domain name containing '/' character violates the
-            // amqp url user name. Therefore escaping it according to url standards
-            javax.jms.Queue queue = getQueue(
-                    nameOfQueue,
-                    URLEncoder.encode(userName, URLEncodingFormat),
-                    accessKey
-            );
-            queueSession = queueConnection.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
-            queueBrowser = queueSession.createBrowser(queue);
-            queueConnection.start();
-            if (queueBrowser != null) {
-                Enumeration queueContentsEnu = queueBrowser.getEnumeration();
-                ArrayList msgArrayList = Collections.list(queueContentsEnu);
-                int messageBatchSizeForBrowserSubscriptions = ClusterResourceHolder.getInstance()
-                        .getClusterConfiguration().
-                                getMessageBatchSizeForBrowserSubscriptions();
-                if (startingIndex < messageBatchSizeForBrowserSubscriptions) {
-                    Object[] filteredMsgArray = Utils.getFilteredMsgsList(msgArrayList, startingIndex, maxMsgCount);
-                    for (Object message : filteredMsgArray) {
-                        //cast to jms message
-                        Message queueMessage = (Message) message;
-                        //assign jms message properties to org.wso2.carbon.andes.core.types.Message
-                        org.wso2.carbon.andes.core.types.Message msg = new org.wso2.carbon.andes.core.types.Message();
-                        if (queueMessage != null) {
-                            msg.setMsgProperties(Utils.getMsgProperties(queueMessage));
-                            msg.setContentType(Utils.getMsgContentType(queueMessage));
-                            msg.setMessageContent(Utils.getMessageContentAsString(queueMessage));
-                            msg.setJMSMessageId(queueMessage.getJMSMessageID());
-                            msg.setJMSCorrelationId(queueMessage.getJMSCorrelationID());
-                            msg.setJMSType(queueMessage.getJMSType());
-                            msg.setJMSReDelivered(queueMessage.getJMSRedelivered());
-                            msg.setJMSDeliveredMode(queueMessage.getJMSDeliveryMode());
-                            msg.setJMSPriority(queueMessage.getJMSPriority());
-                            msg.setJMSTimeStamp(queueMessage.getJMSTimestamp());
-                            msg.setJMSExpiration(queueMessage.getJMSExpiration());
-                            Destination destination = queueMessage.getJMSDestination();
-                            if (destination != null && destination.toString().contains("routingkey=")) {
-                                String[] word = destination.toString().split("routingkey=");
-                                if (word.length > 0) {
-                                    msg.setDlcMsgDestination(word[1]);
-                                }
-                            }
-                            messageList.add(msg);
-                        }
-                    }
-                } else {
-                    throw new QueueManagerException("Please increase the " +
-                            "messageBatchSizeForBrowserSubscriptions in andes-config.xml");
+            // Walk up to the starting index without keeping the messages skipped
+            cursor.skip(startingIndex);
+            for (int i = 0; i < maxMsgCount; i++) {
+                Message queueMessage = cursor.next();
+                if (null == queueMessage) {
+                    break;
                 }
+                messageList.add(toMessage(queueMessage));
             }
             return messageList.toArray(new org.wso2.carbon.andes.core.types.Message[messageList.size()]);
-        } catch (NamingException e) {
-            throw new QueueManagerException("Unable to browse queue.", e);
         } catch (JMSException e) {
             throw new QueueManagerException("Unable to browse queue.", e);
-        } catch (FileNotFoundException e) {
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public QueueBrowsePage browseQueueWithCursor(String nameOfQueue, String userName, String accessKey,
+                                                 String resumeToken, int maxMsgCount)
+            throws QueueManagerException {
+        QueueBrowseCursors browseCursors = QueueBrowseCursors.getInstance();
+        QueueBrowseCursors.BrowseCursor cursor = null;
+        if (null != resumeToken) {
+            cursor = browseCursors.take(resumeToken, userName, nameOfQueue);
+        }
+        long position = 0;
+        if (null == cursor) {
+            position = QueueBrowseCursors.getPosition(resumeToken);
+            checkBrowsePosition(position);
+            cursor = openBrowseCursor(nameOfQueue, userName, accessKey);
+        }
+
+        List<org.wso2.carbon.andes.core.types.Message> messageList =
+                new ArrayList<org.wso2.carbon.andes.core.types.Message>();
+        try {
+            // A resumed cursor is already at its position, only a newly opened one has messages to skip
+            cursor.skip(position);
+            for (int i = 0; i < maxMsgCount; i++) {
+                Message queueMessage = cursor.next();
+                if (null == queueMessage) {
+                    break;
+                }
+                messageList.add(toMessage(queueMessage));
+            }
+        } catch (JMSException e) {
+            cursor.close();
             throw new QueueManagerException("Unable to browse queue.", e);
-        } catch (XMLStreamException e) {
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+
+        QueueBrowsePage page = new QueueBrowsePage();
+        page.setMessages(messageList.toArray(new org.wso2.carbon.andes.core.types.Message[messageList.size()]));
+        page.setResumeToken(browseCursors.release(cursor));
+        return page;
+    }
+
+    @Override
+    public String getMessageContent(String nameOfQueue, String userName, String accessKey, String messageID)
+            throws QueueManagerException {
+        if (null == messageID) {
+            throw new QueueManagerException("Message ID is required to read message content.");
+        }
+        JMSConnectionPool connectionPool = JMSConnectionPool.getInstance();
+        JMSConnectionPool.PooledSession pooledSession = borrowSession(userName, accessKey);
+        QueueBrowser browser = null;
+        boolean sessionFailed = true;
+        try {
+            QueueSession session = pooledSession.getSession();
+            browser = session.createBrowser(session.createQueue(nameOfQueue),
+                    "JMSMessageID = '" + messageID.replace("'", "''") + "'");
+            Enumeration queueContentsEnu = browser.getEnumeration();
+            Message queueMessage = queueContentsEnu.hasMoreElements() ?
+                    (Message) queueContentsEnu.nextElement() : null;
+            sessionFailed = false;
+            if (null == queueMessage) {
+                throw new QueueManagerException("Message " + messageID + " is not in queue " + nameOfQueue);
+            }
+            return MessageContentRenderer.renderContent(queueMessage);
+        } catch (JMSException e) {
+            throw new QueueManagerException("Unable to read message content.", e);
+        } finally {
+            closeBrowser(browser);
+            if (sessionFailed) {
+                connectionPool.invalidateSession(pooledSession);
+            } else {
+                connectionPool.returnSession(pooledSession);
+            }
+        }
+    }
+
+    /**
+     * Browser subscriptions are served at most messageBatchSizeForBrowserSubscriptions messages, hence messages
+     * beyond it can not be browsed
+     *
+     * @param position Number of messages to skip
+     * @throws QueueManagerException if the position is beyond the messages served to browsers
+     */
+    private void checkBrowsePosition(long position) throws QueueManagerException {
+        int messageBatchSizeForBrowserSubscriptions = ClusterResourceHolder.getInstance()
+                .getClusterConfiguration().
+                        getMessageBatchSizeForBrowserSubscriptions();
+        if (position >= messageBatchSizeForBrowserSubscriptions) {
+            throw new QueueManagerException("Please increase the " +
+                    "messageBatchSizeForBrowserSubscriptions in andes-config.xml");
+        }
+    }
+
+    /**
+     * Open a browser on a queue, on a session borrowed from the connection pool
+     *
+     * @param nameOfQueue Queue to browse
+     * @param userName    User browsing
+     * @param accessKey   Access key of the user
+     * @return Cursor at the start of the browser
+     * @throws QueueManagerException
+     */
+    private QueueBrowseCursors.BrowseCursor openBrowseCursor(String nameOfQueue, String userName, String accessKey)
+            throws QueueManagerException {
+        JMSConnectionPool connectionPool = JMSConnectionPool.getInstance();
+        JMSConnectionPool.PooledSession pooledSession = borrowSession(userName, accessKey);
+        QueueBrowser browser = null;
+        try {
+            QueueSession session = pooledSession.getSession();
+            browser = session.createBrowser(session.createQueue(nameOfQueue));
+            return new QueueBrowseCursors.BrowseCursor(userName, nameOfQueue, pooledSession, browser);
+        } catch (JMSException e) {
+            closeBrowser(browser);
+            connectionPool.invalidateSession(pooledSession);
             throw new QueueManagerException("Unable to browse queue.", e);
+        } catch (RuntimeException e) {
+            closeBrowser(browser);
+            connectionPool.invalidateSession(pooledSession);
+            throw e;
+        }
+    }
+
+    /**
+     * Borrow a session of a user from the connection pool
+     *
+     * @param userName  User name
+     * @param accessKey Access key of the user
+     * @return Pooled session, to be returned or invalidated once done
+     * @throws QueueManagerException
+     */
+    private static JMSConnectionPool.PooledSession borrowSession(String userName, String accessKey)
+            throws QueueManagerException {
+        try {
+            return JMSConnectionPool.getInstance().borrowSession(encodeUserName(userName), accessKey);
+        } catch (NamingException e) {
+            throw new QueueManagerException("Unable to connect to the broker.", e);
+        } catch (JMSException e) {
+            throw new QueueManagerException("Unable to connect to the broker.", e);
+        }
+    }
+
+    private static String encodeUserName(String userName) throws QueueManagerException {
+        try {
+            // User name may contain the domain name and the user name. eg: WSO2/admin
+            // having this username with domain name containing '/' character violates the
+            // amqp url user name. Therefore escaping it according to url standards
+            return URLEncoder.encode(userName, URLEncodingFormat);
         } catch (UnsupportedEncodingException e) {
             throw new QueueManagerException("Unable to encode user name to url safe format", e);
-        } finally {
+        }
+    }
+
+    private static void closeBrowser(QueueBrowser browser) {
+        if (null != browser) {
             try {
-                // There is no need to close the sessions, producers, and consumers of a
-                // closed connection
-                queueConnection.close();
+                browser.close();
             } catch (JMSException e) {
-                log.error("Failed to close queue connection", e);
+                log.warn("Failed to close queue browser", e);
             }
         }
     }
 
+    /**
+     * Convert a browsed JMS message
+     *
+     * @param queueMessage JMS message
+     * @return Message to be shown
+     * @throws JMSException
+     */
+    private static org.wso2.carbon.andes.core.types.Message toMessage(Message queueMessage) throws JMSException {
+        //assign jms message properties to org.wso2.carbon.andes.core.types.Message
+        org.wso2.carbon.andes.core.types.Message msg = new org.wso2.carbon.andes.core.types.Message();
+        msg.setMsgProperties(Utils.getMsgProperties(queueMessage));
+        msg.setContentType(Utils.getMsgContentType(queueMessage));
+        msg.setMessageContent(MessageContentRenderer.renderPreview(queueMessage));
+        msg.setJMSMessageId(queueMessage.getJMSMessageID());
+        msg.setJMSCorrelationId(queueMessage.getJMSCorrelationID());
+        msg.setJMSType(queueMessage.getJMSType());
+        msg.setJMSReDelivered(queueMessage.getJMSRedelivered());
+        msg.setJMSDeliveredMode(queueMessage.getJMSDeliveryMode());
+        msg.setJMSPriority(queueMessage.getJMSPriority());
+        msg.setJMSTimeStamp(queueMessage.getJMSTimestamp());
+        msg.setJMSExpiration(queueMessage.getJMSExpiration());
+        msg.setDlcMsgDestination(Utils.getDlcMessageDestination(queueMessage));
+        return msg;
+    }
+
     @Override
     public long getTotalMessagesInQueue(String nameOfQueue) throws QueueManagerException {
-        return QueueManagementBeans.getInstance().getMessageCount(nameOfQueue, "queue");
+        return getMessageCountForQueue(nameOfQueue, QUEUE_MESSAGE_PATTERN);
     }
 
     @Override
@@ -458,13 +725,14 @@ public class QueueManagerServiceImpl implements QueueManagerService {
                                String jmsCorrelationID,
                                int numberOfMessages, String message, int deliveryMode, int priority,
                                long expireTime) throws QueueManagerException {
+        JMSConnectionPool connectionPool = JMSConnectionPool.getInstance();
+        JMSConnectionPool.PooledSession pooledSession = borrowSession(userName, accessKey);
+        boolean sessionFailed = true;
         try {
-            Queue queue = getQueue(nameOfQueue, userName, accessKey);
-            queueSession = queueConnection.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
-            queueSender = queueSession.createSender(queue);
-            queueConnection.start();
-            TextMessage textMessage = queueSession.createTextMessage();
-            if (queueSender != null && textMessage != null) {
+            QueueSession queueSession = pooledSession.getSession();
+            QueueSender queueSender = queueSession.createSender(queueSession.createQueue(nameOfQueue));
+            try {
+                TextMessage textMessage = queueSession.createTextMessage();
                 if (jmsType != null) {
                     textMessage.setJMSType(jmsType);
                 }
@@ -479,46 +747,49 @@ public class QueueManagerServiceImpl implements QueueManagerService {
                 for (int i = 0; i < numberOfMessages; i++) {
                     queueSender.send(textMessage, deliveryMode, priority, expireTime);
                 }
+            } finally {
+                queueSender.close();
             }
+            sessionFailed = false;
             return true;
-        } catch (NamingException e) {
-            throw new QueueManagerException("Unable to send message.", e);
         } catch (JMSException e) {
             throw new QueueManagerException("Unable to send message.", e);
-        } catch (FileNotFoundException e) {
-            throw new QueueManagerException("Unable to send message.", e);
-        } catch (XMLStreamException e) {
-            throw new QueueManagerException("Unable to send message.", e);
         } finally {
-            try {
-                queueConnection.close();
-            } catch (JMSException e) {
-                log.error("Unable to close queue connection", e);
-            }
-            try {
-                queueSession.close();
-            } catch (JMSException e) {
-                log.error("Unable to close queue session", e);
-            }
-            try {
-                queueSender.close();
-            } catch (JMSException e) {
-                log.error("Unable to close queue sender", e);
+            if (sessionFailed) {
+                connectionPool.invalidateSession(pooledSession);
+            } else {
+                connectionPool.returnSession(pooledSession);
             }
         }
     }
 
-    private Queue getQueue(String nameOfQueue, String userName, String accessKey) throws FileNotFoundException,
-            XMLStreamException, NamingException, JMSException {
-        this.properties = new Properties();
-        properties.put(Context.INITIAL_CONTEXT_FACTORY, QPID_ICF);
-        properties.put(CF_NAME_PREFIX + CF_NAME, Utils.getTCPConnectionURL(userName, accessKey));
-        properties.put(QUEUE_NAME_PREFIX + nameOfQueue, nameOfQueue);
-        properties.put(CarbonConstants.REQUEST_BASE_CONTEXT, "true");
-        InitialContext ctx = new InitialContext(properties);
-        QueueConnectionFactory connFactory = (QueueConnectionFactory) ctx.lookup(CF_NAME);
-        queueConnection = connFactory.createQueueConnection();
-        return (Queue) ctx.lookup(nameOfQueue);
+    @Override
+    public String startBulkPublish(String nameOfQueue, String userName, String accessKey, String jmsType,
+                                   String jmsCorrelationID, int numberOfMessages, String message, int deliveryMode,
+                                   int priority, long expireTime, int batchSize, boolean transacted)
+            throws QueueManagerException {
+        if (numberOfMessages <= 0) {
+            throw new QueueManagerException("Number of messages to publish should be positive.");
+        }
+        return QueueManagerJobs.getInstance().submit(new BulkPublishJob(nameOfQueue, userName,
+                encodeUserName(userName), accessKey, jmsType, jmsCorrelationID, numberOfMessages,
+                (null != message) ? message : "Type message here..", deliveryMode, priority, expireTime, batchSize,
+                transacted));
+    }
+
+    @Override
+    public JobStatus getJobStatus(String jobId, String userName) throws QueueManagerException {
+        return QueueManagerJobs.getInstance().getJob(jobId, userName).getStatus();
+    }
+
+    @Override
+    public void cancelJob(String jobId, String userName) throws QueueManagerException {
+        QueueManagerJob job = QueueManagerJobs.getInstance().getJob(jobId, userName);
+        if (!job.isCancellable()) {
+            throw new QueueManagerException("The " + job.getType() + " job on queue " + job.getQueueName() +
+                    " can not be cancelled any more.");
+        }
+        job.cancel();
     }
 
     private int readPortOffset() {
@@ -22,10 +22,19 @@ import org.apache.commons.logging.LogFactory;
 import org.osgi.service.component.ComponentContext;
 import org.wso2.carbon.andes.core.QueueManagerService;
 import org.wso2.carbon.andes.core.internal.builder.QueueManagerServiceBuilder;
+import org.wso2.carbon.andes.core.internal.job.QueueManagerJobs;
+import org.wso2.carbon.andes.core.internal.registry.QueueMessageCountSampler;
+import org.wso2.carbon.andes.core.internal.registry.QueueRegistryReconciler;
+import org.wso2.carbon.andes.core.internal.util.JMSConnectionPool;
+import org.wso2.carbon.andes.core.internal.util.QueueBrowseCursors;
+import org.wso2.carbon.andes.core.internal.util.Utils;
 import org.wso2.carbon.registry.core.service.RegistryService;
 import org.wso2.carbon.user.core.service.RealmService;
 import org.wso2.carbon.utils.ConfigurationContextService;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.FileNotFoundException;
+
 /**
  * @scr.component name="QueueManagerService.component" immediate="true"
  * @scr.reference name="registry.service"
@@ -51,6 +60,34 @@ public class QueueManagerServiceDS {
         } catch (RuntimeException e) {
             log.error("Can not create queue manager service ", e);
         }
+
+        QueueRegistryReconciler.getInstance().start();
+        startMessageCountSampler();
+        JMSConnectionPool.getInstance().start();
+        QueueManagerJobs.getInstance().start();
+    }
+
+    protected void deactivate(ComponentContext context) {
+        QueueMessageCountSampler.getInstance().shutdown();
+        QueueRegistryReconciler.getInstance().shutdown();
+        QueueManagerJobs.getInstance().shutdown();
+        QueueBrowseCursors.getInstance().closeAll();
+        JMSConnectionPool.getInstance().shutdown();
+    }
+
+    /**
+     * Start sampling message counts, continuously if message counts are shown in the console by default
+     */
+    private void startMessageCountSampler() {
+        boolean viewMessageCounts = false;
+        try {
+            viewMessageCounts = Utils.isViewMessageCounts();
+        } catch (FileNotFoundException e) {
+            log.warn("Could not read andes configuration. Message counts are sampled on demand.", e);
+        } catch (XMLStreamException e) {
+            log.warn("Could not read andes configuration. Message counts are sampled on demand.", e);
+        }
+        QueueMessageCountSampler.getInstance().start(viewMessageCounts);
     }
 
     protected void setRealmService(RealmService realmService) {
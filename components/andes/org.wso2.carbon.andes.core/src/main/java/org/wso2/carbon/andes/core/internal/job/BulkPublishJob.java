@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.core.internal.job;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.core.QueueManagerException;
+import org.wso2.carbon.andes.core.internal.util.JMSConnectionPool;
+
+import javax.jms.JMSException;
+import javax.jms.QueueSender;
+import javax.jms.QueueSession;
+import javax.jms.TextMessage;
+import javax.naming.NamingException;
+
+/**
+ * Publishes copies of a text message to a queue in batches. Batches are committed on a transacted session, or sent
+ * on a non-transacted session without waiting for the broker. Progress is updated and cancellation checked once
+ * per batch.
+ */
+public class BulkPublishJob extends QueueManagerJob {
+
+    public static final String JOB_TYPE = "Publish";
+
+    /**
+     * System property for the number of messages per batch when the batch size is not given
+     */
+    public static final String BATCH_SIZE_PROPERTY = "andes.admin.publish.batchSize";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final String connectionUserName;
+    private final String accessKey;
+    private final String jmsType;
+    private final String jmsCorrelationID;
+    private final int numberOfMessages;
+    private final String message;
+    private final int deliveryMode;
+    private final int priority;
+    private final long expireTime;
+    private final int batchSize;
+    private final boolean transacted;
+
+    /**
+     * @param queueName          Queue to publish to
+     * @param owner              User publishing
+     * @param connectionUserName User name escaped to be used in an AMQP URL
+     * @param accessKey          Access key of the user
+     * @param jmsType            JMS type of the messages, or null
+     * @param jmsCorrelationID   JMS correlation ID of the messages, or null
+     * @param numberOfMessages   Number of messages to publish
+     * @param message            Text of the messages
+     * @param deliveryMode       JMS delivery mode
+     * @param priority           JMS priority
+     * @param expireTime         Time to live in milliseconds, or 0 to never expire
+     * @param batchSize          Number of messages per batch, or 0 for the configured batch size
+     * @param transacted         true to commit each batch in a transaction
+     */
+    public BulkPublishJob(String queueName, String owner, String connectionUserName, String accessKey,
+                          String jmsType, String jmsCorrelationID, int numberOfMessages, String message,
+                          int deliveryMode, int priority, long expireTime, int batchSize, boolean transacted) {
+        super(JOB_TYPE, queueName, owner);
+        this.connectionUserName = connectionUserName;
+        this.accessKey = accessKey;
+        this.jmsType = jmsType;
+        this.jmsCorrelationID = jmsCorrelationID;
+        this.numberOfMessages = numberOfMessages;
+        this.message = message;
+        this.deliveryMode = deliveryMode;
+        this.priority = priority;
+        this.expireTime = expireTime;
+        this.batchSize = (batchSize > 0) ? batchSize :
+                Math.max(1, CommonsUtil.getIntProperty(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE));
+        this.transacted = transacted;
+        setTotalCount(numberOfMessages);
+    }
+
+    @Override
+    protected void execute() throws QueueManagerException {
+        JMSConnectionPool connectionPool = JMSConnectionPool.getInstance();
+        JMSConnectionPool.PooledSession pooledSession;
+        try {
+            pooledSession = connectionPool.borrowSession(connectionUserName, accessKey, transacted);
+        } catch (NamingException e) {
+            throw new QueueManagerException("Unable to connect to the broker.", e);
+        } catch (JMSException e) {
+            throw new QueueManagerException("Unable to connect to the broker.", e);
+        }
+
+        boolean sessionFailed = true;
+        try {
+            QueueSession queueSession = pooledSession.getSession();
+            QueueSender queueSender = queueSession.createSender(queueSession.createQueue(getQueueName()));
+            try {
+                // The same message is sent each time, the provider assigns a new message ID per send
+                TextMessage textMessage = queueSession.createTextMessage(message);
+                if (jmsType != null) {
+                    textMessage.setJMSType(jmsType);
+                }
+                if (jmsCorrelationID != null) {
+                    textMessage.setJMSCorrelationID(jmsCorrelationID);
+                }
+
+                int sentCount = 0;
+                while ((sentCount < numberOfMessages) && !isCancelRequested()) {
+                    int currentBatchSize = Math.min(batchSize, numberOfMessages - sentCount);
+                    for (int i = 0; i < currentBatchSize; i++) {
+                        queueSender.send(textMessage, deliveryMode, priority, expireTime);
+                    }
+                    if (transacted) {
+                        queueSession.commit();
+                    }
+                    sentCount += currentBatchSize;
+                    addProcessedCount(currentBatchSize);
+                }
+            } finally {
+                queueSender.close();
+            }
+            sessionFailed = false;
+        } catch (JMSException e) {
+            throw new QueueManagerException("Unable to send message.", e);
+        } finally {
+            if (sessionFailed) {
+                connectionPool.invalidateSession(pooledSession);
+            } else {
+                connectionPool.returnSession(pooledSession);
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.core.internal.job;
+
+import org.wso2.andes.server.ClusterResourceHolder;
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.core.QueueManagerException;
+import org.wso2.carbon.andes.core.internal.registry.QueueManagementBeans;
+import org.wso2.carbon.andes.core.internal.util.JMSConnectionPool;
+import org.wso2.carbon.andes.core.internal.util.Utils;
+import org.wso2.carbon.andes.core.types.DeadLetterFilter;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.QueueBrowser;
+import javax.jms.QueueSession;
+import javax.naming.NamingException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Restores or deletes the messages of a Dead Letter Queue selected by a DeadLetterFilter, in chunks. Each chunk is
+ * collected by browsing the queue inside the server, and handed to the broker as one restore or delete operation.
+ * The time, JMS type and property conditions are applied by a message selector, the original destination is
+ * matched on the browsed messages.
+ * <p/>
+ * A browser is served at most messageBatchSizeForBrowserSubscriptions messages, hence the queue is browsed again
+ * for every chunk. Messages handled by a chunk leave the queue, so the next browse reaches the following ones.
+ * Messages that do not match stay at the head of the queue, hence the job fails if a browser is served a whole
+ * batch of messages none of which match, since the messages behind them can not be reached, instead of reporting
+ * them as done.
+ * Chunks are paused between, so that the broker keeps serving clients while the job runs.
+ */
+public class DeadLetterChannelJob extends QueueManagerJob {
+
+    public static final String RESTORE_JOB_TYPE = "DLC Restore";
+    public static final String DELETE_JOB_TYPE = "DLC Delete";
+
+    /**
+     * System property for the number of messages restored or deleted at a time
+     */
+    public static final String CHUNK_SIZE_PROPERTY = "andes.admin.dlc.chunkSize";
+
+    /**
+     * System property for the pause in milliseconds between two chunks
+     */
+    public static final String CHUNK_DELAY_PROPERTY = "andes.admin.dlc.chunkDelay";
+
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final int DEFAULT_CHUNK_DELAY = 100;
+
+    private final String connectionUserName;
+    private final String accessKey;
+    private final DeadLetterFilter filter;
+    private final boolean delete;
+    private final String destination;
+    private final int chunkSize;
+    private final long chunkDelay;
+
+    /**
+     * Number of messages the browser was served while collecting the last chunk
+     */
+    private int browsedCount;
+
+    /**
+     * @param deadLetterQueueName Dead Letter Queue of the tenant
+     * @param owner               User starting the job
+     * @param connectionUserName  User name escaped to be used in an AMQP URL
+     * @param accessKey           Access key of the user
+     * @param filter              Messages to restore or delete
+     * @param delete              true to delete the messages, false to restore them
+     * @param destination         Destination to restore the messages to, or null to restore them to their original
+     *                            destinations
+     */
+    public DeadLetterChannelJob(String deadLetterQueueName, String owner, String connectionUserName,
+                                String accessKey, DeadLetterFilter filter, boolean delete, String destination) {
+        super(delete ? DELETE_JOB_TYPE : RESTORE_JOB_TYPE, deadLetterQueueName, owner);
+        this.connectionUserName = connectionUserName;
+        this.accessKey = accessKey;
+        this.filter = filter;
+        this.delete = delete;
+        this.destination = destination;
+        this.chunkSize = Math.max(1, CommonsUtil.getIntProperty(CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE));
+        this.chunkDelay = Math.max(0, CommonsUtil.getIntProperty(CHUNK_DELAY_PROPERTY, DEFAULT_CHUNK_DELAY));
+    }
+
+    /**
+     * Build the message selector for the conditions of a filter other than the original destination
+     *
+     * @param filter Filter
+     * @return Message selector, or null if there are no such conditions
+     */
+    private static String getMessageSelector(DeadLetterFilter filter) {
+        List<String> conditions = new ArrayList<String>();
+        if (filter.getFromTime() > 0) {
+            conditions.add("JMSTimestamp >= " + filter.getFromTime());
+        }
+        if (filter.getToTime() > 0) {
+            conditions.add("JMSTimestamp <= " + filter.getToTime());
+        }
+        if (!isEmpty(filter.getJmsType())) {
+            conditions.add("JMSType = '" + filter.getJmsType().replace("'", "''") + "'");
+        }
+        if (!isEmpty(filter.getPropertySelector())) {
+            conditions.add("(" + filter.getPropertySelector() + ")");
+        }
+
+        if (conditions.isEmpty()) {
+            return null;
+        }
+        StringBuilder selector = new StringBuilder();
+        for (String condition : conditions) {
+            if (selector.length() > 0) {
+                selector.append(" AND ");
+            }
+            selector.append(condition);
+        }
+        return selector.toString();
+    }
+
+    @Override
+    protected void execute() throws QueueManagerException {
+        String messageSelector = getMessageSelector(filter);
+        Set<String> previousChunk = new HashSet<String>();
+        while (!isCancelRequested()) {
+            List<String> chunk = collectChunk(messageSelector);
+            if (chunk.isEmpty()) {
+                checkRemainingMessages();
+                return;
+            }
+            for (String messageID : chunk) {
+                if (previousChunk.contains(messageID)) {
+                    // Browsing again would find the same messages over and over
+                    throw new QueueManagerException("Message " + messageID + " is still in " + getQueueName() +
+                            " after it was " + (delete ? "deleted." : "restored."));
+                }
+            }
+
+            String[] messageIDs = chunk.toArray(new String[chunk.size()]);
+            QueueManagementBeans queueManagementBeans = QueueManagementBeans.getInstance();
+            if (delete) {
+                queueManagementBeans.deleteMessagesFromDeadLetterQueue(messageIDs, getQueueName());
+            } else if (null == destination) {
+                queueManagementBeans.restoreMessagesFromDeadLetterQueue(messageIDs, getQueueName());
+            } else {
+                queueManagementBeans.restoreMessagesFromDeadLetterQueueWithDifferentDestination(messageIDs,
+                        destination, getQueueName());
+            }
+            addProcessedCount(messageIDs.length);
+            previousChunk = new HashSet<String>(chunk);
+
+            if (chunkDelay > 0) {
+                try {
+                    Thread.sleep(chunkDelay);
+                } catch (InterruptedException e) {
+                    // Shutting down
+                    Thread.currentThread().interrupt();
+                    cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * Make sure that no messages were left beyond the reach of the browser, once a browse found no matching
+     * message. Messages beyond the first messageBatchSizeForBrowserSubscriptions can not be browsed, and messages
+     * not matching the filter never leave the queue, so the job can not get past a whole batch of them. A browser
+     * served less than a whole batch has seen every message left.
+     *
+     * @throws QueueManagerException if the browser was served a whole batch of messages
+     */
+    private void checkRemainingMessages() throws QueueManagerException {
+        int browseLimit = ClusterResourceHolder.getInstance().getClusterConfiguration()
+                .getMessageBatchSizeForBrowserSubscriptions();
+        if (browsedCount >= browseLimit) {
+            throw new QueueManagerException("None of the first " + browsedCount + " messages in " + getQueueName() +
+                    " match the filter, and the messages behind them can not be browsed. Please handle the " +
+                    "messages at the head of the queue first, or increase messageBatchSizeForBrowserSubscriptions " +
+                    "in andes-config.xml");
+        }
+    }
+
+    /**
+     * Browse the queue for the IDs of the next chunk of messages matching the filter
+     */
+    private List<String> collectChunk(String messageSelector) throws QueueManagerException {
+        JMSConnectionPool connectionPool = JMSConnectionPool.getInstance();
+        JMSConnectionPool.PooledSession pooledSession;
+        try {
+            pooledSession = connectionPool.borrowSession(connectionUserName, accessKey);
+        } catch (NamingException e) {
+            throw new QueueManagerException("Unable to connect to the broker.", e);
+        } catch (JMSException e) {
+            throw new QueueManagerException("Unable to connect to the broker.", e);
+        }
+
+        List<String> chunk = new ArrayList<String>();
+        browsedCount = 0;
+        QueueBrowser browser = null;
+        boolean sessionFailed = true;
+        try {
+            QueueSession session = pooledSession.getSession();
+            browser = session.createBrowser(session.createQueue(getQueueName()), messageSelector);
+            Enumeration queueContentsEnu = browser.getEnumeration();
+            while ((chunk.size() < chunkSize) && queueContentsEnu.hasMoreElements()) {
+                Message queueMessage = (Message) queueContentsEnu.nextElement();
+                browsedCount++;
+                if (isEmpty(filter.getOriginalDestination())
+                        || filter.getOriginalDestination().equals(Utils.getDlcMessageDestination(queueMessage))) {
+                    chunk.add(queueMessage.getJMSMessageID());
+                }
+            }
+            browser.close();
+            browser = null;
+            sessionFailed = false;
+            return chunk;
+        } catch (JMSException e) {
+            throw new QueueManagerException("Unable to browse queue " + getQueueName() + ".", e);
+        } finally {
+            if (null != browser) {
+                try {
+                    browser.close();
+                } catch (JMSException e) {
+                    sessionFailed = true;
+                }
+            }
+            if (sessionFailed) {
+                connectionPool.invalidateSession(pooledSession);
+            } else {
+                connectionPool.returnSession(pooledSession);
+            }
+        }
+    }
+
+    private static boolean isEmpty(String value) {
+        return (null == value) || value.trim().isEmpty();
+    }
+}
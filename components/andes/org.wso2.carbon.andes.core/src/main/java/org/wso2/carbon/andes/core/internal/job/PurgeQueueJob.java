@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.core.internal.job;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.andes.core.QueueManagerException;
+import org.wso2.carbon.andes.core.internal.registry.QueueManagementBeans;
+
+/**
+ * Deletes all messages of a queue inside the broker, without moving message content out of the message store.
+ * <p/>
+ * The broker deletes the messages in a single management operation, hence the job can only be cancelled before
+ * the operation starts. Progress is read from the message count of the queue while the broker deletes.
+ */
+public class PurgeQueueJob extends QueueManagerJob {
+
+    private static final Log log = LogFactory.getLog(PurgeQueueJob.class);
+
+    public static final String JOB_TYPE = "Purge";
+
+    private static final String QUEUE_MESSAGE_PATTERN = "queue";
+
+    private volatile long initialMessageCount;
+
+    /**
+     * @param queueName Queue to purge
+     * @param owner     User purging
+     */
+    public PurgeQueueJob(String queueName, String owner) {
+        super(JOB_TYPE, queueName, owner);
+    }
+
+    @Override
+    protected void execute() throws QueueManagerException {
+        QueueManagementBeans queueManagementBeans = QueueManagementBeans.getInstance();
+        initialMessageCount = queueManagementBeans.getMessageCount(getQueueName(), QUEUE_MESSAGE_PATTERN);
+        setTotalCount(initialMessageCount);
+        setCancellable(false);
+        if (isCancelRequested()) {
+            return;
+        }
+
+        queueManagementBeans.purgeMessagesFromQueue(getQueueName());
+        setProcessedCount(initialMessageCount);
+    }
+
+    @Override
+    protected void refreshProcessedCount() {
+        try {
+            long messageCount =
+                    QueueManagementBeans.getInstance().getMessageCount(getQueueName(), QUEUE_MESSAGE_PATTERN);
+            setProcessedCount(Math.max(0, initialMessageCount - messageCount));
+        } catch (QueueManagerException e) {
+            log.debug("Could not read message count of queue " + getQueueName() + " while purging it.", e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.core.internal.job;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.andes.core.QueueManagerException;
+import org.wso2.carbon.andes.core.types.JobStatus;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A queue management task run in the background by QueueManagerJobs, so that an admin request starting it
+ * returns at once and the progress is polled afterwards. A job checks whether it is cancelled between chunks of
+ * work, hence cancelling it stops it after the chunk in progress.
+ */
+public abstract class QueueManagerJob implements Runnable {
+
+    private static final Log log = LogFactory.getLog(QueueManagerJob.class);
+
+    public static final String STATE_QUEUED = "QUEUED";
+    public static final String STATE_RUNNING = "RUNNING";
+    public static final String STATE_COMPLETED = "COMPLETED";
+    public static final String STATE_CANCELLED = "CANCELLED";
+    public static final String STATE_FAILED = "FAILED";
+
+    private final String id = UUID.randomUUID().toString();
+    private final String type;
+    private final String queueName;
+    private final String owner;
+    private final AtomicLong processedCount = new AtomicLong();
+    private volatile long totalCount = -1;
+    private volatile String state = STATE_QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile boolean cancellable = true;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile String errorMessage;
+
+    /**
+     * @param type      Type of the job, shown with its status
+     * @param queueName Queue the job works on
+     * @param owner     User starting the job. Only the owner can read the status of the job or cancel it.
+     */
+    protected QueueManagerJob(String type, String queueName, String owner) {
+        this.type = type;
+        this.queueName = queueName;
+        this.owner = owner;
+    }
+
+    public final void run() {
+        if (cancelRequested) {
+            finish(STATE_CANCELLED);
+            return;
+        }
+
+        startTime = System.currentTimeMillis();
+        state = STATE_RUNNING;
+        try {
+            execute();
+            finish(cancelRequested ? STATE_CANCELLED : STATE_COMPLETED);
+        } catch (QueueManagerException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Do the work of the job, checking isCancelRequested() between chunks of work
+     *
+     * @throws QueueManagerException if the job failed
+     */
+    protected abstract void execute() throws QueueManagerException;
+
+    /**
+     * Request the job to stop after the chunk of work in progress
+     */
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    protected boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * Mark whether the job can still be cancelled, for a job whose work can not be stopped once started
+     */
+    protected void setCancellable(boolean cancellable) {
+        this.cancellable = cancellable;
+    }
+
+    /**
+     * @return true if the job is not finished and cancelling it would still stop it
+     */
+    public boolean isCancellable() {
+        return cancellable && (STATE_QUEUED.equals(state) || STATE_RUNNING.equals(state));
+    }
+
+    /**
+     * Bring the processed count up to date before the status is read, for a job that can not count its progress
+     * while doing its work
+     */
+    protected void refreshProcessedCount() {
+    }
+
+    protected void addProcessedCount(long count) {
+        processedCount.addAndGet(count);
+    }
+
+    protected void setProcessedCount(long count) {
+        processedCount.set(count);
+    }
+
+    protected void setTotalCount(long totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    /**
+     * @return Time the job finished in milliseconds since epoch, or 0 if it is not finished yet
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public JobStatus getStatus() {
+        if (STATE_RUNNING.equals(state)) {
+            refreshProcessedCount();
+        }
+
+        JobStatus status = new JobStatus();
+        status.setJobId(id);
+        status.setJobType(type);
+        status.setQueueName(queueName);
+        status.setState(state);
+        status.setProcessedCount(processedCount.get());
+        status.setTotalCount(totalCount);
+        status.setStartTime(startTime);
+        status.setEndTime(endTime);
+        status.setErrorMessage(errorMessage);
+        status.setCancellable(isCancellable());
+        if (startTime > 0) {
+            long elapsedTime = ((endTime > 0) ? endTime : System.currentTimeMillis()) - startTime;
+            status.setMessagesPerSecond((elapsedTime > 0) ? (status.getProcessedCount() * 1000D / elapsedTime) : 0);
+        }
+        return status;
+    }
+
+    private void fail(Exception e) {
+        log.error(type + " job on queue " + queueName + " failed after processing " + processedCount.get() +
+                " messages.", e);
+        errorMessage = e.getMessage();
+        finish(STATE_FAILED);
+    }
+
+    private void finish(String finalState) {
+        endTime = System.currentTimeMillis();
+        state = finalState;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.core.internal.job;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.core.QueueManagerException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs queue management jobs on a fixed number of background threads and keeps them by ID, so that their status
+ * can be read until a while after they finished. Jobs started while all threads are busy wait in the QUEUED state.
+ */
+public class QueueManagerJobs {
+
+    /**
+     * System property for the number of jobs run at a time
+     */
+    public static final String THREADS_PROPERTY = "andes.admin.job.threads";
+
+    /**
+     * System property for the time in seconds the status of a finished job is kept
+     */
+    public static final String TIME_TO_LIVE_PROPERTY = "andes.admin.job.timeToLive";
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_TIME_TO_LIVE = 600;
+
+    private static QueueManagerJobs instance = new QueueManagerJobs();
+
+    private final int threads;
+    private final long timeToLive;
+    private final ConcurrentMap<String, QueueManagerJob> jobs = new ConcurrentHashMap<String, QueueManagerJob>();
+    private ExecutorService executor;
+
+    private QueueManagerJobs() {
+        threads = Math.max(1, CommonsUtil.getIntProperty(THREADS_PROPERTY, DEFAULT_THREADS));
+        timeToLive = CommonsUtil.getIntProperty(TIME_TO_LIVE_PROPERTY, DEFAULT_TIME_TO_LIVE) * 1000L;
+    }
+
+    public static QueueManagerJobs getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start running jobs
+     */
+    public synchronized void start() {
+        if (null != executor) {
+            return;
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AndesQueueManagerJob-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Cancel all jobs and stop running jobs
+     */
+    public synchronized void shutdown() {
+        for (QueueManagerJob job : jobs.values()) {
+            job.cancel();
+        }
+        if (null != executor) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Run a job in the background
+     *
+     * @param job Job
+     * @return ID of the job
+     * @throws QueueManagerException if jobs are not running
+     */
+    public synchronized String submit(QueueManagerJob job) throws QueueManagerException {
+        removeExpired();
+        if (null == executor) {
+            throw new QueueManagerException("Queue management jobs are not running.");
+        }
+
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new QueueManagerException("Unable to start " + job.getType() + " job.", e);
+        }
+        return job.getId();
+    }
+
+    /**
+     * Run a job in the background, unless a job of the same type is waiting or running on the same queue
+     *
+     * @param job Job
+     * @return ID of the job
+     * @throws QueueManagerException if such a job is not finished yet, or jobs are not running
+     */
+    public synchronized String submitExclusive(QueueManagerJob job) throws QueueManagerException {
+        for (QueueManagerJob existingJob : jobs.values()) {
+            if (existingJob.getClass().equals(job.getClass()) && existingJob.getQueueName().equals(job.getQueueName())
+                    && (0 == existingJob.getEndTime())) {
+                throw new QueueManagerException("A " + existingJob.getType() + " job is already running on queue " +
+                        job.getQueueName() + ".");
+            }
+        }
+        return submit(job);
+    }
+
+    /**
+     * Get a job started by a user
+     *
+     * @param jobId ID of the job
+     * @param owner User who started the job
+     * @return Job
+     * @throws QueueManagerException if there is no such job of the user, or it finished long ago
+     */
+    public QueueManagerJob getJob(String jobId, String owner) throws QueueManagerException {
+        removeExpired();
+        QueueManagerJob job = (null != jobId) ? jobs.get(jobId) : null;
+        if ((null == job) || !job.getOwner().equals(owner)) {
+            throw new QueueManagerException("Job " + jobId + " is not found.");
+        }
+        return job;
+    }
+
+    private void removeExpired() {
+        long expiredBefore = System.currentTimeMillis() - timeToLive;
+        for (Map.Entry<String, QueueManagerJob> entry : jobs.entrySet()) {
+            long endTime = entry.getValue().getEndTime();
+            if ((endTime > 0) && (endTime < expiredBefore)) {
+                jobs.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
@@ -17,6 +17,8 @@
  */
 package org.wso2.carbon.andes.core.internal.registry;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.andes.core.QueueManagerException;
 import org.wso2.carbon.andes.core.internal.util.QueueManagementConstants;
 import org.wso2.carbon.andes.core.types.Queue;
@@ -24,13 +26,29 @@ import org.wso2.carbon.andes.core.types.Queue;
 import javax.management.*;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class QueueManagementBeans {
 
+    private static final Log log = LogFactory.getLog(QueueManagementBeans.class);
+
     public static QueueManagementBeans self;
 
     public static final String DIRECT_EXCHANGE = "amq.direct";
 
+    private static final String QUEUE_MANAGEMENT_INFORMATION_MBEAN =
+            "org.wso2.andes:type=QueueManagementInformation,name=QueueManagementInformation";
+    private static final String ALL_QUEUE_COUNTS_OPERATION = "getAllQueueCounts";
+
+    private ObjectName queueManagementInformationName;
+
+    /**
+     * Whether the broker offers message counts of all queues in one call. Older brokers do not.
+     */
+    private volatile boolean allQueueCountsSupported = true;
+
     public static QueueManagementBeans getInstance() {
         if (self == null) {
             self = new QueueManagementBeans();
@@ -78,6 +96,115 @@ public class QueueManagementBeans {
 
     public ArrayList<Queue> getAllQueues() throws QueueManagerException {
         ArrayList<Queue> queueDetailsList = new ArrayList<Queue>();
+        for (String queueName : getAllQueueNames()) {
+            Queue queue = new Queue();
+            queue.setQueueName(queueName);
+            queueDetailsList.add(queue);
+        }
+        setMessageCounts(queueDetailsList);
+        return queueDetailsList;
+    }
+
+    /**
+     * Set message counts of queues, reading the counts of all of them at once
+     *
+     * @param queues Queues to set the message count of
+     * @throws QueueManagerException
+     */
+    public void setMessageCounts(List<Queue> queues) throws QueueManagerException {
+        String[] queueNames = new String[queues.size()];
+        for (int i = 0; i < queueNames.length; i++) {
+            queueNames[i] = queues.get(i).getQueueName();
+        }
+
+        long[] messageCounts = getMessageCounts(queueNames);
+        for (int i = 0; i < messageCounts.length; i++) {
+            queues.get(i).setMessageCount(messageCounts[i]);
+        }
+    }
+
+    /**
+     * Get message counts of a set of queues. The counts of all queues are read from the broker in one call if the
+     * broker supports it, and one by one otherwise.
+     *
+     * @param queueNames Names of the queues
+     * @return Message counts, in the order of the queue names
+     * @throws QueueManagerException
+     */
+    public long[] getMessageCounts(String[] queueNames) throws QueueManagerException {
+        long[] messageCounts = new long[queueNames.length];
+        if (0 == queueNames.length) {
+            return messageCounts;
+        }
+
+        Map<String, Long> allQueueCounts = getAllQueueCounts();
+        for (int i = 0; i < queueNames.length; i++) {
+            if (null != allQueueCounts) {
+                Long messageCount = allQueueCounts.get(queueNames[i]);
+                messageCounts[i] = (null != messageCount) ? messageCount : 0;
+            } else {
+                messageCounts[i] = getMessageCount(queueNames[i], "queue");
+            }
+        }
+        return messageCounts;
+    }
+
+    /**
+     * Get message counts of all queues in one call to the broker. Queues without messages may be left out.
+     *
+     * @return Message counts by queue name, or null if the broker does not support it
+     * @throws QueueManagerException
+     */
+    public Map<String, Long> getAllQueueCounts() throws QueueManagerException {
+        if (!allQueueCountsSupported) {
+            return null;
+        }
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            Object result = mBeanServer.invoke(getQueueManagementInformationName(), ALL_QUEUE_COUNTS_OPERATION,
+                    new Object[0], new String[0]);
+
+            Map<String, Long> allQueueCounts = new HashMap<String, Long>();
+            if (result instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+                    if (entry.getValue() instanceof Number) {
+                        allQueueCounts.put(String.valueOf(entry.getKey()), ((Number) entry.getValue()).longValue());
+                    }
+                }
+            }
+            return allQueueCounts;
+
+        } catch (ReflectionException e) {
+            // The operation does not exist in this broker
+            log.info("Broker does not provide message counts of all queues at once. Reading them one by one.");
+            allQueueCountsSupported = false;
+            return null;
+        } catch (MBeanException e) {
+            throw new QueueManagerException("Cannot access mBean operations for message counts.", e);
+        } catch (InstanceNotFoundException e) {
+            throw new QueueManagerException("Cannot access mBean operations for message counts.", e);
+        }
+    }
+
+    private ObjectName getQueueManagementInformationName() throws QueueManagerException {
+        if (null == queueManagementInformationName) {
+            try {
+                queueManagementInformationName = new ObjectName(QUEUE_MANAGEMENT_INFORMATION_MBEAN);
+            } catch (MalformedObjectNameException e) {
+                throw new QueueManagerException("Cannot access mBean operations of queues.", e);
+            }
+        }
+        return queueManagementInformationName;
+    }
+
+    /**
+     * Get names of all queues in the broker, of all tenants
+     *
+     * @return Queue names
+     * @throws QueueManagerException
+     */
+    public String[] getAllQueueNames() throws QueueManagerException {
         MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
         try {
             ObjectName objectName =
@@ -85,17 +212,9 @@ public class QueueManagementBeans {
             Object result = mBeanServer.getAttribute(objectName, QueueManagementConstants.QUEUES_MBEAN_ATTRIBUTE);
 
             if (result != null) {
-                String[] queueNamesList = (String[]) result;
-
-                for (String queueName : queueNamesList) {
-                    Queue queue = new Queue();
-                    queue.setQueueName(queueName);
-                    queue.setMessageCount(getMessageCount(queueName, "queue"));
-                    queueDetailsList.add(queue);
-                }
-
+                return (String[]) result;
             }
-            return queueDetailsList;
+            return new String[0];
 
         } catch (MalformedObjectNameException e) {
             throw new QueueManagerException("Cannot access mBean operations to get queue list.", e);
@@ -114,8 +233,7 @@ public class QueueManagementBeans {
         long messageCount = 0;
         MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
         try {
-            ObjectName objectName =
-                    new ObjectName("org.wso2.andes:type=QueueManagementInformation,name=QueueManagementInformation");
+            ObjectName objectName = getQueueManagementInformationName();
 
             String operationName = "getMessageCount";
             Object[] parameters = new Object[]{queueName, msgPattern};
@@ -131,8 +249,6 @@ public class QueueManagementBeans {
 
             return messageCount;
 
-        } catch (MalformedObjectNameException e) {
-            throw new QueueManagerException("Cannot access mBean operations for message count:" + queueName, e);
         } catch (ReflectionException e) {
             throw new QueueManagerException("Cannot access mBean operations for message count:" + queueName, e);
         } catch (MBeanException e) {
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.core.internal.registry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.core.QueueManagerException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples message counts of all queues on a background thread, so that admin requests for message counts are
+ * served from the last snapshot instead of querying the message store each time.
+ * <p/>
+ * When message counts are shown in the console by default (viewMessageCounts in andes-config.xml), the sampler
+ * refreshes the snapshot continuously. The interval between two samples starts at the minimum interval and is
+ * doubled, up to the maximum interval, every time a sample finds no count changed. Otherwise counts are only
+ * sampled on demand. Either way, a request finding the snapshot older than the minimum interval is still served
+ * from it and triggers a refresh in the background, so that the message store is queried at most once per
+ * minimum interval however many requests come in. A snapshot older than the maximum interval, as left behind by
+ * on demand sampling while nobody asked, is not served at all: the request reads counts from the broker instead.
+ * Samples also feed the QueueMessageRateHistory. While it is enabled, counts are sampled continuously every second
+ * without backing off, so that its second resolution history holds an actual sample per second.
+ * <p/>
+ * A sample reads the counts of all queues in one call to the broker. A broker that can only count queues one by
+ * one would turn every sample into a query per queue, hence sampling stops for good on such a broker, and counts
+ * are read for the requested queues only.
+ */
+public class QueueMessageCountSampler {
+
+    private static final Log log = LogFactory.getLog(QueueMessageCountSampler.class);
+
+    /**
+     * System property to enable/disable the sampler
+     */
+    public static final String ENABLED_PROPERTY = "andes.messageCount.sampler.enabled";
+
+    /**
+     * System property for the minimum interval in seconds between two samples
+     */
+    public static final String MIN_INTERVAL_PROPERTY = "andes.messageCount.sampler.minInterval";
+
+    /**
+     * System property for the maximum interval in seconds between two samples of idle queues
+     */
+    public static final String MAX_INTERVAL_PROPERTY = "andes.messageCount.sampler.maxInterval";
+
+    private static final int DEFAULT_MIN_INTERVAL = 5;
+    private static final int DEFAULT_MAX_INTERVAL = 60;
+
+    private static QueueMessageCountSampler instance = new QueueMessageCountSampler();
+
+    private final boolean enabled;
+    private final long minInterval;
+    private final long maxInterval;
+
+    /**
+     * Whether the snapshot is refreshed continuously, or only on demand
+     */
+    private boolean continuous;
+
+    /**
+     * Whether samples feed the rate history, which fixes the interval at its second resolution
+     */
+    private boolean historyEnabled;
+    private long interval;
+    private volatile MessageCountSnapshot snapshot;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> nextSample;
+
+    private final Runnable sampleTask = new Runnable() {
+        public void run() {
+            try {
+                sample();
+            } catch (RuntimeException e) {
+                log.error("Error while sampling message counts of queues.", e);
+            }
+        }
+    };
+
+    private QueueMessageCountSampler() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, true);
+        minInterval = CommonsUtil.getIntProperty(MIN_INTERVAL_PROPERTY, DEFAULT_MIN_INTERVAL) * 1000L;
+        maxInterval = Math.max(minInterval,
+                CommonsUtil.getIntProperty(MAX_INTERVAL_PROPERTY, DEFAULT_MAX_INTERVAL) * 1000L);
+        interval = minInterval;
+    }
+
+    public static QueueMessageCountSampler getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start sampling
+     *
+     * @param continuous true to refresh counts continuously, false to refresh them only on demand
+     */
+    public synchronized void start(boolean continuous) {
+        if (!enabled || null != scheduler) {
+            return;
+        }
+
+        historyEnabled = QueueMessageRateHistory.getInstance().isEnabled();
+        this.continuous = continuous || historyEnabled;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AndesMessageCountSampler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (this.continuous) {
+            nextSample = scheduler.schedule(sampleTask, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return true if counts are sampled, false if sampling is disabled, stopped, or not supported by the broker
+     */
+    public synchronized boolean isSampling() {
+        return null != scheduler;
+    }
+
+    /**
+     * Stop sampling and drop the snapshot
+     */
+    public synchronized void shutdown() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            nextSample = null;
+        }
+        snapshot = null;
+        QueueMessageRateHistory.getInstance().clear();
+    }
+
+    /**
+     * Get the message count of a queue from the last snapshot. Triggers a refresh in the background if the
+     * snapshot is older than the minimum interval.
+     *
+     * @param queueName Name of the queue
+     * @return Message count, or null if there is no snapshot recent enough to serve it from
+     */
+    public Long getMessageCount(String queueName) {
+        MessageCountSnapshot currentSnapshot = getSnapshot();
+        if (null == currentSnapshot) {
+            return null;
+        }
+
+        return currentSnapshot.getMessageCount(queueName);
+    }
+
+    /**
+     * Get the age of the snapshot message counts are served from
+     *
+     * @return Age in milliseconds, or -1 if there is no snapshot recent enough to serve counts from
+     */
+    public long getSnapshotAge() {
+        MessageCountSnapshot currentSnapshot = snapshot;
+        long age = (null != currentSnapshot) ? currentSnapshot.getAge() : -1;
+        return (age > getMaxSnapshotAge()) ? -1 : age;
+    }
+
+    /**
+     * Continuous sampling keeps the snapshot within the maximum interval, plus the time a sample takes
+     */
+    private long getMaxSnapshotAge() {
+        return maxInterval + minInterval;
+    }
+
+    /**
+     * Get the last snapshot of message counts of all queues. Triggers a refresh in the background if the snapshot
+     * is older than the minimum interval.
+     *
+     * @return Snapshot, or null if there is no snapshot, or it is older than the maximum interval
+     */
+    public MessageCountSnapshot getSnapshot() {
+        if (!enabled) {
+            return null;
+        }
+
+        MessageCountSnapshot currentSnapshot = snapshot;
+        long age = (null != currentSnapshot) ? (System.currentTimeMillis() - currentSnapshot.timestamp) : -1;
+        if ((null == currentSnapshot) || (age >= minInterval)) {
+            requestSample();
+        }
+        if ((null == currentSnapshot) || (age > getMaxSnapshotAge())) {
+            return null;
+        }
+        return currentSnapshot;
+    }
+
+    /**
+     * Sample as soon as possible, unless a sample is running or due within the minimum interval
+     */
+    private synchronized void requestSample() {
+        if (null == scheduler) {
+            return;
+        }
+
+        if ((null != nextSample) && !nextSample.isDone()) {
+            if (nextSample.getDelay(TimeUnit.MILLISECONDS) <= minInterval) {
+                return;
+            }
+            nextSample.cancel(false);
+        }
+        nextSample = scheduler.schedule(sampleTask, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private void sample() {
+        try {
+            QueueManagementBeans queueManagementBeans = QueueManagementBeans.getInstance();
+            Map<String, Long> allQueueCounts = queueManagementBeans.getAllQueueCounts();
+            if (null == allQueueCounts) {
+                log.warn("Broker does not provide message counts of all queues at once. Message counts will not be " +
+                        "sampled" + (historyEnabled ? " and message rate history will not be kept" : "") +
+                        ". Counts are read from the broker for the requested queues only.");
+                shutdown();
+                return;
+            }
+
+            String[] queueNames = queueManagementBeans.getAllQueueNames();
+            Map<String, Long> counts = new HashMap<String, Long>(queueNames.length * 2);
+            for (String queueName : queueNames) {
+                Long messageCount = allQueueCounts.get(queueName);
+                counts.put(queueName, (null != messageCount) ? messageCount : 0L);
+            }
+
+            MessageCountSnapshot previousSnapshot = snapshot;
+            snapshot = new MessageCountSnapshot(Collections.unmodifiableMap(counts), System.currentTimeMillis());
+            QueueMessageRateHistory.getInstance().record(snapshot.counts, snapshot.timestamp);
+
+            // Sample active queues often and back off while nothing changes
+            if (historyEnabled) {
+                interval = QueueMessageRateHistory.SECOND_RESOLUTION * 1000L;
+            } else if ((null != previousSnapshot) && previousSnapshot.counts.equals(counts)) {
+                interval = Math.min(interval * 2, maxInterval);
+            } else {
+                interval = minInterval;
+            }
+        } catch (QueueManagerException e) {
+            log.warn("Could not sample message counts of queues. Serving the previous counts.", e);
+        } finally {
+            scheduleNextSample();
+        }
+    }
+
+    private synchronized void scheduleNextSample() {
+        if ((null != scheduler) && continuous) {
+            nextSample = scheduler.schedule(sampleTask, interval, TimeUnit.MILLISECONDS);
+        } else {
+            nextSample = null;
+        }
+    }
+
+    /**
+     * Message counts of all queues at a point of time
+     */
+    public static class MessageCountSnapshot {
+
+        private final Map<String, Long> counts;
+        private final long timestamp;
+
+        private MessageCountSnapshot(Map<String, Long> counts, long timestamp) {
+            this.counts = counts;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * @param queueName Name of the queue
+         * @return Message count of the queue, 0 if the queue was not there when sampled
+         */
+        public long getMessageCount(String queueName) {
+            Long messageCount = counts.get(queueName);
+            return (null != messageCount) ? messageCount : 0;
+        }
+
+        /**
+         * @return Age of the snapshot in milliseconds
+         */
+        public long getAge() {
+            return System.currentTimeMillis() - timestamp;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.core.internal.registry;
+
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.core.types.QueueRateHistory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the enqueue rate, dequeue rate and depth history of each queue, fed by the message counts sampled by the
+ * QueueMessageCountSampler. History is kept at second resolution for the last 10 minutes and at minute
+ * resolution for the last 24 hours, in fixed size ring buffers allocated once per queue (about 32KB), so that
+ * memory used per queue stays flat however long the queue lives. The sampler samples every second while history
+ * is enabled, so that the second resolution is actually achieved. History is kept for at most a configured number
+ * of queues, and never for temporary queues, which come and go with their connections.
+ * <p/>
+ * The broker exposes message counts of queues only, hence rates are derived from the change of the count
+ * between two samples: a growing count is taken as enqueues and a shrinking count as dequeues. These are net
+ * rates, and a change sampled over several seconds is spread evenly over the slots it covers.
+ */
+public class QueueMessageRateHistory {
+
+    /**
+     * System property to enable/disable keeping rate history. Message counts are sampled continuously while
+     * enabled.
+     */
+    public static final String ENABLED_PROPERTY = "andes.messageCount.history.enabled";
+
+    /**
+     * System property for the maximum number of queues history is kept for
+     */
+    public static final String MAX_QUEUES_PROPERTY = "andes.messageCount.history.maxQueues";
+
+    /**
+     * Resolution in seconds of the short term history
+     */
+    public static final int SECOND_RESOLUTION = 1;
+
+    /**
+     * Resolution in seconds of the long term history
+     */
+    public static final int MINUTE_RESOLUTION = 60;
+
+    private static final int SECOND_SLOTS = 600;
+    private static final int MINUTE_SLOTS = 1440;
+    private static final int DEFAULT_MAX_QUEUES = 100;
+    private static final String TEMPORARY_QUEUE_PREFIX = "tmp_";
+
+    private static QueueMessageRateHistory instance = new QueueMessageRateHistory();
+
+    private final boolean enabled;
+    private final int maxQueues;
+
+    /**
+     * History by queue name
+     */
+    private final ConcurrentMap<String, QueueHistory> queueHistories = new ConcurrentHashMap<String, QueueHistory>();
+
+    private QueueMessageRateHistory() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, false);
+        maxQueues = CommonsUtil.getIntProperty(MAX_QUEUES_PROPERTY, DEFAULT_MAX_QUEUES);
+    }
+
+    public static QueueMessageRateHistory getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record sampled message counts of all queues. Drops the history of queues that no longer exist. Queues
+     * beyond the maximum number of queues get no history until others are deleted.
+     *
+     * @param counts    Message counts by queue name
+     * @param timestamp Time the counts were sampled at
+     */
+    public void record(Map<String, Long> counts, long timestamp) {
+        if (!enabled) {
+            return;
+        }
+
+        queueHistories.keySet().retainAll(counts.keySet());
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            QueueHistory queueHistory = queueHistories.get(entry.getKey());
+            if (null == queueHistory) {
+                if ((queueHistories.size() >= maxQueues) || entry.getKey().startsWith(TEMPORARY_QUEUE_PREFIX)) {
+                    continue;
+                }
+                queueHistory = new QueueHistory();
+                queueHistories.put(entry.getKey(), queueHistory);
+            }
+            queueHistory.record(entry.getValue(), timestamp);
+        }
+    }
+
+    /**
+     * Get the history of a queue
+     *
+     * @param queueName  Name of the queue
+     * @param resolution Resolution in seconds, SECOND_RESOLUTION or MINUTE_RESOLUTION
+     * @return History, or null if there is no history of the queue
+     */
+    public QueueRateHistory getHistory(String queueName, int resolution) {
+        QueueHistory queueHistory = queueHistories.get(queueName);
+        if (null == queueHistory) {
+            return null;
+        }
+
+        QueueRateHistory history = queueHistory.getHistory(resolution);
+        history.setQueueName(queueName);
+        return history;
+    }
+
+    /**
+     * Drop all history
+     */
+    public void clear() {
+        queueHistories.clear();
+    }
+
+    /**
+     * History of a queue
+     */
+    private static class QueueHistory {
+
+        private final HistoryRing seconds = new HistoryRing(SECOND_RESOLUTION * 1000L, SECOND_SLOTS);
+        private final HistoryRing minutes = new HistoryRing(MINUTE_RESOLUTION * 1000L, MINUTE_SLOTS);
+        private long lastCount = -1;
+        private long lastTimestamp;
+
+        private synchronized void record(long count, long timestamp) {
+            if ((lastCount >= 0) && (timestamp > lastTimestamp)) {
+                long change = count - lastCount;
+                long enqueued = Math.max(change, 0);
+                long dequeued = Math.max(-change, 0);
+                seconds.add(lastTimestamp, timestamp, enqueued, dequeued, count);
+                minutes.add(lastTimestamp, timestamp, enqueued, dequeued, count);
+            }
+            lastCount = count;
+            lastTimestamp = timestamp;
+        }
+
+        private synchronized QueueRateHistory getHistory(int resolution) {
+            return (MINUTE_RESOLUTION == resolution) ? minutes.toHistory() : seconds.toHistory();
+        }
+    }
+
+    /**
+     * Fixed number of consecutive time slots, each holding the messages enqueued and dequeued within the slot
+     * and the last depth sampled within it. The oldest slot is reused once time moves past the newest slot.
+     */
+    private static class HistoryRing {
+
+        private final long slotLength;
+        private final float[] enqueued;
+        private final float[] dequeued;
+        private final long[] depths;
+
+        /**
+         * Number of the newest slot, counted in slot lengths since epoch
+         */
+        private long newestSlot = -1;
+
+        private HistoryRing(long slotLength, int slotCount) {
+            this.slotLength = slotLength;
+            enqueued = new float[slotCount];
+            dequeued = new float[slotCount];
+            depths = new long[slotCount];
+        }
+
+        /**
+         * Add the messages enqueued and dequeued within a period, spread evenly over the slots it covers
+         *
+         * @param from         Start of the period
+         * @param to           End of the period
+         * @param enqueueCount Messages enqueued within the period
+         * @param dequeueCount Messages dequeued within the period
+         * @param depth        Depth at the end of the period
+         */
+        private void add(long from, long to, long enqueueCount, long dequeueCount, long depth) {
+            long firstSlot = from / slotLength;
+            long lastSlot = to / slotLength;
+            advanceTo(lastSlot);
+
+            double duration = to - from;
+            for (long slot = Math.max(firstSlot, newestSlot - depths.length + 1); slot <= lastSlot; slot++) {
+                long overlap = Math.min(to, (slot + 1) * slotLength) - Math.max(from, slot * slotLength);
+                int index = (int) (slot % depths.length);
+                enqueued[index] += (float) (enqueueCount * overlap / duration);
+                dequeued[index] += (float) (dequeueCount * overlap / duration);
+                depths[index] = depth;
+            }
+        }
+
+        /**
+         * Move the newest slot forward, clearing the slots reused on the way
+         */
+        private void advanceTo(long slot) {
+            if (slot <= newestSlot) {
+                return;
+            }
+
+            long firstClearedSlot = Math.max(newestSlot + 1, slot - depths.length + 1);
+            for (long clearedSlot = firstClearedSlot; clearedSlot <= slot; clearedSlot++) {
+                int index = (int) (clearedSlot % depths.length);
+                enqueued[index] = 0;
+                dequeued[index] = 0;
+                depths[index] = -1;
+            }
+            newestSlot = slot;
+        }
+
+        private QueueRateHistory toHistory() {
+            // Slots not reached by samples yet still count as empty
+            advanceTo(System.currentTimeMillis() / slotLength);
+
+            int slotCount = depths.length;
+            double seconds = slotLength / 1000.0;
+            double[] enqueueRates = new double[slotCount];
+            double[] dequeueRates = new double[slotCount];
+            long[] depthHistory = new long[slotCount];
+
+            long oldestSlot = newestSlot - slotCount + 1;
+            for (int i = 0; i < slotCount; i++) {
+                int index = (int) ((oldestSlot + i) % slotCount);
+                enqueueRates[i] = enqueued[index] / seconds;
+                dequeueRates[i] = dequeued[index] / seconds;
+                depthHistory[i] = depths[index];
+            }
+
+            QueueRateHistory history = new QueueRateHistory();
+            history.setResolution((int) (slotLength / 1000));
+            history.setStartTime(oldestSlot * slotLength);
+            history.setEnqueueRates(enqueueRates);
+            history.setDequeueRates(dequeueRates);
+            history.setDepths(depthHistory);
+            return history;
+        }
+    }
+}
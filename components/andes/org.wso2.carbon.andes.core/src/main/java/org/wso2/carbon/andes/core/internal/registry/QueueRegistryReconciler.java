@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.core.internal.registry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.andes.commons.CommonsUtil;
+import org.wso2.carbon.andes.commons.cache.TenantRealmCache;
+import org.wso2.carbon.andes.commons.registry.RegistryClient;
+import org.wso2.carbon.andes.commons.registry.RegistryClientException;
+import org.wso2.carbon.andes.commons.registry.RegistryMetadataCache;
+import org.wso2.carbon.andes.core.QueueManagerException;
+import org.wso2.carbon.andes.core.internal.ds.QueueManagerServiceValueHolder;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.registry.core.Collection;
+import org.wso2.carbon.registry.core.Resource;
+import org.wso2.carbon.registry.core.exceptions.RegistryException;
+import org.wso2.carbon.registry.core.session.UserRegistry;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically reconciles the queue entries kept in the registry with the queues of the broker. Registry entries
+ * are written as a side effect of creating and deleting queues, and drift whenever such a write fails.
+ * <p/>
+ * Each run compares the queue names of the broker with the registry entries of each tenant. A tenant is skipped
+ * if neither its queue names nor the last modified time of its queue collection changed since the previous run.
+ * Drift is repaired only once it is seen in two consecutive runs, so that queues being created or deleted while
+ * the run reads the broker and the registry are left alone, and at most a batch of entries is repaired per run.
+ */
+public class QueueRegistryReconciler {
+
+    private static final Log log = LogFactory.getLog(QueueRegistryReconciler.class);
+
+    /**
+     * System property to enable/disable the reconciler
+     */
+    public static final String ENABLED_PROPERTY = "andes.registry.reconciler.enabled";
+
+    /**
+     * System property for the interval in seconds between two runs
+     */
+    public static final String INTERVAL_PROPERTY = "andes.registry.reconciler.interval";
+
+    /**
+     * System property for the maximum number of registry entries repaired per run
+     */
+    public static final String BATCH_SIZE_PROPERTY = "andes.registry.reconciler.batchSize";
+
+    /**
+     * System property of the authorization bundle telling whether temporary subscriber queues are kept off the
+     * registry. Such queues are not expected to have registry entries, but may have them if they were created
+     * while too many temporary queues were kept in memory, hence their entries are left alone.
+     */
+    private static final String TEMPORARY_QUEUES_IN_MEMORY_PROPERTY = "andes.authorization.temporaryQueues.inMemory";
+
+    private static final int DEFAULT_INTERVAL = 300;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final String AT_REPLACE_CHAR = "_";
+    private static final String TEMPORARY_QUEUE_PREFIX = "tmp_";
+    private static final String TENANT_SEPARATOR = "/";
+    private static final String SUBSCRIPTION_ID_SEPARATOR = ":";
+    private static final String QUEUE_NAME_PROPERTY = "Name";
+    private static final int MAX_COLLECTION_DEPTH = 2;
+
+    private static QueueRegistryReconciler instance = new QueueRegistryReconciler();
+
+    private final boolean enabled;
+    private final long interval;
+    private final int batchSize;
+    private final boolean temporaryQueuesInMemory;
+
+    /**
+     * State of the previous run by tenant domain
+     */
+    private final Map<String, TenantState> tenantStates = new HashMap<String, TenantState>();
+    private ScheduledExecutorService scheduler;
+
+    private QueueRegistryReconciler() {
+        enabled = CommonsUtil.getBooleanProperty(ENABLED_PROPERTY, false);
+        interval = CommonsUtil.getIntProperty(INTERVAL_PROPERTY, DEFAULT_INTERVAL) * 1000L;
+        batchSize = CommonsUtil.getIntProperty(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE);
+        temporaryQueuesInMemory = CommonsUtil.getBooleanProperty(TEMPORARY_QUEUES_IN_MEMORY_PROPERTY, false);
+    }
+
+    public static QueueRegistryReconciler getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start reconciling periodically
+     */
+    public synchronized void start() {
+        if (!enabled || null != scheduler) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AndesRegistryReconciler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    reconcile();
+                } catch (RuntimeException e) {
+                    log.error("Error while reconciling queues of the broker with the registry.", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+
+        RegistryClient.setQueueReconcilerRunning(true);
+    }
+
+    /**
+     * Stop reconciling
+     */
+    public synchronized void shutdown() {
+        if (null != scheduler) {
+            RegistryClient.setQueueReconcilerRunning(false);
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Reconcile queue entries of all tenants with the queues of the broker
+     */
+    public void reconcile() {
+        String[] queueNames;
+        try {
+            queueNames = QueueManagementBeans.getInstance().getAllQueueNames();
+        } catch (QueueManagerException e) {
+            log.warn("Could not read queues of the broker. Skipping reconciliation with the registry.", e);
+            return;
+        }
+
+        synchronized (tenantStates) {
+            Map<String, Set<String>> tenantQueues = new HashMap<String, Set<String>>();
+            tenantQueues.put(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME, new HashSet<String>());
+            // Tenants seen before may have entries left although their queues are gone
+            for (String tenantDomain : tenantStates.keySet()) {
+                tenantQueues.put(tenantDomain, new HashSet<String>());
+            }
+
+            for (String queueName : queueNames) {
+                if (temporaryQueuesInMemory && queueName.startsWith(TEMPORARY_QUEUE_PREFIX)) {
+                    continue;
+                }
+
+                String tenantDomain = getTenantDomain(queueName);
+                Set<String> queuesOfTenant = tenantQueues.get(tenantDomain);
+                if (null == queuesOfTenant) {
+                    queuesOfTenant = new HashSet<String>();
+                    tenantQueues.put(tenantDomain, queuesOfTenant);
+                }
+                queuesOfTenant.add(queueName);
+            }
+
+            int repairs = 0;
+            for (Map.Entry<String, Set<String>> entry : tenantQueues.entrySet()) {
+                if (repairs >= batchSize) {
+                    // Remaining drift is repaired by the following runs
+                    break;
+                }
+
+                try {
+                    repairs += reconcileTenant(entry.getKey(), entry.getValue(), batchSize - repairs);
+                } catch (RegistryException e) {
+                    log.warn("Error while reconciling queues of tenant " + entry.getKey() + " with the registry.", e);
+                } catch (RegistryClientException e) {
+                    log.warn("Error while reconciling queues of tenant " + entry.getKey() + " with the registry.", e);
+                } catch (UserStoreException e) {
+                    log.warn("Error while reconciling queues of tenant " + entry.getKey() + " with the registry.", e);
+                }
+            }
+
+            if (repairs > 0) {
+                log.info("Repaired " + repairs + " queue entries of the registry that drifted from the broker.");
+            }
+        }
+    }
+
+    /**
+     * Reconcile queue entries of a tenant
+     *
+     * @param tenantDomain Tenant domain
+     * @param queueNames   Names of the queues of the tenant in the broker
+     * @param maxRepairs   Maximum number of entries to repair
+     * @return Number of entries repaired
+     */
+    private int reconcileTenant(String tenantDomain, Set<String> queueNames, int maxRepairs)
+            throws RegistryException, RegistryClientException, UserStoreException {
+        RealmService realmService = QueueManagerServiceValueHolder.getInstance().getRealmService();
+        int tenantId = TenantRealmCache.getInstance().getTenantId(realmService, tenantDomain);
+        if (MultitenantConstants.INVALID_TENANT_ID == tenantId) {
+            tenantStates.remove(tenantDomain);
+            return 0;
+        }
+
+        PrivilegedCarbonContext.startTenantFlow();
+        try {
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId);
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain);
+
+            UserRegistry registry = RegistryMetadataCache.getInstance().getGovernanceSystemRegistry(
+                    QueueManagerServiceValueHolder.getInstance().getRegistryService(), tenantId);
+
+            String queuesID = CommonsUtil.getQueuesID();
+            Collection queueCollection = registry.resourceExists(queuesID) ?
+                    (Collection) registry.get(queuesID) : null;
+            long lastModified = ((null != queueCollection) && (null != queueCollection.getLastModified())) ?
+                    queueCollection.getLastModified().getTime() : 0;
+
+            TenantState state = tenantStates.get(tenantDomain);
+            if (null == state) {
+                state = new TenantState();
+                tenantStates.put(tenantDomain, state);
+            }
+            if (state.isUnchanged(queueNames.hashCode(), lastModified)) {
+                return 0;
+            }
+
+            // Entries expected for the queues of the broker, by resource ID
+            Map<String, String> expectedEntries = new HashMap<String, String>();
+            for (String queueName : queueNames) {
+                String registryQueueName = queueName.replace("@", AT_REPLACE_CHAR);
+                expectedEntries.put(CommonsUtil.getQueueID(registryQueueName), registryQueueName);
+            }
+
+            Set<String> entries = new HashSet<String>();
+            if (null != queueCollection) {
+                collectQueueIDs(registry, queuesID, queueCollection, expectedEntries.keySet(), entries, 0);
+            }
+
+            Set<String> missingEntries = new HashSet<String>(expectedEntries.keySet());
+            missingEntries.removeAll(entries);
+            Set<String> orphanEntries = new HashSet<String>(entries);
+            orphanEntries.removeAll(expectedEntries.keySet());
+            if (temporaryQueuesInMemory) {
+                // Temporary queues are left out of the queues of the broker, so their entries are not orphans
+                for (Iterator<String> iterator = orphanEntries.iterator(); iterator.hasNext(); ) {
+                    String queueID = iterator.next();
+                    if (queueID.substring(queueID.lastIndexOf('/') + 1)
+                            .startsWith(TEMPORARY_QUEUE_PREFIX)) {
+                        iterator.remove();
+                    }
+                }
+            }
+
+            // Repair drift seen by the previous run as well
+            int repairs = 0;
+            String owner = null;
+            for (String queueID : new HashSet<String>(missingEntries)) {
+                if ((repairs < maxRepairs) && state.missingEntries.contains(queueID)) {
+                    if (null == owner) {
+                        owner = realmService.getTenantUserRealm(tenantId).getRealmConfiguration().getAdminUserName();
+                    }
+                    RegistryClient.createQueue(expectedEntries.get(queueID), owner);
+                    missingEntries.remove(queueID);
+                    repairs++;
+                }
+            }
+            for (String queueID : new HashSet<String>(orphanEntries)) {
+                if ((repairs < maxRepairs) && state.orphanEntries.contains(queueID)) {
+                    RegistryClient.deleteQueueEntry(queueID);
+                    orphanEntries.remove(queueID);
+                    repairs++;
+                }
+            }
+
+            state.update(queueNames.hashCode(), lastModified, missingEntries, orphanEntries, repairs > 0);
+            return repairs;
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    /**
+     * Collect resource IDs of the queue entries under a collection. Queues with a tenant prefix in their name are
+     * kept in a sub collection, hence collections that are not queue entries are looked into.
+     */
+    private void collectQueueIDs(UserRegistry registry, String queuesID, Collection collection,
+                                 Set<String> expectedIDs, Set<String> queueIDs, int depth) throws RegistryException {
+        for (String childPath : collection.getChildren()) {
+            // Child paths may be absolute, while queue IDs are relative
+            int index = childPath.indexOf(queuesID);
+            String childID = (index >= 0) ? childPath.substring(index) : childPath;
+
+            if (expectedIDs.contains(childID)) {
+                queueIDs.add(childID);
+                continue;
+            }
+
+            Resource child = registry.get(childPath);
+            if (null != child.getProperty(QUEUE_NAME_PROPERTY)) {
+                queueIDs.add(childID);
+            } else if ((child instanceof Collection) && (depth + 1 < MAX_COLLECTION_DEPTH)) {
+                collectQueueIDs(registry, queuesID, (Collection) child, expectedIDs, queueIDs, depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Get the tenant domain of a queue from its name. Queues of tenants are prefixed with the tenant domain,
+     * and queues of durable topic subscriptions additionally with the client ID.
+     */
+    private static String getTenantDomain(String queueName) {
+        String name = queueName;
+        int separatorIndex = name.indexOf(TENANT_SEPARATOR);
+        if (separatorIndex < 0) {
+            return MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
+        }
+
+        int subscriptionIndex = name.indexOf(SUBSCRIPTION_ID_SEPARATOR);
+        if ((subscriptionIndex >= 0) && (subscriptionIndex < separatorIndex)) {
+            name = name.substring(subscriptionIndex + 1);
+            separatorIndex = name.indexOf(TENANT_SEPARATOR);
+        }
+        return name.substring(0, separatorIndex);
+    }
+
+    /**
+     * What the previous run saw of a tenant
+     */
+    private static class TenantState {
+
+        private int queueNamesHash;
+        private long lastModified = -1;
+        private Set<String> missingEntries = new HashSet<String>();
+        private Set<String> orphanEntries = new HashSet<String>();
+
+        private boolean isUnchanged(int queueNamesHash, long lastModified) {
+            return (this.queueNamesHash == queueNamesHash) && (this.lastModified == lastModified) &&
+                    missingEntries.isEmpty() && orphanEntries.isEmpty();
+        }
+
+        private void update(int queueNamesHash, long lastModified, Set<String> missingEntries,
+                            Set<String> orphanEntries, boolean repaired) {
+            this.queueNamesHash = queueNamesHash;
+            // Repairs change the collection, so look at the tenant again in the next run
+            this.lastModified = repaired ? -1 : lastModified;
+            this.missingEntries = missingEntries;
+            this.orphanEntries = orphanEntries;
+        }
+    }
+}
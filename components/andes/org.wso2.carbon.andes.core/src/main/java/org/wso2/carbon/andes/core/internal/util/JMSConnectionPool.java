@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.core.internal.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.CarbonConstants;
+import org.wso2.carbon.andes.commons.CommonsUtil;
+
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.QueueConnection;
+import javax.jms.QueueConnectionFactory;
+import javax.jms.QueueSession;
+import javax.jms.Session;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMS connections to the broker running in this server, kept open per user across admin requests that browse
+ * queues or send messages to them. Connections go over the in-VM transport, hence neither a TCP connection to the
+ * broker nor the andes configuration is needed to serve a request, and the user is authenticated once per
+ * connection instead of once per request.
+ * <p/>
+ * A connection is shared by all requests of a user, but a session is used by one request at a time: a request
+ * borrows a session and returns it once done, or invalidates it if it failed. Idle sessions are kept on their
+ * connection up to a maximum, and a connection with no session borrowed is closed once it is idle for longer than
+ * the idle timeout. Expired queue browse cursors are closed on the same schedule, returning their sessions.
+ */
+public class JMSConnectionPool {
+
+    private static final Log log = LogFactory.getLog(JMSConnectionPool.class);
+
+    /**
+     * System property for the time in seconds an idle connection is kept open
+     */
+    public static final String IDLE_TIMEOUT_PROPERTY = "andes.jms.pool.idleTimeout";
+
+    /**
+     * System property for the maximum number of idle sessions kept open per connection
+     */
+    public static final String MAX_IDLE_SESSIONS_PROPERTY = "andes.jms.pool.maxIdleSessions";
+
+    private static final String QPID_ICF = "org.wso2.andes.jndi.PropertiesFileInitialContextFactory";
+    private static final String CF_NAME_PREFIX = "connectionfactory.";
+    private static final String CF_NAME = "qpidConnectionfactory";
+    private static final int DEFAULT_IDLE_TIMEOUT = 60;
+    private static final int DEFAULT_MAX_IDLE_SESSIONS = 4;
+
+    private static JMSConnectionPool instance = new JMSConnectionPool();
+
+    private final long idleTimeout;
+    private final int maxIdleSessions;
+
+    /**
+     * Connections by user name
+     */
+    private final ConcurrentMap<String, PooledConnection> connections =
+            new ConcurrentHashMap<String, PooledConnection>();
+    private ScheduledExecutorService evictor;
+
+    private final Runnable evictionTask = new Runnable() {
+        public void run() {
+            // Abandoned browse cursors hold borrowed sessions, which keep their connections from being closed
+            try {
+                QueueBrowseCursors.getInstance().closeExpired();
+            } catch (RuntimeException e) {
+                log.error("Error while closing expired queue browse cursors.", e);
+            }
+            try {
+                closeIdleConnections();
+            } catch (RuntimeException e) {
+                log.error("Error while closing idle JMS connections.", e);
+            }
+        }
+    };
+
+    private JMSConnectionPool() {
+        idleTimeout = CommonsUtil.getIntProperty(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT) * 1000L;
+        maxIdleSessions = CommonsUtil.getIntProperty(MAX_IDLE_SESSIONS_PROPERTY, DEFAULT_MAX_IDLE_SESSIONS);
+    }
+
+    public static JMSConnectionPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start closing idle connections
+     */
+    public synchronized void start() {
+        if (null != evictor) {
+            return;
+        }
+
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AndesJMSConnectionPoolEvictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long evictionInterval = Math.max(idleTimeout / 2, 1000L);
+        evictor.scheduleWithFixedDelay(evictionTask, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop closing idle connections and close all connections, including sessions still borrowed
+     */
+    public synchronized void shutdown() {
+        if (null != evictor) {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+
+        for (PooledConnection connection : connections.values()) {
+            if (connection.closeIfIdle(Long.MAX_VALUE, true)) {
+                connections.remove(connection.userName, connection);
+                connection.closeConnection();
+            }
+        }
+    }
+
+    /**
+     * Borrow a session of a user. The session must be returned or invalidated once done.
+     *
+     * @param userName  Tenant aware user name, escaped to be used in an AMQP URL
+     * @param accessKey Access key of the user
+     * @return Session on a started connection
+     * @throws JMSException
+     * @throws NamingException
+     */
+    public PooledSession borrowSession(String userName, String accessKey) throws JMSException, NamingException {
+        return borrowSession(userName, accessKey, false);
+    }
+
+    /**
+     * Borrow a session of a user. The session must be returned or invalidated once done. Transacted sessions are
+     * not kept idle, they are closed once returned.
+     *
+     * @param userName   Tenant aware user name, escaped to be used in an AMQP URL
+     * @param accessKey  Access key of the user
+     * @param transacted true for a transacted session
+     * @return Session on a started connection
+     * @throws JMSException
+     * @throws NamingException
+     */
+    public PooledSession borrowSession(String userName, String accessKey, boolean transacted)
+            throws JMSException, NamingException {
+        while (true) {
+            PooledConnection connection = connections.get(userName);
+            if ((null == connection) || !connection.accessKey.equals(accessKey)) {
+                connection = openConnection(userName, accessKey);
+            }
+
+            if (null == connection) {
+                // Opened by a concurrent request, take that one
+                continue;
+            }
+
+            PooledSession session = connection.borrowSession(transacted);
+            if (null != session) {
+                return session;
+            }
+            // Closed or retired meanwhile
+            connections.remove(userName, connection);
+        }
+    }
+
+    /**
+     * Return a borrowed session to be used by the next request
+     *
+     * @param session Borrowed session
+     */
+    public void returnSession(PooledSession session) {
+        session.connection.returnSession(session.session, session.transacted ? 0 : maxIdleSessions);
+    }
+
+    /**
+     * Close a borrowed session that failed, instead of returning it
+     *
+     * @param session Borrowed session
+     */
+    public void invalidateSession(PooledSession session) {
+        session.connection.returnSession(session.session, 0);
+    }
+
+    /**
+     * Open a connection of a user and add it to the pool
+     *
+     * @return The connection, or null if a concurrent request added one first
+     */
+    private PooledConnection openConnection(String userName, String accessKey)
+            throws JMSException, NamingException {
+        Properties properties = new Properties();
+        properties.put(Context.INITIAL_CONTEXT_FACTORY, QPID_ICF);
+        properties.put(CF_NAME_PREFIX + CF_NAME, CommonsUtil.getInVMConnectionURL(userName, accessKey));
+        properties.put(CarbonConstants.REQUEST_BASE_CONTEXT, "true");
+        InitialContext ctx = new InitialContext(properties);
+        QueueConnectionFactory connFactory = (QueueConnectionFactory) ctx.lookup(CF_NAME);
+
+        final PooledConnection connection =
+                new PooledConnection(userName, accessKey, connFactory.createQueueConnection());
+        try {
+            connection.connection.setExceptionListener(new ExceptionListener() {
+                public void onException(JMSException e) {
+                    log.warn("JMS connection of " + connection.userName + " failed. Dropping it from the pool.", e);
+                    discard(connection);
+                }
+            });
+            connection.connection.start();
+        } catch (JMSException e) {
+            connection.closeConnection();
+            throw e;
+        }
+
+        PooledConnection existingConnection = connections.putIfAbsent(userName, connection);
+        if (null == existingConnection) {
+            return connection;
+        }
+
+        if (existingConnection.accessKey.equals(accessKey)
+                || !connections.replace(userName, existingConnection, connection)) {
+            // Opened by a concurrent request
+            connection.closeConnection();
+            return null;
+        }
+        // Opened with a previous access key. Closed once its sessions are returned.
+        existingConnection.retire();
+        return connection;
+    }
+
+    private void discard(PooledConnection connection) {
+        connections.remove(connection.userName, connection);
+        if (connection.closeIfIdle(Long.MAX_VALUE, true)) {
+            connection.closeConnection();
+        }
+    }
+
+    private void closeIdleConnections() {
+        long idleBefore = System.currentTimeMillis() - idleTimeout;
+        for (Map.Entry<String, PooledConnection> entry : connections.entrySet()) {
+            PooledConnection connection = entry.getValue();
+            if (connection.closeIfIdle(idleBefore, false)) {
+                connections.remove(entry.getKey(), connection);
+                connection.closeConnection();
+            }
+        }
+    }
+
+    /**
+     * A session borrowed from the pool
+     */
+    public static class PooledSession {
+
+        private final PooledConnection connection;
+        private final QueueSession session;
+        private final boolean transacted;
+
+        private PooledSession(PooledConnection connection, QueueSession session, boolean transacted) {
+            this.connection = connection;
+            this.session = session;
+            this.transacted = transacted;
+        }
+
+        public QueueSession getSession() {
+            return session;
+        }
+    }
+
+    /**
+     * Connection of a user and its idle sessions
+     */
+    private static class PooledConnection {
+
+        private final String userName;
+        private final String accessKey;
+        private final QueueConnection connection;
+        private final LinkedList<QueueSession> idleSessions = new LinkedList<QueueSession>();
+        private int borrowedSessions;
+        private long lastAccessTime = System.currentTimeMillis();
+        private boolean closed;
+
+        /**
+         * No more sessions are borrowed from a retired connection, and it is closed once the borrowed sessions
+         * are returned
+         */
+        private boolean retired;
+
+        private PooledConnection(String userName, String accessKey, QueueConnection connection) {
+            this.userName = userName;
+            this.accessKey = accessKey;
+            this.connection = connection;
+        }
+
+        /**
+         * @return An idle or new session, or null if the connection is closed or retired. Transacted sessions are
+         * always new.
+         */
+        private PooledSession borrowSession(boolean transacted) throws JMSException {
+            QueueSession session;
+            synchronized (this) {
+                if (closed || retired) {
+                    return null;
+                }
+                borrowedSessions++;
+                lastAccessTime = System.currentTimeMillis();
+                session = transacted ? null : idleSessions.poll();
+            }
+
+            if (null == session) {
+                try {
+                    session = transacted ? connection.createQueueSession(true, Session.SESSION_TRANSACTED) :
+                            connection.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
+                } catch (JMSException e) {
+                    returnSession(null, 0);
+                    throw e;
+                } catch (RuntimeException e) {
+                    returnSession(null, 0);
+                    throw e;
+                }
+            }
+            return new PooledSession(this, session, transacted);
+        }
+
+        /**
+         * Return a borrowed session, closing it if more than the given number of sessions are idle
+         */
+        private void returnSession(QueueSession session, int maxIdleSessions) {
+            boolean closeSession = false;
+            boolean closeConnection = false;
+            synchronized (this) {
+                borrowedSessions--;
+                lastAccessTime = System.currentTimeMillis();
+                if (closed || (null == session)) {
+                    // There is no need to close the sessions of a closed connection
+                    closeSession = false;
+                } else if (retired) {
+                    closeConnection = (0 == borrowedSessions);
+                    closed = closeConnection;
+                    closeSession = !closeConnection;
+                } else if (idleSessions.size() < maxIdleSessions) {
+                    idleSessions.add(session);
+                } else {
+                    closeSession = true;
+                }
+            }
+
+            if (closeConnection) {
+                closeConnection();
+            } else if (closeSession) {
+                try {
+                    session.close();
+                } catch (JMSException e) {
+                    log.warn("Failed to close JMS session of " + userName, e);
+                }
+            }
+        }
+
+        private void retire() {
+            synchronized (this) {
+                retired = true;
+                if (closed || (borrowedSessions > 0)) {
+                    return;
+                }
+                closed = true;
+            }
+            closeConnection();
+        }
+
+        /**
+         * Mark the connection closed if no session is borrowed and it is idle since before the given time
+         *
+         * @param idleBefore Time the connection must be idle since
+         * @param force      true to mark it closed even if sessions are borrowed
+         * @return true if the connection is marked closed and should be closed by the caller
+         */
+        private synchronized boolean closeIfIdle(long idleBefore, boolean force) {
+            if (closed || (!force && ((borrowedSessions > 0) || (lastAccessTime >= idleBefore)))) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+
+        private void closeConnection() {
+            try {
+                connection.close();
+            } catch (JMSException e) {
+                log.error("Failed to close JMS connection of " + userName, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.core.internal.util;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageEOFException;
+import javax.jms.ObjectMessage;
+import javax.jms.StreamMessage;
+import javax.jms.TextMessage;
+import java.util.Enumeration;
+
+/**
+ * Renders the content of JMS messages as HTML escaped text, reading no more of the message body than needed to
+ * fill the given length. Content is escaped as it is read, so that the escaped text is never longer than the
+ * length, and bytes are rendered as hex, 16 bytes per line.
+ * <p/>
+ * The body of a text message is handed over by JMS as a whole, hence only escaping is bounded for text messages.
+ * Bytes, map and stream messages are read only up to the length.
+ */
+public class MessageContentRenderer {
+
+    /**
+     * Length of the summary shown in message lists
+     */
+    private static final int SUMMARY_LENGTH = 15;
+
+    private static final int BYTES_PER_LINE = 16;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private MessageContentRenderer() {
+    }
+
+    /**
+     * Render a preview of the content of a message, as shown when browsing a queue
+     *
+     * @param message JMS message
+     * @return a summary and a preview of at most MESSAGE_DISPLAY_LENGTH_MAX characters, followed by a note if the
+     * content is longer
+     * @throws JMSException
+     */
+    public static String[] renderPreview(Message message) throws JMSException {
+        return render(message, Utils.MESSAGE_DISPLAY_LENGTH_MAX);
+    }
+
+    /**
+     * Render the whole content of a message
+     *
+     * @param message JMS message
+     * @return Content
+     * @throws JMSException
+     */
+    public static String renderContent(Message message) throws JMSException {
+        return render(message, Integer.MAX_VALUE)[1];
+    }
+
+    private static String[] render(Message message, int maxLength) throws JMSException {
+        ContentBuilder content = new ContentBuilder(maxLength);
+        if (message instanceof TextMessage) {
+            String text = ((TextMessage) message).getText();
+            if (null != text) {
+                // Skip leading white space without copying the text, trailing white space is trimmed at the end
+                int start = 0;
+                while ((start < text.length()) && (text.charAt(start) <= ' ')) {
+                    start++;
+                }
+                content.appendEscaped(text, start);
+            }
+        } else if (message instanceof ObjectMessage) {
+            return new String[]{"Not Supported", "This Operation is Not Supported!"};
+        } else if (message instanceof MapMessage) {
+            renderMap((MapMessage) message, content);
+        } else if (message instanceof StreamMessage) {
+            renderStream((StreamMessage) message, content);
+        } else if (message instanceof BytesMessage) {
+            renderBytes((BytesMessage) message, content);
+        }
+
+        String renderedContent = content.toString();
+        if (content.isTruncated()) {
+            renderedContent = renderedContent + Utils.DISPLAY_CONTINUATION + Utils.DISPLAY_LENGTH_EXCEEDED;
+        }
+        return new String[]{content.getSummary(), renderedContent};
+    }
+
+    private static void renderMap(MapMessage message, ContentBuilder content) throws JMSException {
+        Enumeration mapNames = message.getMapNames();
+        while (mapNames.hasMoreElements() && !content.isTruncated()) {
+            String mapName = (String) mapNames.nextElement();
+            content.appendEscaped(mapName);
+            content.appendEscaped(": ");
+            content.appendEscaped(String.valueOf(message.getObject(mapName)));
+            content.appendEscaped(", ");
+        }
+    }
+
+    private static void renderStream(StreamMessage message, ContentBuilder content) throws JMSException {
+        message.reset();
+        try {
+            while (!content.isTruncated()) {
+                Object value = message.readObject();
+                if (null == value) {
+                    break;
+                }
+                content.appendEscaped(value.toString());
+                content.appendEscaped(", ");
+            }
+        } catch (MessageEOFException e) {
+            // End of the stream
+        }
+    }
+
+    private static void renderBytes(BytesMessage message, ContentBuilder content) throws JMSException {
+        message.reset();
+        byte[] line = new byte[BYTES_PER_LINE];
+        char[] hex = new char[BYTES_PER_LINE * 3];
+        int lineLength;
+        boolean firstLine = true;
+        while (!content.isTruncated() && ((lineLength = message.readBytes(line)) > 0)) {
+            if (!firstLine) {
+                content.append('\n');
+            }
+            firstLine = false;
+
+            int hexLength = 0;
+            for (int i = 0; i < lineLength; i++) {
+                if (i > 0) {
+                    hex[hexLength++] = ' ';
+                }
+                hex[hexLength++] = HEX_DIGITS[(line[i] >> 4) & 0xf];
+                hex[hexLength++] = HEX_DIGITS[line[i] & 0xf];
+            }
+            content.append(hex, hexLength);
+        }
+    }
+
+    /**
+     * Builds rendered content up to a maximum length, noting whether anything was left out. Escaped characters
+     * are either appended whole or not at all.
+     */
+    private static class ContentBuilder {
+
+        private final int maxLength;
+        private final StringBuilder builder = new StringBuilder();
+        private int summaryLength;
+        private boolean truncated;
+
+        private ContentBuilder(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        private void appendEscaped(String text) {
+            appendEscaped(text, 0);
+        }
+
+        private void appendEscaped(String text, int start) {
+            for (int i = start; (i < text.length()) && !truncated; i++) {
+                char character = text.charAt(i);
+                String escaped = escape(character);
+                if (null == escaped) {
+                    append(character);
+                } else {
+                    append(escaped);
+                }
+            }
+        }
+
+        private void append(char character) {
+            if (builder.length() >= maxLength) {
+                truncated = true;
+                return;
+            }
+            builder.append(character);
+            updateSummaryLength();
+        }
+
+        private void append(char[] characters, int length) {
+            if (builder.length() + length > maxLength) {
+                truncated = true;
+                return;
+            }
+            builder.append(characters, 0, length);
+            updateSummaryLength();
+        }
+
+        private void append(String text) {
+            if (builder.length() + text.length() > maxLength) {
+                truncated = true;
+                return;
+            }
+            builder.append(text);
+            updateSummaryLength();
+        }
+
+        private void updateSummaryLength() {
+            if (builder.length() <= SUMMARY_LENGTH) {
+                summaryLength = builder.length();
+            }
+        }
+
+        private boolean isTruncated() {
+            return truncated;
+        }
+
+        private String getSummary() {
+            return builder.substring(0, summaryLength).trim();
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString().trim();
+        }
+
+        /**
+         * @return HTML escaped form of a character, or null if it needs no escaping
+         */
+        private static String escape(char character) {
+            if ((character < 0x7f) && (character != '<') && (character != '>') && (character != '&')
+                    && (character != '"')) {
+                return null;
+            }
+            String escaped = StringEscapeUtils.escapeHtml(String.valueOf(character));
+            return (escaped.length() > 1) ? escaped : null;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.core.internal.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.andes.commons.CommonsUtil;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.QueueBrowser;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Queue browsers kept open between the pages of a browse, so that the next page continues from where the previous
+ * one stopped instead of walking the queue again from the start. A browse is identified by a resume token
+ * carrying the cursor ID and the number of messages already walked. If the cursor is gone by the time the token
+ * comes back (idle for longer than the time to live, or not kept because too many cursors are open), a new
+ * browser is opened and walked up to the position without keeping the messages skipped.
+ */
+public class QueueBrowseCursors {
+
+    private static final Log log = LogFactory.getLog(QueueBrowseCursors.class);
+
+    /**
+     * System property for the time in seconds an idle cursor is kept open
+     */
+    public static final String TIME_TO_LIVE_PROPERTY = "andes.browse.cursor.timeToLive";
+
+    /**
+     * System property for the maximum number of cursors kept open
+     */
+    public static final String MAX_OPEN_CURSORS_PROPERTY = "andes.browse.cursor.maxOpen";
+
+    private static final int DEFAULT_TIME_TO_LIVE = 60;
+    private static final int DEFAULT_MAX_OPEN_CURSORS = 100;
+    private static final String TOKEN_SEPARATOR = ":";
+
+    private static QueueBrowseCursors instance = new QueueBrowseCursors();
+
+    private final long timeToLive;
+    private final int maxOpenCursors;
+    private final ConcurrentMap<String, BrowseCursor> cursors = new ConcurrentHashMap<String, BrowseCursor>();
+
+    private QueueBrowseCursors() {
+        timeToLive = CommonsUtil.getIntProperty(TIME_TO_LIVE_PROPERTY, DEFAULT_TIME_TO_LIVE) * 1000L;
+        maxOpenCursors = CommonsUtil.getIntProperty(MAX_OPEN_CURSORS_PROPERTY, DEFAULT_MAX_OPEN_CURSORS);
+    }
+
+    public static QueueBrowseCursors getInstance() {
+        return instance;
+    }
+
+    /**
+     * Take the open cursor a resume token points to. The cursor is no longer kept until it is released.
+     *
+     * @param resumeToken Resume token
+     * @param owner       User browsing
+     * @param queueName   Queue browsed
+     * @return Cursor positioned at the token, or null if it is not open anymore
+     */
+    public BrowseCursor take(String resumeToken, String owner, String queueName) {
+        closeExpired();
+
+        BrowseCursor cursor = cursors.remove(getCursorID(resumeToken));
+        if (null == cursor) {
+            return null;
+        }
+
+        // A token of another user/queue or an earlier page can not continue from the cursor
+        if (!cursor.owner.equals(owner) || !cursor.queueName.equals(queueName)
+                || (cursor.position != getPosition(resumeToken))) {
+            cursor.close();
+            return null;
+        }
+        return cursor;
+    }
+
+    /**
+     * Keep a cursor open for the next page, or close it if it has no more messages
+     *
+     * @param cursor Cursor
+     * @return Resume token for the next page, or null if there are no more messages
+     */
+    public String release(BrowseCursor cursor) {
+        if (!cursor.hasMoreMessages()) {
+            cursor.close();
+            return null;
+        }
+
+        String resumeToken = cursor.id + TOKEN_SEPARATOR + cursor.position;
+        cursor.lastAccessTime = System.currentTimeMillis();
+        if (cursors.size() < maxOpenCursors) {
+            cursors.put(cursor.id, cursor);
+        } else {
+            // Resumed by walking a new browser up to the position
+            cursor.close();
+        }
+        return resumeToken;
+    }
+
+    /**
+     * Close all open cursors
+     */
+    public void closeAll() {
+        for (Iterator<BrowseCursor> iterator = cursors.values().iterator(); iterator.hasNext(); ) {
+            BrowseCursor cursor = iterator.next();
+            iterator.remove();
+            cursor.close();
+        }
+    }
+
+    /**
+     * Get the number of messages a resume token is positioned after
+     *
+     * @param resumeToken Resume token
+     * @return Position, or 0 if the token is malformed
+     */
+    public static long getPosition(String resumeToken) {
+        int separatorIndex = (null != resumeToken) ? resumeToken.lastIndexOf(TOKEN_SEPARATOR) : -1;
+        if (separatorIndex < 0) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(resumeToken.substring(separatorIndex + 1)));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String getCursorID(String resumeToken) {
+        int separatorIndex = (null != resumeToken) ? resumeToken.lastIndexOf(TOKEN_SEPARATOR) : -1;
+        return (separatorIndex > 0) ? resumeToken.substring(0, separatorIndex) : "";
+    }
+
+    /**
+     * Close cursors idle for longer than the time to live. Called when a cursor is taken, and periodically by the
+     * connection pool so that cursors abandoned by the console do not keep their sessions borrowed.
+     */
+    public void closeExpired() {
+        long expiredBefore = System.currentTimeMillis() - timeToLive;
+        for (Map.Entry<String, BrowseCursor> entry : cursors.entrySet()) {
+            BrowseCursor cursor = entry.getValue();
+            if ((cursor.lastAccessTime < expiredBefore) && cursors.remove(entry.getKey(), cursor)) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * An open queue browser and the number of messages walked so far
+     */
+    public static class BrowseCursor {
+
+        private final String id = UUID.randomUUID().toString();
+        private final String owner;
+        private final String queueName;
+        private final JMSConnectionPool.PooledSession session;
+        private final QueueBrowser browser;
+        private final Enumeration enumeration;
+        private long position;
+        private volatile long lastAccessTime;
+
+        /**
+         * Create a cursor at the start of an open browser
+         *
+         * @param owner     User browsing
+         * @param queueName Queue browsed
+         * @param session   Pooled session the browser is created on. Returned to the pool when the cursor is closed.
+         * @param browser   Queue browser
+         * @throws JMSException
+         */
+        public BrowseCursor(String owner, String queueName, JMSConnectionPool.PooledSession session,
+                            QueueBrowser browser) throws JMSException {
+            this.owner = owner;
+            this.queueName = queueName;
+            this.session = session;
+            this.browser = browser;
+            this.enumeration = browser.getEnumeration();
+        }
+
+        /**
+         * Skip messages without keeping them
+         *
+         * @param count Number of messages to skip
+         * @return Number of messages skipped, less than the count if the browser runs out of messages
+         */
+        public long skip(long count) {
+            long skipped = 0;
+            while ((skipped < count) && enumeration.hasMoreElements()) {
+                enumeration.nextElement();
+                skipped++;
+            }
+            position += skipped;
+            return skipped;
+        }
+
+        /**
+         * @return The next message, or null if there are no more messages
+         */
+        public Message next() {
+            if (!enumeration.hasMoreElements()) {
+                return null;
+            }
+            position++;
+            return (Message) enumeration.nextElement();
+        }
+
+        public boolean hasMoreMessages() {
+            return enumeration.hasMoreElements();
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public void close() {
+            try {
+                browser.close();
+                JMSConnectionPool.getInstance().returnSession(session);
+            } catch (JMSException e) {
+                log.warn("Failed to close queue browser of " + queueName, e);
+                JMSConnectionPool.getInstance().invalidateSession(session);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+package org.wso2.carbon.andes.core.types;
+
+/**
+ * Progress of a queue management job running in the background
+ */
+public class JobStatus {
+
+    private String jobId;
+
+    private String jobType;
+
+    private String queueName;
+
+    private String state;
+
+    private long processedCount;
+
+    private long totalCount;
+
+    private long startTime;
+
+    private long endTime;
+
+    private double messagesPerSecond;
+
+    private String errorMessage;
+
+    private boolean cancellable;
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getJobType() {
+        return jobType;
+    }
+
+    public void setJobType(String jobType) {
+        this.jobType = jobType;
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    public void setQueueName(String queueName) {
+        this.queueName = queueName;
+    }
+
+    /**
+     * @return QUEUED, RUNNING, COMPLETED, CANCELLED or FAILED
+     */
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    /**
+     * @return Number of messages processed so far
+     */
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    public void setProcessedCount(long processedCount) {
+        this.processedCount = processedCount;
+    }
+
+    /**
+     * @return Number of messages to process, or -1 if not known
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(long totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * @return Time the job started running in milliseconds since epoch, or 0 if it is not started yet
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * @return Time the job finished in milliseconds since epoch, or 0 if it is not finished yet
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    /**
+     * @return Messages processed per second since the job started
+     */
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    public void setMessagesPerSecond(double messagesPerSecond) {
+        this.messagesPerSecond = messagesPerSecond;
+    }
+
+    /**
+     * @return Reason the job failed, or null if it did not fail
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * @return true if the job is not finished and cancelling it would still stop it
+     */
+    public boolean isCancellable() {
+        return cancellable;
+    }
+
+    public void setCancellable(boolean cancellable) {
+        this.cancellable = cancellable;
+    }
+}
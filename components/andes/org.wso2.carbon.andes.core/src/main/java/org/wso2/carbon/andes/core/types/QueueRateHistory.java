@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2005-2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.carbon.andes.core.types;
+
+/**
+ * Enqueue rate, dequeue rate and depth of a queue over time, one value per time slot starting from the oldest.
+ * Rates are in messages per second. Depth of a slot for which there is no sample is -1.
+ */
+public class QueueRateHistory {
+
+    private String queueName;
+
+    private int resolution;
+
+    private long startTime;
+
+    private double[] enqueueRates;
+
+    private double[] dequeueRates;
+
+    private long[] depths;
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    public void setQueueName(String queueName) {
+        this.queueName = queueName;
+    }
+
+    /**
+     * @return Length of a time slot in seconds
+     */
+    public int getResolution() {
+        return resolution;
+    }
+
+    public void setResolution(int resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * @return Start time of the oldest time slot, in milliseconds since epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public double[] getEnqueueRates() {
+        return enqueueRates;
+    }
+
+    public void setEnqueueRates(double[] enqueueRates) {
+        this.enqueueRates = enqueueRates;
+    }
+
+    public double[] getDequeueRates() {
+        return dequeueRates;
+    }
+
+    public void setDequeueRates(double[] dequeueRates) {
+        this.dequeueRates = dequeueRates;
+    }
+
+    public long[] getDepths() {
+        return depths;
+    }
+
+    public void setDepths(long[] depths) {
+        this.depths = depths;
+    }
+}
@@ -0,0 +1,154 @@
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
+<%@ taglib prefix="carbon" uri="http://wso2.org/projects/carbon/taglibs/carbontags.jar" %>
+<%@ page import="org.wso2.carbon.andes.stub.AndesAdminServiceStub" %>
+<%@ page import="org.wso2.carbon.andes.ui.UIUtils" %>
+<%@ page import="org.wso2.carbon.andes.stub.AndesAdminServiceBrokerManagerAdminException" %>
+<%@ page import="org.wso2.carbon.andes.stub.admin.types.DeadLetterFilter" %>
+<%@ page import="org.apache.commons.lang.StringEscapeUtils" %>
+<%@ page import="java.net.URLEncoder" %>
+<%@ page import="java.text.ParseException" %>
+<%@ page import="java.text.SimpleDateFormat" %>
+<fmt:bundle basename="org.wso2.carbon.andes.ui.i18n.Resources">
+
+    <carbon:jsi18n
+            resourceBundle="org.wso2.carbon.andes.ui.i18n.Resources"
+            request="<%=request%>"/>
+
+    <script type="text/javascript" src="../admin/js/breadcrumbs.js"></script>
+    <script type="text/javascript" src="../admin/js/cookies.js"></script>
+    <script type="text/javascript" src="../admin/js/main.js"></script>
+    <link rel="stylesheet" href="../qpid/css/dsxmleditor.css"/>
+
+    <carbon:breadcrumb
+            label="dlc.bulk.operation"
+            resourceBundle="org.wso2.carbon.andes.ui.i18n.Resources"
+            topPage="false"
+            request="<%=request%>"/>
+
+    <%
+        AndesAdminServiceStub stub = UIUtils.getAndesAdminServiceStub(config, session, request);
+        String nameOfQueue = request.getParameter("nameOfQueue");
+        if (nameOfQueue == null) {
+            nameOfQueue = "DeadLetterChannel";
+        }
+        String action = request.getParameter("action");
+        if (action != null) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            DeadLetterFilter filter = new DeadLetterFilter();
+            String inputError = null;
+            try {
+                if (request.getParameter("from_time") != null && !request.getParameter("from_time").trim().equals("")) {
+                    filter.setFromTime(dateFormat.parse(request.getParameter("from_time").trim()).getTime());
+                }
+                if (request.getParameter("to_time") != null && !request.getParameter("to_time").trim().equals("")) {
+                    filter.setToTime(dateFormat.parse(request.getParameter("to_time").trim()).getTime());
+                }
+            } catch (ParseException e) {
+                inputError = "Timestamps should be in yyyy-MM-dd HH:mm:ss format";
+            }
+            if (request.getParameter("original_destination") != null && !request.getParameter("original_destination").trim().equals("")) {
+                filter.setOriginalDestination(request.getParameter("original_destination").trim());
+            }
+            if (request.getParameter("jms_type") != null && !request.getParameter("jms_type").trim().equals("")) {
+                filter.setJmsType(request.getParameter("jms_type"));
+            }
+            if (request.getParameter("property_selector") != null && !request.getParameter("property_selector").trim().equals("")) {
+                filter.setPropertySelector(request.getParameter("property_selector").trim());
+            }
+
+            // Deleting by an empty filter would wipe the whole queue
+            if (inputError == null && "delete".equals(action) && filter.getFromTime() <= 0 && filter.getToTime() <= 0
+                    && filter.getOriginalDestination() == null && filter.getJmsType() == null
+                    && filter.getPropertySelector() == null) {
+                inputError = "Please specify at least one condition to delete messages by filter";
+            }
+
+            if (inputError != null) {
+    %>
+            <script type="text/javascript">CARBON.showErrorDialog('<%=inputError%>');</script>
+    <%
+            } else {
+                try {
+                    String jobId;
+                    if ("delete".equals(action)) {
+                        jobId = stub.startDeleteFromDeadLetterQueue(nameOfQueue, filter);
+                    } else {
+                        String destination = request.getParameter("restore_destination");
+                        if (destination != null && destination.trim().equals("")) {
+                            destination = null;
+                        }
+                        jobId = stub.startRestoreFromDeadLetterQueue(nameOfQueue, filter, destination);
+                    }
+    %>
+            <script type="text/javascript">location.href = 'queue_job_status.jsp?jobId=<%=jobId%>';</script>
+    <%
+                } catch (AndesAdminServiceBrokerManagerAdminException e) {
+    %>
+            <script type="text/javascript">CARBON.showErrorDialog('<%=e.getFaultMessage().getBrokerManagerAdminException().getErrorMessage()%>' , function
+                    () {
+                location.href = 'dlc_messages_list.jsp?nameOfQueue=<%=URLEncoder.encode(nameOfQueue, "UTF-8")%>';
+            });</script>
+    <%
+                }
+            }
+        }
+    %>
+
+    <script type="text/javascript">
+        function doBulkOperation(action) {
+            document.getElementById('action').value = action;
+            if (action == 'delete') {
+                CARBON.showConfirmationDialog(org_wso2_carbon_andes_ui_jsi18n["dlc.delete.confirmation"], function () {
+                    document.getElementById('dlc_bulk_form').submit();
+                });
+                return false;
+            }
+            return true;
+        }
+    </script>
+
+    <div id="middle">
+        <h2><fmt:message key="dlc.bulk.operation"/>  <%=StringEscapeUtils.escapeHtml(nameOfQueue)%></h2>
+        <div id="workArea">
+
+            <form id="dlc_bulk_form" name="dlc_bulk_form" action="dlc_bulk_operation.jsp?nameOfQueue=<%=URLEncoder.encode(nameOfQueue, "UTF-8")%>" method="post">
+                <input type="hidden" id="action" name="action" value="restore">
+
+                <table class="styledLeft" style="width:100%">
+                <thead>
+                <tr>
+                    <th colspan="2"><fmt:message key="dlc.filter"/></th>
+                </tr>
+                </thead>
+                <tbody>
+                <tr>
+                    <td><fmt:message key="dlc.filter.destination"/>: </td><td><input type="text" id="original_destination" name="original_destination"></td>
+                </tr>
+                <tr>
+                    <td><fmt:message key="dlc.filter.from"/>: </td><td><input type="text" id="from_time" name="from_time"></td>
+                </tr>
+                <tr>
+                    <td><fmt:message key="dlc.filter.to"/>: </td><td><input type="text" id="to_time" name="to_time"></td>
+                </tr>
+                <tr>
+                    <td><fmt:message key="dlc.filter.jms.type"/>: </td><td><input type="text" id="jms_type" name="jms_type"></td>
+                </tr>
+                <tr>
+                    <td><fmt:message key="dlc.filter.selector"/>: </td><td><input type="text" id="property_selector" name="property_selector" size="60"></td>
+                </tr>
+                <tr>
+                    <td><fmt:message key="dlc.restore.destination"/>: </td><td><input type="text" id="restore_destination" name="restore_destination"></td>
+                </tr>
+                <tr>
+                    <td colspan="2">
+                        <input type="submit" value="<fmt:message key="dlc.restore"/>" onclick="return doBulkOperation('restore');">
+                        <input type="submit" value="<fmt:message key="dlc.delete"/>" onclick="return doBulkOperation('delete');">
+                    </td>
+                </tr>
+                </tbody>
+                </table>
+            </form>
+        </div>
+    </div>
+
+</fmt:bundle>
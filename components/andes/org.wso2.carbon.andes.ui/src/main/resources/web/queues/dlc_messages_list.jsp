@@ -8,6 +8,7 @@
 <%@ page import="org.wso2.carbon.andes.stub.AndesAdminServiceStub" %>
 <%@ page import="org.wso2.carbon.andes.stub.AndesAdminServiceBrokerManagerAdminException" %>
 <%@ page import="org.wso2.carbon.andes.stub.admin.types.Message" %>
+<%@ page import="java.net.URLEncoder" %>
 <script type="text/javascript" src="js/treecontrol.js"></script>
 <fmt:bundle basename="org.wso2.carbon.andes.ui.i18n.Resources">
 <jsp:include page="resources-i18n-ajaxprocessor.jsp"/>
@@ -109,6 +110,11 @@
                       class="icon-link"
                       onclick="doReRouteMessages('<%=nameOfQueue%>')">ReRoute</a>
                </th>
+               <th align="right">
+                   <a style="background-image: url(images/move.gif);"
+                      class="icon-link"
+                      href="dlc_bulk_operation.jsp?nameOfQueue=<%=URLEncoder.encode(nameOfQueue, "UTF-8")%>"><fmt:message key="dlc.bulk.operation"/></a>
+               </th>
            </tr>
                 </thead>
            </table>
@@ -172,7 +178,7 @@
                     </td>
                     <td><%= msgProperties%>
                     </td>
-                    <td><%= messageContent[0]%><a href="message_content.jsp?message=<%=messageContent[1]%>">&nbsp;&nbsp;&nbsp;more...</a>
+                    <td><%= messageContent[0]%><a href="message_content.jsp?nameOfQueue=<%=URLEncoder.encode(nameOfQueue, "UTF-8")%>&messageId=<%=URLEncoder.encode(queueMessage.getJMSMessageId(), "UTF-8")%>">&nbsp;&nbsp;&nbsp;more...</a>
                     </td>
                 </tr>
 
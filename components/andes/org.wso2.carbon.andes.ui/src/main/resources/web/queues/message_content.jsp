@@ -1,4 +1,6 @@
-<%@ page import="org.apache.commons.lang.StringEscapeUtils" %>
+<%@ page import="org.wso2.carbon.andes.ui.UIUtils" %>
+<%@ page import="org.wso2.carbon.andes.stub.AndesAdminServiceStub" %>
+<%@ page import="org.wso2.carbon.andes.stub.AndesAdminServiceBrokerManagerAdminException" %>
 <%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
 <%@ taglib prefix="carbon" uri="http://wso2.org/projects/carbon/taglibs/carbontags.jar" %>
 <script type="text/javascript" src="js/treecontrol.js"></script>
@@ -14,7 +16,20 @@
     <link rel="stylesheet" href="../qpid/css/dsxmleditor.css"/>
 
     <%
-        String wholeMessage = request.getParameter("message");
+        AndesAdminServiceStub stub = UIUtils.getAndesAdminServiceStub(config, session, request);
+        String nameOfQueue = request.getParameter("nameOfQueue");
+        String messageId = request.getParameter("messageId");
+        String wholeMessage = "";
+        try {
+            wholeMessage = stub.getMessageContent(nameOfQueue, messageId);
+        } catch (AndesAdminServiceBrokerManagerAdminException e) {
+    %>
+            <script type="text/javascript">CARBON.showErrorDialog('<%=e.getFaultMessage().getBrokerManagerAdminException().getErrorMessage()%>' , function
+                    () {
+                history.back();
+            });</script>
+            <%
+        }
     %>
 
      <carbon:breadcrumb
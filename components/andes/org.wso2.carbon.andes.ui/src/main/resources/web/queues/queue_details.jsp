@@ -58,13 +58,11 @@
         if(request.getParameter("purge") != null && request.getParameter("purge").equalsIgnoreCase("true")){
             String queuename = request.getParameter("nameOfQueue");
             try {
-                stub.purgeMessagesOfQueue(queuename);
+                // Messages are deleted inside the broker, the job status page follows the progress
+                String purgeJobId = stub.startPurgeQueue(queuename);
     %>
 
-    <script type="text/javascript">CARBON.showInfoDialog('Queue <%=queuename %> successfully purged.', function
-            () {
-        location.href = 'queue_details.jsp';
-    });</script>
+    <script type="text/javascript">location.href = 'queue_job_status.jsp?jobId=<%=purgeJobId%>';</script>
 
     <%
             } catch (Exception e) {
@@ -161,6 +159,16 @@
                               resourceBundle="org.wso2.carbon.andes.ui.i18n.Resources"
                               prevKey="prev" nextKey="next"
                               parameters="<%=concatenatedParams%>"/>
+            <%
+                // Counts of all queues in the list are served from the same sample
+                long messageCountAge = (filteredQueueList != null && filteredQueueList.length > 0) ?
+                        filteredQueueList[0].getMessageCountAge() : 0;
+                if (messageCountAge >= 1000) {
+            %>
+            <p><fmt:message key="queue.messageCount.age"><fmt:param value="<%=messageCountAge / 1000%>"/></fmt:message></p>
+            <%
+                }
+            %>
             <table class="styledLeft" style="width:100%">
                 <thead>
                 <tr>
@@ -0,0 +1,109 @@
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
+<%@ taglib prefix="carbon" uri="http://wso2.org/projects/carbon/taglibs/carbontags.jar" %>
+<%@ page import="org.wso2.carbon.andes.stub.AndesAdminServiceStub" %>
+<%@ page import="org.wso2.carbon.andes.ui.UIUtils" %>
+<%@ page import="org.wso2.carbon.andes.stub.AndesAdminServiceBrokerManagerAdminException" %>
+<%@ page import="org.wso2.carbon.andes.stub.admin.types.JobStatus" %>
+<%@ page import="org.apache.commons.lang.StringEscapeUtils" %>
+<fmt:bundle basename="org.wso2.carbon.andes.ui.i18n.Resources">
+
+    <carbon:jsi18n
+            resourceBundle="org.wso2.carbon.andes.ui.i18n.Resources"
+            request="<%=request%>"/>
+
+    <script type="text/javascript" src="../admin/js/breadcrumbs.js"></script>
+    <script type="text/javascript" src="../admin/js/cookies.js"></script>
+    <script type="text/javascript" src="../admin/js/main.js"></script>
+    <link rel="stylesheet" href="../qpid/css/dsxmleditor.css"/>
+
+    <%
+        AndesAdminServiceStub stub = UIUtils.getAndesAdminServiceStub(config, session, request);
+        String jobId = request.getParameter("jobId");
+        JobStatus jobStatus = null;
+        try {
+            if (request.getParameter("cancel") != null) {
+                stub.cancelJob(jobId);
+            }
+            jobStatus = stub.getJobStatus(jobId);
+        } catch (AndesAdminServiceBrokerManagerAdminException e) {
+    %>
+            <script type="text/javascript">CARBON.showErrorDialog('<%=e.getFaultMessage().getBrokerManagerAdminException().getErrorMessage()%>' , function
+                    () {
+                location.href = 'queue_details.jsp';
+            });</script>
+            <%
+        }
+    %>
+
+    <carbon:breadcrumb
+            label="job.status"
+            resourceBundle="org.wso2.carbon.andes.ui.i18n.Resources"
+            topPage="false"
+            request="<%=request%>"/>
+
+    <div id="middle">
+        <h2><fmt:message key="job.status"/></h2>
+        <div id="workArea">
+            <%
+                if (jobStatus != null) {
+                    boolean active = "QUEUED".equals(jobStatus.getState()) || "RUNNING".equals(jobStatus.getState());
+                    String progress = String.valueOf(jobStatus.getProcessedCount());
+                    if (jobStatus.getTotalCount() >= 0) {
+                        progress = progress + " / " + jobStatus.getTotalCount();
+                    }
+            %>
+            <table class="styledLeft" style="width:100%">
+                <tbody>
+                <tr>
+                    <td><fmt:message key="job.type"/></td><td><%=jobStatus.getJobType()%></td>
+                </tr>
+                <tr>
+                    <td><fmt:message key="job.queue"/></td><td><%=StringEscapeUtils.escapeHtml(jobStatus.getQueueName())%></td>
+                </tr>
+                <tr>
+                    <td><fmt:message key="job.state"/></td><td><%=jobStatus.getState()%></td>
+                </tr>
+                <tr>
+                    <td><fmt:message key="job.progress"/></td><td><%=progress%></td>
+                </tr>
+                <tr>
+                    <td><fmt:message key="job.rate"/></td><td><%=String.format("%.1f", jobStatus.getMessagesPerSecond())%></td>
+                </tr>
+                <%
+                    if (jobStatus.getErrorMessage() != null) {
+                %>
+                <tr>
+                    <td><fmt:message key="job.error"/></td><td><%=StringEscapeUtils.escapeHtml(jobStatus.getErrorMessage())%></td>
+                </tr>
+                <%
+                    }
+                %>
+                </tbody>
+            </table>
+            <%
+                    if (active) {
+            %>
+            <br/>
+            <%
+                        if (jobStatus.getCancellable()) {
+            %>
+            <form id="cancel_job_form" name="cancel_job_form" action="queue_job_status.jsp?jobId=<%=jobStatus.getJobId()%>&cancel=true" method="post">
+                <input type="submit" value="<fmt:message key="job.cancel"/>">
+            </form>
+            <%
+                        }
+            %>
+            <script type="text/javascript">
+                // Follow the progress until the job finishes
+                setTimeout(function () {
+                    location.href = 'queue_job_status.jsp?jobId=<%=jobStatus.getJobId()%>';
+                }, 2000);
+            </script>
+            <%
+                    }
+                }
+            %>
+        </div>
+    </div>
+
+</fmt:bundle>
@@ -120,6 +120,22 @@
                     if (request.getParameter("delivery_mode") == null) {
                         delivery_mode = 1;
                     }
+                    if (request.getParameter("background") != null) {
+                        // Publish in batches on the server, and follow the progress on the job status page
+                        int batch_size = 0;
+                        if (request.getParameter("batch_size") != null && !request.getParameter("batch_size").equals("")) {
+                            try {
+                                batch_size = Integer.parseInt(request.getParameter("batch_size"));
+                            } catch (NumberFormatException e) {
+                                batch_size = 0;
+                            }
+                        }
+                        boolean transacted = request.getParameter("transacted") != null;
+                        String jobId = stub.startBulkPublish(nameOfQueue, jms_type, cor_id, msg_count, message_txt, delivery_mode, priority, time_to_live, batch_size, transacted);
+                    %>
+                        <script type="text/javascript">location.href = 'queue_job_status.jsp?jobId=<%=jobId%>';</script>
+                    <%
+                    } else {
                     boolean success = stub.sendMessage(nameOfQueue, jms_type, cor_id, msg_count, message_txt, delivery_mode, priority, time_to_live);
                     if(success) {
                     %>
@@ -128,7 +144,8 @@
                             location.href = 'queue_details.jsp';
                         });</script>
                     <%
-                }
+                    }
+                    }
                 } catch (AndesAdminServiceBrokerManagerAdminException e) {
                     %>
                     <script type="text/javascript">CARBON.showErrorDialog('<%=e.getFaultMessage().getBrokerManagerAdminException().getErrorMessage()%>' , function
@@ -166,6 +183,13 @@
                     <td>Number of Messages:<span class="required">*</span></td><td><input type="text" id="num_of_msgs" name="num_of_msgs"></td>
                     <td>Duration to expire (in ms): </td><td><input type="text" id="expire" name="expire"></td>
                 </tr>
+                <tr>
+                    <td><fmt:message key="message.send.background"/>: </td><td><input type="checkbox" id="background" name="background" value="true"></td>
+                    <td><fmt:message key="message.batch.size"/>: </td><td><input type="text" id="batch_size" name="batch_size"></td>
+                </tr>
+                <tr>
+                    <td><fmt:message key="message.send.transacted"/>: </td><td colspan="3"><input type="checkbox" id="transacted" name="transacted" value="true"></td>
+                </tr>
                 </tbody>
                 </table>
 
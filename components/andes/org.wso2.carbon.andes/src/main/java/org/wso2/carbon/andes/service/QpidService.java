@@ -21,6 +21,8 @@ package org.wso2.carbon.andes.service;
 import org.wso2.carbon.andes.commons.QueueDetails;
 import org.wso2.carbon.andes.commons.SubscriptionDetails;
 
+import java.util.Iterator;
+
 /**
  * This is an interface that declares access methods for properties
  * exposed from the qpid component to other Carbon components.
@@ -161,6 +163,37 @@ public interface QpidService {
         */
     public SubscriptionDetails[] getSubscriptions(String topic, boolean isDurable);
 
+    /**
+        * Get a page of the subscriptions (durable/non-durable) created in the broker
+        *
+        * @param topic
+        *                Name of the topic that subscriptions bound to
+        * @param isDurable
+        *               Durable subscriptions?
+        * @param offset
+        *               Index of the first subscription
+        * @param limit
+        *               Maximum number of subscriptions returned
+        * @return
+        *           An array of SubscriptionDetails objects
+        */
+    public SubscriptionDetails[] getSubscriptions(String topic, boolean isDurable, int offset, int limit);
+
+    /**
+        * Iterate over the subscriptions (durable/non-durable) created in the broker, reading one page of
+        * subscriptions at a time, so that large topics can be listed with constant memory
+        *
+        * @param topic
+        *                Name of the topic that subscriptions bound to
+        * @param isDurable
+        *               Durable subscriptions?
+        * @param pageSize
+        *               Number of subscriptions read at a time
+        * @return
+        *           Iterator over SubscriptionDetails objects
+        */
+    public Iterator<SubscriptionDetails> getSubscriptionIterator(String topic, boolean isDurable, int pageSize);
+
     /**
      * Returns the SSL port that a client can use to comminicate with the broker over SSL
      * @return the SSL port 